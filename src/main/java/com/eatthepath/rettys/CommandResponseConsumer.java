@@ -5,71 +5,258 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 
 /**
- * A message consumer that pairs responses from a Redis server to pending futures. {@code CommandResponseConsumers}
- * complete futures via an {@link Executor} provided at construction time to avoid blocking (or bogging down) IO
- * threads.
+ * <p>A message consumer that pairs responses from a Redis server to pending futures. By default,
+ * {@code CommandResponseConsumers} complete futures via an {@link Executor} provided at construction time to avoid
+ * blocking (or bogging down) IO threads; callers may choose a different {@link CompletionDispatchStrategy} to batch
+ * completions or to complete futures directly on the IO thread.</p>
+ *
+ * <p>If the channel decodes bulk strings as zero-copy buffers, ownership of each reply passes to the future it
+ * completes, and callers that retrieve a value from a future are responsible for releasing it (see
+ * {@link RedisValues#release(Object)}). Replies that can't be delivered because no future is waiting for them or because
+ * the future was cancelled or otherwise completed before the reply arrived are released by the consumer.</p>
+ *
+ * <p>Pending futures may be added from any thread, but messages must only be consumed (and channel closure handled)
+ * by a single thread, normally the channel's IO thread. Pending futures are held in a lock-free queue, and are paired
+ * with replies in the order in which they were added; callers that add futures from multiple threads are responsible
+ * for making sure that the order in which they add futures matches the order in which their commands are written to
+ * the channel.</p>
  */
 class CommandResponseConsumer implements SingleChannelMessageConsumer {
-    private final Deque<CompletableFuture<Object>> pendingFutures = new ArrayDeque<>();
+    // Each entry is either a caller's CompletableFuture or a PendingReply standing in for one
+    private final Queue<Object> pendingReplies = new ConcurrentLinkedQueue<>();
     private final Executor handlerExecutor;
+    private final CompletionDispatchStrategy dispatchStrategy;
+    private final RedisMetricsListener metricsListener;
+
+    private volatile boolean channelClosed = false;
+
+    // Futures and replies waiting for the end of the current read cycle; only used by the batched dispatch strategy
+    private List<Object> batchedFutures = new ArrayList<>();
+    private List<Object> batchedMessages = new ArrayList<>();
 
     private static final IOException CHANNEL_CLOSED_EXCEPTION =
             new IOException("Channel closed before the server sent a reply.");
 
     private static final Logger log = LoggerFactory.getLogger(CommandResponseConsumer.class);
 
+    /**
+     * A pending reply stands in for a caller's future in the queue of pending futures when a subclass needs to keep
+     * track of more than just the future while it waits for a reply. Pending replies are completed in the same way (and
+     * by the same threads) as the futures they stand in for.
+     */
+    interface PendingReply {
+
+        /**
+         * Delivers a reply from the server.
+         *
+         * @param value the reply from the server
+         *
+         * @return {@code true} if the reply was delivered or {@code false} if nobody will ever see it (if, for example,
+         * the caller cancelled its future)
+         */
+        boolean complete(Object value);
+
+        /**
+         * Reports that no reply will be delivered because of the given error.
+         *
+         * @param cause the error that prevented a reply from being delivered
+         */
+        void fail(Throwable cause);
+    }
+
     /**
      * Constructs a new command response consumer that completes pending futures via the given {@code Executor}.
      *
      * @param handlerExecutor the {@code Executor} on which future completions will be executed
      */
     CommandResponseConsumer(final Executor handlerExecutor) {
+        this(handlerExecutor, CompletionDispatchStrategy.PER_REPLY);
+    }
+
+    /**
+     * Constructs a new command response consumer that completes pending futures according to the given dispatch
+     * strategy.
+     *
+     * @param handlerExecutor the {@code Executor} on which future completions will be executed unless the dispatch
+     *                        strategy calls for inline completion
+     * @param dispatchStrategy the strategy with which to hand replies to pending futures
+     */
+    CommandResponseConsumer(final Executor handlerExecutor, final CompletionDispatchStrategy dispatchStrategy) {
+        this(handlerExecutor, dispatchStrategy, RedisMetricsListener.NO_OP);
+    }
+
+    /**
+     * Constructs a new command response consumer that completes pending futures according to the given dispatch
+     * strategy and reports the number of pending futures to the given metrics listener.
+     *
+     * @param handlerExecutor the {@code Executor} on which future completions will be executed unless the dispatch
+     *                        strategy calls for inline completion
+     * @param dispatchStrategy the strategy with which to hand replies to pending futures
+     * @param metricsListener the listener to notify as futures are added and removed
+     */
+    CommandResponseConsumer(final Executor handlerExecutor, final CompletionDispatchStrategy dispatchStrategy, final RedisMetricsListener metricsListener) {
         this.handlerExecutor = handlerExecutor;
+        this.dispatchStrategy = dispatchStrategy;
+        this.metricsListener = metricsListener;
     }
 
     protected Executor getHandlerExecutor() {
         return handlerExecutor;
     }
 
+    RedisMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
     /**
      * Adds a future that expects a response from the Redis {@link Channel} associated with this consumer. Futures will
      * be completed normally with the value received from the server unless the server sends an error response, in which
-     * case futures will be completed exceptionally with a {@link RedisException}.
+     * case futures will be completed exceptionally with a {@link RedisException}. If the value contains reference-counted
+     * buffers, whoever retrieves it from the future is responsible for releasing them.
      *
      * @param pendingFuture the future to be completed when a response arrives from the server
      */
     public void addPendingFuture(final CompletableFuture<Object> pendingFuture) {
-        this.pendingFutures.addLast(pendingFuture);
+        addPending(pendingFuture);
+    }
+
+    /**
+     * Adds a pending reply that expects a response from the Redis {@link Channel} associated with this consumer. Pending
+     * replies are paired with responses in the same order as (and interchangeably with) pending futures.
+     *
+     * @param pendingReply the pending reply to be completed when a response arrives from the server
+     */
+    void addPendingReply(final PendingReply pendingReply) {
+        addPending(pendingReply);
+    }
+
+    private void addPending(final Object pendingReply) {
+        if (channelClosed) {
+            handlerExecutor.execute(() -> failPendingReply(pendingReply, CHANNEL_CLOSED_EXCEPTION));
+            return;
+        }
+
+        pendingReplies.add(pendingReply);
+        metricsListener.handlePendingCommandAdded();
+
+        if (channelClosed && pendingReplies.remove(pendingReply)) {
+            // The channel closed while we were adding the future, and we missed the last chance to fail it along with
+            // the other pending futures. If we can't remove the future, the channel closure handler already got it.
+            metricsListener.handlePendingCommandRemoved();
+            handlerExecutor.execute(() -> failPendingReply(pendingReply, CHANNEL_CLOSED_EXCEPTION));
+        }
+    }
+
+    /**
+     * Returns the future or {@link PendingReply} that will be completed by the next reply from the server without
+     * removing it from the queue of pending futures. Like {@link #consumeMessage(Object)}, this method must only be
+     * called by the thread that consumes messages.
+     *
+     * @return the future or pending reply that will be completed by the next reply from the server, or {@code null} if
+     * nothing is waiting for a reply
+     */
+    Object peekPendingReply() {
+        return pendingReplies.peek();
     }
 
     /**
      * Completes the next pending future with the given message from the server. Futures are completed normally with the
      * message received from the server unless the server sends an error response, in which case futures are completed
-     * exceptionally with a {@link RedisException}. In either case, completion of the future takes place via the
-     * {@link Executor} provided at construction time.
+     * exceptionally with a {@link RedisException}. Futures for {@link TypedRedisCommand typed commands} whose reply
+     * visitors rejected a reply are likewise completed exceptionally with the exception thrown by the visitor. Whether
+     * futures are completed immediately, via the {@link Executor} provided at construction time, or at the end of the
+     * current read cycle depends on this consumer's {@link CompletionDispatchStrategy}.
      *
      * @param message the message sent by the server
      */
     @Override
     public void consumeMessage(final Object message) {
-        try {
-            final CompletableFuture<Object> pendingFuture = pendingFutures.removeFirst();
-            handlerExecutor.execute(() -> {
-                if (message instanceof RedisException) {
-                    pendingFuture.completeExceptionally((RedisException) message);
-                } else {
-                    pendingFuture.complete(message);
-                }
-            });
-        } catch (final NoSuchElementException e) {
+        final Object pendingFuture = pendingReplies.poll();
+
+        if (pendingFuture == null) {
             log.error("Received a message with no pending command: {}", message);
+            RedisValues.release(message);
+            return;
+        }
+
+        metricsListener.handlePendingCommandRemoved();
+
+        if (pendingFuture instanceof TracedCommandFuture) {
+            ((TracedCommandFuture) pendingFuture).getTimeline().setDecodedNanos(System.nanoTime());
+        }
+
+        switch (dispatchStrategy) {
+            case INLINE: {
+                completeFuture(pendingFuture, message);
+                break;
+            }
+
+            case BATCHED: {
+                batchedFutures.add(pendingFuture);
+                batchedMessages.add(message);
+                break;
+            }
+
+            default: {
+                handlerExecutor.execute(() -> completeFuture(pendingFuture, message));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Completes all futures whose replies arrived during the read cycle that just finished if this consumer batches
+     * completions.
+     */
+    @Override
+    public void handleReadComplete() {
+        if (batchedFutures.isEmpty()) {
+            return;
+        }
+
+        final List<Object> futures = batchedFutures;
+        final List<Object> messages = batchedMessages;
+
+        batchedFutures = new ArrayList<>();
+        batchedMessages = new ArrayList<>();
+
+        handlerExecutor.execute(() -> {
+            for (int i = 0; i < futures.size(); i++) {
+                completeFuture(futures.get(i), messages.get(i));
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void completeFuture(final Object pendingFuture, final Object message) {
+        if (message instanceof Throwable) {
+            failPendingReply(pendingFuture, (Throwable) message);
+            return;
+        }
+
+        final boolean delivered = pendingFuture instanceof PendingReply ?
+                ((PendingReply) pendingFuture).complete(message) :
+                ((CompletableFuture<Object>) pendingFuture).complete(message);
+
+        if (!delivered) {
+            // Nobody will ever see this value, so nobody else will release it
+            RedisValues.release(message);
+        }
+    }
+
+    private static void failPendingReply(final Object pendingFuture, final Throwable cause) {
+        if (pendingFuture instanceof PendingReply) {
+            ((PendingReply) pendingFuture).fail(cause);
+        } else {
+            ((CompletableFuture<?>) pendingFuture).completeExceptionally(cause);
         }
     }
 
@@ -79,9 +266,16 @@ class CommandResponseConsumer implements SingleChannelMessageConsumer {
      */
     @Override
     public void handleChannelClosure() {
-        pendingFutures.forEach(future ->
-                handlerExecutor.execute(() -> future.completeExceptionally(CHANNEL_CLOSED_EXCEPTION)));
+        channelClosed = true;
+
+        // Replies that arrived before the channel closed still belong to their futures
+        handleReadComplete();
 
-        pendingFutures.clear();
+        for (Object future = pendingReplies.poll(); future != null; future = pendingReplies.poll()) {
+            final Object closedFuture = future;
+
+            metricsListener.handlePendingCommandRemoved();
+            handlerExecutor.execute(() -> failPendingReply(closedFuture, CHANNEL_CLOSED_EXCEPTION));
+        }
     }
 }
@@ -0,0 +1,106 @@
+package com.eatthepath.rettys;
+
+/**
+ * <p>A command timeline records the moments, as reported by {@link System#nanoTime()}, at which a command passed
+ * through each stage of its life:</p>
+ *
+ * <ol>
+ *     <li><strong>Enqueued:</strong> the caller submitted the command to an executor.</li>
+ *     <li><strong>Written:</strong> the channel's event loop encoded the command and added it to the channel's outbound
+ *     buffer.</li>
+ *     <li><strong>Flushed:</strong> the encoded command was written to the network.</li>
+ *     <li><strong>Decoded:</strong> the channel decoded the server's reply and paired it with the command.</li>
+ *     <li><strong>Completed:</strong> the command's future was completed (normally via a handler executor).</li>
+ * </ol>
+ *
+ * <p>The differences between consecutive timestamps attribute a command's latency to the caller's queue (enqueued to
+ * written), flush consolidation (written to flushed), the network and server (flushed to decoded), and dispatch to the
+ * handler executor (decoded to completed). Timestamps for stages a command never reached (for example, because the
+ * channel closed before the server replied) are zero.</p>
+ *
+ * @see RedisCommandTracer
+ */
+public class CommandTimeline {
+
+    private long enqueuedNanos;
+    private long writtenNanos;
+    private long flushedNanos;
+    private long decodedNanos;
+    private long completedNanos;
+
+    CommandTimeline(final long enqueuedNanos) {
+        this.enqueuedNanos = enqueuedNanos;
+    }
+
+    void setWrittenNanos(final long writtenNanos) {
+        this.writtenNanos = writtenNanos;
+    }
+
+    void setFlushedNanos(final long flushedNanos) {
+        this.flushedNanos = flushedNanos;
+    }
+
+    void setDecodedNanos(final long decodedNanos) {
+        this.decodedNanos = decodedNanos;
+    }
+
+    void setCompletedNanos(final long completedNanos) {
+        this.completedNanos = completedNanos;
+    }
+
+    /**
+     * Returns the time at which the command was submitted to an executor.
+     *
+     * @return the time at which the command was submitted to an executor
+     */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * Returns the time at which the command was encoded and added to the channel's outbound buffer.
+     *
+     * @return the time at which the command was encoded, or zero if the command was never written
+     */
+    public long getWrittenNanos() {
+        return writtenNanos;
+    }
+
+    /**
+     * Returns the time at which the encoded command was written to the network.
+     *
+     * @return the time at which the encoded command was written to the network, or zero if it was never flushed
+     */
+    public long getFlushedNanos() {
+        return flushedNanos;
+    }
+
+    /**
+     * Returns the time at which the server's reply to the command was decoded.
+     *
+     * @return the time at which the server's reply was decoded, or zero if no reply arrived
+     */
+    public long getDecodedNanos() {
+        return decodedNanos;
+    }
+
+    /**
+     * Returns the time at which the command's future was completed.
+     *
+     * @return the time at which the command's future was completed
+     */
+    public long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandTimeline{" +
+                "queued=" + (writtenNanos != 0 ? writtenNanos - enqueuedNanos : -1) + "ns" +
+                ", flush=" + (flushedNanos != 0 && writtenNanos != 0 ? flushedNanos - writtenNanos : -1) + "ns" +
+                ", server=" + (decodedNanos != 0 && flushedNanos != 0 ? decodedNanos - flushedNanos : -1) + "ns" +
+                ", dispatch=" + (completedNanos != 0 && decodedNanos != 0 ? completedNanos - decodedNanos : -1) + "ns" +
+                ", total=" + (completedNanos - enqueuedNanos) + "ns" +
+                '}';
+    }
+}
@@ -0,0 +1,31 @@
+package com.eatthepath.rettys;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A completion dispatch strategy determines how a {@link CommandResponseConsumer} hands replies from a channel's IO
+ * thread to the futures waiting for them.
+ */
+public enum CompletionDispatchStrategy {
+
+    /**
+     * Completes each future in its own task on the consumer's {@link Executor}. This keeps the IO thread free of
+     * callers' callbacks at the cost of one executor hand-off per reply.
+     */
+    PER_REPLY,
+
+    /**
+     * Completes all of the futures for the replies decoded in a single read cycle (i.e. everything received before the
+     * channel's next {@code channelReadComplete} event) in a single task on the consumer's {@link Executor}. This
+     * still keeps callers' callbacks off of the IO thread, but costs one executor hand-off per read rather than per
+     * reply, which is much cheaper for deep pipelines.
+     */
+    BATCHED,
+
+    /**
+     * Completes futures directly on the channel's IO thread as soon as their replies are decoded. This is the fastest
+     * strategy, but any callbacks attached to the futures also run on the IO thread, and so this strategy is only
+     * appropriate for callers whose callbacks are known to be cheap and non-blocking.
+     */
+    INLINE
+}
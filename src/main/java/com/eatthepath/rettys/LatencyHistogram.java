@@ -0,0 +1,139 @@
+package com.eatthepath.rettys;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A latency histogram records non-negative values (usually durations in nanoseconds) in a fixed number of
+ * log-linear buckets, much like an <a href="http://hdrhistogram.org/">HdrHistogram</a>. Each power-of-two range of
+ * values is divided into 32 linear sub-buckets, so values reported by the histogram are within about 3% of the values
+ * actually recorded; values below 32 are recorded exactly.</p>
+ *
+ * <p>Latency histograms are thread-safe, and recording values is lock-free and never allocates memory. Values may be
+ * recorded while the histogram is being read, in which case reads may reflect some, but not all, of the concurrently
+ * recorded values.</p>
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final LongAccumulator maxValue = new LongAccumulator(Math::max, 0);
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Values below SUB_BUCKET_COUNT get one bucket each; every power of two above that gets SUB_BUCKET_COUNT buckets
+    static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /**
+     * Records a single value. Negative values are recorded as zero.
+     *
+     * @param value the value to record
+     */
+    public void recordValue(final long value) {
+        final long clampedValue = Math.max(value, 0);
+
+        counts.incrementAndGet(getBucketIndex(clampedValue));
+        totalCount.increment();
+        totalValue.add(clampedValue);
+        maxValue.accumulate(clampedValue);
+    }
+
+    static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        final int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+
+        // The top SUB_BUCKET_BITS + 1 bits of the value; the highest of these is always set
+        final int subBucket = (int) (value >>> shift);
+
+        return ((shift + 1) << SUB_BUCKET_BITS) + (subBucket - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Returns the highest value that would be recorded in the bucket with the given index.
+     */
+    static long getHighestValueInBucket(final int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+
+        final int shift = (bucketIndex >> SUB_BUCKET_BITS) - 1;
+        final long subBucket = (bucketIndex & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the number of values recorded by this histogram.
+     *
+     * @return the number of values recorded by this histogram
+     */
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the largest value recorded by this histogram.
+     *
+     * @return the largest value recorded by this histogram, or zero if no values have been recorded
+     */
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the mean of all values recorded by this histogram.
+     *
+     * @return the mean of all values recorded by this histogram, or zero if no values have been recorded
+     */
+    public double getMean() {
+        final long count = getTotalCount();
+        return count == 0 ? 0 : (double) totalValue.sum() / count;
+    }
+
+    /**
+     * Returns a value at or below which the given percentage of recorded values fall. The returned value is the
+     * highest value that falls in the same bucket as the value at the given percentile, but is never greater than the
+     * largest recorded value.
+     *
+     * @param percentile the percentile of interest, between 0 and 100 (inclusive)
+     *
+     * @return the value at the given percentile, or zero if no values have been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+
+        long total = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long targetCount = Math.max(1, (long) Math.ceil((percentile / 100) * total));
+        long cumulativeCount = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulativeCount += counts.get(i);
+
+            if (cumulativeCount >= targetCount) {
+                return Math.min(getHighestValueInBucket(i), getMaxValue());
+            }
+        }
+
+        // We should only get here if values were recorded while we were scanning buckets
+        return getMaxValue();
+    }
+}
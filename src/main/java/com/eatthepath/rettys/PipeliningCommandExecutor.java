@@ -0,0 +1,198 @@
+package com.eatthepath.rettys;
+
+import com.eatthepath.rettys.channel.RedisChannelFactory;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+
+import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>A pipelining command executor sends commands from any number of concurrent callers over a single channel without
+ * waiting for replies to previous commands. Redis replies to commands in the order in which they were sent, and so
+ * pipelining command executors pair replies with pending futures by order.</p>
+ *
+ * <p>To keep commands and pending futures in the same order, pipelining executors register each command's pending
+ * future and write the command to the channel in a single task on the channel's event loop. Rather than flushing each
+ * command individually, executors schedule at most one flush at a time; commands submitted while a flush is pending
+ * are sent with that flush.</p>
+ */
+public class PipeliningCommandExecutor implements RedisCommandExecutor, RedisMessageConsumer {
+
+    private final CommandResponseConsumer commandResponseConsumer;
+    private final RedisMetricsListener metricsListener;
+    private final RedisCommandTracer commandTracer;
+
+    private volatile Channel channel;
+
+    // Only accessed from the channel's event loop
+    private boolean flushScheduled = false;
+
+    private final Runnable flushTask = this::flush;
+
+    /**
+     * Connects to the Redis server at the given address and returns a future that completes with a new pipelining
+     * executor when the connection is ready to use.
+     *
+     * @param channelFactory the factory with which to create a channel
+     * @param address the address of the Redis server
+     * @param handlerExecutor the executor on which futures returned by the new executor will be completed
+     *
+     * @return a future that completes with a new pipelining executor when the connection is ready to use
+     */
+    public static CompletableFuture<PipeliningCommandExecutor> connect(final RedisChannelFactory channelFactory,
+                                                                       final SocketAddress address,
+                                                                       final Executor handlerExecutor) {
+
+        return connect(channelFactory, address, handlerExecutor, CompletionDispatchStrategy.PER_REPLY);
+    }
+
+    /**
+     * Connects to the Redis server at the given address and returns a future that completes with a new pipelining
+     * executor when the connection is ready to use.
+     *
+     * @param channelFactory the factory with which to create a channel
+     * @param address the address of the Redis server
+     * @param handlerExecutor the executor on which futures returned by the new executor will be completed
+     * @param dispatchStrategy the strategy with which the new executor will hand replies to waiting futures
+     *
+     * @return a future that completes with a new pipelining executor when the connection is ready to use
+     */
+    public static CompletableFuture<PipeliningCommandExecutor> connect(final RedisChannelFactory channelFactory,
+                                                                       final SocketAddress address,
+                                                                       final Executor handlerExecutor,
+                                                                       final CompletionDispatchStrategy dispatchStrategy) {
+
+        final PipeliningCommandExecutor commandExecutor =
+                new PipeliningCommandExecutor(new CommandResponseConsumer(handlerExecutor, dispatchStrategy, channelFactory.getMetricsListener()),
+                        channelFactory.getCommandTracer());
+
+        final CompletableFuture<PipeliningCommandExecutor> connectFuture = new CompletableFuture<>();
+
+        channelFactory.createChannel(address, commandExecutor).addListener((ChannelFuture createChannelFuture) -> {
+            if (createChannelFuture.isSuccess()) {
+                commandExecutor.setChannel(createChannelFuture.channel());
+                connectFuture.complete(commandExecutor);
+            } else {
+                connectFuture.completeExceptionally(createChannelFuture.cause());
+            }
+        });
+
+        return connectFuture;
+    }
+
+    PipeliningCommandExecutor(final CommandResponseConsumer commandResponseConsumer) {
+        this(commandResponseConsumer, null);
+    }
+
+    /**
+     * Constructs a new pipelining executor.
+     *
+     * @param commandResponseConsumer the consumer that pairs replies with pending futures
+     * @param commandTracer the tracer to which to report the timeline of each command; may be {@code null}, in which
+     *                      case commands are not traced
+     */
+    PipeliningCommandExecutor(final CommandResponseConsumer commandResponseConsumer, final RedisCommandTracer commandTracer) {
+        this.commandResponseConsumer = commandResponseConsumer;
+        this.metricsListener = commandResponseConsumer.getMetricsListener();
+        this.commandTracer = commandTracer;
+    }
+
+    void setChannel(final Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the channel over which this executor sends commands.
+     *
+     * @return the channel over which this executor sends commands
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public CompletableFuture<Object> executeCommand(final RedisCommand command) {
+        final Channel channel = this.channel;
+
+        if (channel == null) {
+            throw new IllegalStateException("Executor is not connected.");
+        }
+
+        final CompletableFuture<Object> pendingFuture =
+                commandTracer != null ? new TracedCommandFuture(command, commandTracer) : new CompletableFuture<>();
+
+        if (metricsListener != RedisMetricsListener.NO_OP) {
+            final long start = System.nanoTime();
+
+            pendingFuture.whenComplete((ignored, cause) ->
+                    metricsListener.handleCommandCompleted(command, System.nanoTime() - start, cause));
+        }
+
+        if (channel.eventLoop().inEventLoop()) {
+            writeCommand(channel, command, pendingFuture);
+        } else {
+            try {
+                channel.eventLoop().execute(() -> writeCommand(channel, command, pendingFuture));
+            } catch (final RejectedExecutionException e) {
+                // The event loop is shutting down, and so the command will never be written
+                commandResponseConsumer.getHandlerExecutor().execute(() -> pendingFuture.completeExceptionally(e));
+            }
+        }
+
+        return pendingFuture;
+    }
+
+    private void writeCommand(final Channel channel, final RedisCommand command, final CompletableFuture<Object> pendingFuture) {
+        final ChannelFuture writeFuture = channel.write(command);
+
+        if (pendingFuture instanceof TracedCommandFuture) {
+            final CommandTimeline timeline = ((TracedCommandFuture) pendingFuture).getTimeline();
+
+            // The command is encoded as part of the call to write, and the write future completes once the encoded
+            // command has actually been written to the network
+            timeline.setWrittenNanos(System.nanoTime());
+            writeFuture.addListener(future -> {
+                if (future.isSuccess()) {
+                    timeline.setFlushedNanos(System.nanoTime());
+                }
+            });
+        }
+
+        // Commands that can't be encoded (or channels that have already closed) fail immediately; in that case, the
+        // server will never see the command, and we shouldn't expect a reply.
+        if (writeFuture.isDone() && !writeFuture.isSuccess()) {
+            commandResponseConsumer.getHandlerExecutor().execute(() ->
+                    pendingFuture.completeExceptionally(writeFuture.cause()));
+        } else {
+            commandResponseConsumer.addPendingFuture(pendingFuture);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                channel.eventLoop().execute(flushTask);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        channel.flush();
+    }
+
+    @Override
+    public void consumeMessage(final Channel source, final Object message) {
+        commandResponseConsumer.consumeMessage(message);
+    }
+
+    @Override
+    public void handleReadComplete(final Channel source) {
+        commandResponseConsumer.handleReadComplete();
+    }
+
+    @Override
+    public void handleChannelClosure(final Channel channel) {
+        commandResponseConsumer.handleChannelClosure();
+    }
+}
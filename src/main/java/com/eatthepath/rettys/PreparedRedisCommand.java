@@ -0,0 +1,28 @@
+package com.eatthepath.rettys;
+
+/**
+ * A prepared Redis command is a command produced by a {@link RedisCommandTemplate}. Prepared commands have the same
+ * components as any other command, but encoders may write the template's pre-encoded prefix instead of encoding the
+ * command's constant components from scratch.
+ *
+ * @see RedisCommandTemplate#bind(Object...)
+ */
+public class PreparedRedisCommand extends RedisCommand {
+
+    private final RedisCommandTemplate template;
+
+    PreparedRedisCommand(final RedisCommandTemplate template, final Object[] components) {
+        super(components);
+
+        this.template = template;
+    }
+
+    /**
+     * Returns the template that produced this command.
+     *
+     * @return the template that produced this command
+     */
+    public RedisCommandTemplate getTemplate() {
+        return template;
+    }
+}
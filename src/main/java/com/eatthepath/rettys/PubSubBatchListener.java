@@ -0,0 +1,114 @@
+package com.eatthepath.rettys;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A pub/sub batch listener receives published messages in batches rather than one at a time, which can
+ * dramatically reduce the cost of handing messages to downstream systems that work best with batches (e.g. writing
+ * messages to disk or to another message broker).</p>
+ *
+ * <p>Each batch contains all of the messages for the listener's subscriptions that arrived during a single read from
+ * the network, unless the batch would otherwise exceed the listener's {@link #getMaxBatchSize() maximum batch size} or
+ * its oldest message would wait longer than the listener's {@link #getMaxBatchDelay() maximum batch delay}, in which
+ * case the batch is delivered early and the remaining messages go in the next batch. Listeners that fall behind may
+ * receive messages from several reads in the same batch. Batches always arrive in order, and messages within batches
+ * are in the order in which they arrived from the server.</p>
+ *
+ * <p>Batch listeners are registered with the same methods as other {@link PubSubListener PubSubListeners}, and are
+ * subject to the same overflow policies.</p>
+ *
+ * @see PubSubOverflowPolicy
+ */
+@FunctionalInterface
+public interface PubSubBatchListener extends PubSubListener {
+
+    /**
+     * The default maximum number of messages in a single batch.
+     */
+    int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+    /**
+     * The default maximum time a message may wait for the rest of its batch.
+     */
+    Duration DEFAULT_MAX_BATCH_DELAY = Duration.ofMillis(10);
+
+    /**
+     * A single message in a batch of published messages.
+     */
+    class PublishedMessage {
+        private final String topic;
+        private final byte[] message;
+
+        /**
+         * Constructs a new published message.
+         *
+         * @param topic the name of the channel to which the message was published
+         * @param message the message itself
+         */
+        public PublishedMessage(final String topic, final byte[] message) {
+            this.topic = topic;
+            this.message = message;
+        }
+
+        /**
+         * Returns the name of the channel to which this message was published.
+         *
+         * @return the name of the channel to which this message was published
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * Returns the content of this message. Messages from channels that decode zero-copy bulk strings are copied to
+         * the heap before they're delivered to batch listeners, so batches remain valid after listeners return.
+         *
+         * @return the content of this message
+         */
+        public byte[] getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Handles a batch of published messages.
+     *
+     * @param messages the messages in this batch, in the order in which they arrived; never empty
+     */
+    void handlePublishedMessages(List<PublishedMessage> messages);
+
+    /**
+     * Handles a single published message by delivering it as a batch of one. Mailboxes deliver messages to batch
+     * listeners in batches, so this method is only called when batch listeners are used outside of a pub/sub message
+     * consumer.
+     *
+     * @param topic the name of the channel to which the message was published
+     * @param message the message itself
+     */
+    @Override
+    default void handlePublishedMessage(final String topic, final byte[] message) {
+        handlePublishedMessages(Collections.singletonList(new PublishedMessage(topic, message)));
+    }
+
+    /**
+     * Returns the maximum number of messages this listener is willing to receive in a single batch. This method is
+     * called once when the listener is registered.
+     *
+     * @return the maximum number of messages in a single batch; must be positive
+     */
+    default int getMaxBatchSize() {
+        return DEFAULT_MAX_BATCH_SIZE;
+    }
+
+    /**
+     * Returns the maximum time a message may wait for the rest of its batch before the batch is delivered. This method
+     * is called once when the listener is registered.
+     *
+     * @return the maximum time a message may wait for the rest of its batch
+     */
+    default Duration getMaxBatchDelay() {
+        return DEFAULT_MAX_BATCH_DELAY;
+    }
+}
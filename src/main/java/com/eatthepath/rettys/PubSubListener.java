@@ -1,6 +1,26 @@
 package com.eatthepath.rettys;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
 public interface PubSubListener {
 
     void handlePublishedMessage(String topic, byte[] message);
+
+    /**
+     * Handles a message published to the given topic when the channel decodes bulk strings as zero-copy buffers. The
+     * given buffer is a read-only view of the data received from the server and is only valid until this method
+     * returns, after which it will be released by the caller; listeners that need the message after returning must
+     * {@link ByteBuf#retain() retain} the buffer and release it when they're done with it.
+     *
+     * <p>By default, this method copies the message to a {@code byte[]} and passes it to
+     * {@link #handlePublishedMessage(String, byte[])}. Listeners that can consume the buffer directly should override
+     * this method to avoid the copy.</p>
+     *
+     * @param topic the name of the channel to which the message was published
+     * @param message a read-only buffer containing the message
+     */
+    default void handlePublishedMessage(final String topic, final ByteBuf message) {
+        handlePublishedMessage(topic, ByteBufUtil.getBytes(message));
+    }
 }
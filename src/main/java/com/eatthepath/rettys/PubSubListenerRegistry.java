@@ -0,0 +1,295 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>A pub/sub listener registry maps topics (channel names or patterns) to the listeners registered for those
+ * topics.</p>
+ *
+ * <p>Registries are optimized for the case where listeners are registered rarely, but looked up for every published
+ * message, possibly by an IO thread. The registry's state is an immutable snapshot that readers access without locks;
+ * writers serialize among themselves, copy the snapshot, modify the copy, and publish it in place of the old snapshot.
+ * Lookups therefore never block and never see a partially-updated registry, but may not reflect changes made
+ * concurrently by other threads.</p>
+ *
+ * <p>Each snapshot includes an open-addressed table keyed by the encoded form of each topic and its precomputed hash,
+ * so topics in messages from the server can be looked up by their raw bytes without decoding them as strings or
+ * allocating memory.</p>
+ */
+class PubSubListenerRegistry {
+
+    private final Charset charset;
+
+    private volatile Snapshot snapshot;
+
+    private static final PubSubListener[] NO_LISTENERS = new PubSubListener[0];
+
+    /**
+     * A registration pairs a topic with the listeners registered for that topic at the time a snapshot was taken.
+     */
+    class Registration {
+        private final String topic;
+        private final byte[] topicBytes;
+        private final int hash;
+
+        private final PubSubListener[] listeners;
+
+        private Registration(final String topic, final PubSubListener[] listeners) {
+            this.topic = topic;
+            this.topicBytes = topic.getBytes(charset);
+            this.hash = hash(topicBytes);
+
+            this.listeners = listeners;
+        }
+
+        String getTopic() {
+            return topic;
+        }
+
+        /**
+         * Returns the listeners for this registration's topic. Callers must not modify the returned array.
+         *
+         * @return the listeners for this registration's topic
+         */
+        PubSubListener[] getListeners() {
+            return listeners;
+        }
+
+        private boolean matches(final byte[] bytes) {
+            return Arrays.equals(topicBytes, bytes);
+        }
+
+        private boolean matches(final ByteBuf byteBuf) {
+            if (byteBuf.readableBytes() != topicBytes.length) {
+                return false;
+            }
+
+            final int readerIndex = byteBuf.readerIndex();
+
+            for (int i = 0; i < topicBytes.length; i++) {
+                if (byteBuf.getByte(readerIndex + i) != topicBytes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private class Snapshot {
+        private final Map<String, PubSubListener[]> listenersByTopic;
+
+        // An open-addressed (linear probing) table that always has at least one empty slot
+        private final Registration[] registrations;
+
+        private Snapshot(final Map<String, PubSubListener[]> listenersByTopic) {
+            this.listenersByTopic = listenersByTopic;
+
+            int capacity = 2;
+
+            while (capacity < listenersByTopic.size() * 2) {
+                capacity <<= 1;
+            }
+
+            registrations = new Registration[capacity];
+
+            final int mask = capacity - 1;
+
+            for (final Map.Entry<String, PubSubListener[]> entry : listenersByTopic.entrySet()) {
+                final Registration registration = new Registration(entry.getKey(), entry.getValue());
+
+                int slot = registration.hash & mask;
+
+                while (registrations[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                registrations[slot] = registration;
+            }
+        }
+
+        private Registration getRegistration(final byte[] topicBytes) {
+            final int mask = registrations.length - 1;
+
+            for (int slot = hash(topicBytes) & mask; registrations[slot] != null; slot = (slot + 1) & mask) {
+                if (registrations[slot].matches(topicBytes)) {
+                    return registrations[slot];
+                }
+            }
+
+            return null;
+        }
+
+        private Registration getRegistration(final ByteBuf topicBuffer) {
+            final int mask = registrations.length - 1;
+
+            for (int slot = hash(topicBuffer) & mask; registrations[slot] != null; slot = (slot + 1) & mask) {
+                if (registrations[slot].matches(topicBuffer)) {
+                    return registrations[slot];
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Constructs a new, empty listener registry.
+     *
+     * @param charset the character set with which topics are encoded in messages from the server
+     */
+    PubSubListenerRegistry(final Charset charset) {
+        this.charset = charset;
+        this.snapshot = new Snapshot(Collections.emptyMap());
+    }
+
+    /**
+     * Adds a listener for the given topics. Adding a listener that is already registered for a topic has no effect.
+     *
+     * @param listener the listener to add
+     * @param topics the topics for which the listener should be registered; must not be {@code null} or empty
+     */
+    synchronized void addListener(final PubSubListener listener, final String... topics) {
+        if (Objects.requireNonNull(topics, "List of topics must not be null").length == 0) {
+            throw new IllegalArgumentException("List of topics must not be empty");
+        }
+
+        final Map<String, PubSubListener[]> updatedListenersByTopic = new HashMap<>(snapshot.listenersByTopic);
+
+        for (final String topic : topics) {
+            final PubSubListener[] listeners = updatedListenersByTopic.getOrDefault(topic, NO_LISTENERS);
+
+            if (indexOf(listeners, listener) < 0) {
+                final PubSubListener[] updatedListeners = Arrays.copyOf(listeners, listeners.length + 1);
+                updatedListeners[listeners.length] = listener;
+
+                updatedListenersByTopic.put(topic, updatedListeners);
+            }
+        }
+
+        snapshot = new Snapshot(updatedListenersByTopic);
+    }
+
+    /**
+     * Removes a listener from the given topics, or from all topics if none are specified.
+     *
+     * @param listener the listener to remove
+     * @param topics the topics from which to remove the listener; may be empty or {@code null}, in which case the
+     *               listener will be removed from all topics for which it was registered
+     */
+    synchronized void removeListener(final PubSubListener listener, final String... topics) {
+        final Map<String, PubSubListener[]> listenersByTopic = snapshot.listenersByTopic;
+        final Map<String, PubSubListener[]> updatedListenersByTopic = new HashMap<>(listenersByTopic);
+
+        if (topics == null || topics.length == 0) {
+            listenersByTopic.keySet().forEach(topic -> removeListener(updatedListenersByTopic, topic, listener));
+        } else {
+            for (final String topic : topics) {
+                removeListener(updatedListenersByTopic, topic, listener);
+            }
+        }
+
+        snapshot = new Snapshot(updatedListenersByTopic);
+    }
+
+    private static void removeListener(final Map<String, PubSubListener[]> listenersByTopic, final String topic, final PubSubListener listener) {
+        final PubSubListener[] listeners = listenersByTopic.getOrDefault(topic, NO_LISTENERS);
+        final int index = indexOf(listeners, listener);
+
+        if (index >= 0) {
+            if (listeners.length == 1) {
+                listenersByTopic.remove(topic);
+            } else {
+                final PubSubListener[] updatedListeners = new PubSubListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, updatedListeners, 0, index);
+                System.arraycopy(listeners, index + 1, updatedListeners, index, updatedListeners.length - index);
+
+                listenersByTopic.put(topic, updatedListeners);
+            }
+        }
+    }
+
+    private static int indexOf(final PubSubListener[] listeners, final PubSubListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the listeners registered for the given topic. Callers must not modify the returned array.
+     *
+     * @param topic the topic for which to retrieve listeners
+     *
+     * @return the listeners registered for the given topic, which may be empty, but is never {@code null}
+     */
+    PubSubListener[] getListeners(final String topic) {
+        return snapshot.listenersByTopic.getOrDefault(topic, NO_LISTENERS);
+    }
+
+    /**
+     * Checks whether the given listener is registered for any topic.
+     *
+     * @param listener the listener to find
+     *
+     * @return {@code true} if the given listener is registered for at least one topic or {@code false} otherwise
+     */
+    boolean containsListener(final PubSubListener listener) {
+        for (final PubSubListener[] listeners : snapshot.listenersByTopic.values()) {
+            if (indexOf(listeners, listener) >= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the registration for the topic encoded in the given bulk string.
+     *
+     * @param topicBulkString a {@code byte[]} or {@code ByteBuf} containing an encoded topic; the reader index of
+     *                        buffers is not modified
+     *
+     * @return the registration for the given topic, or {@code null} if no listeners are registered for the topic
+     */
+    Registration getRegistration(final Object topicBulkString) {
+        return topicBulkString instanceof byte[] ?
+                snapshot.getRegistration((byte[]) topicBulkString) :
+                snapshot.getRegistration((ByteBuf) topicBulkString);
+    }
+
+    private static int hash(final byte[] bytes) {
+        int hash = 1;
+
+        for (final byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+
+        return spread(hash);
+    }
+
+    private static int hash(final ByteBuf byteBuf) {
+        int hash = 1;
+
+        for (int i = byteBuf.readerIndex(); i < byteBuf.writerIndex(); i++) {
+            hash = 31 * hash + byteBuf.getByte(i);
+        }
+
+        return spread(hash);
+    }
+
+    private static int spread(final int hash) {
+        // Mix high bits into the low bits we'll actually use to choose a slot
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,470 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>A pub/sub mailbox is a bounded queue of published messages waiting to be delivered to a single
+ * {@link PubSubListener}. Messages are delivered in the order in which they arrived, one at a time, by at most one task
+ * on the mailbox's executor at any moment, so listeners never see messages out of order or concurrently even if the
+ * executor has many threads. When the mailbox is full, new messages are handled according to the mailbox's
+ * {@link PubSubOverflowPolicy}.</p>
+ *
+ * <p>Mailboxes for {@link PubSubBatchListener batch listeners} deliver messages in batches instead. Batch mailboxes
+ * hold new messages until they're {@link #flush() flushed} (normally at the end of a read cycle), until they've
+ * collected as many messages as the listener will accept in a single batch, or until the oldest held message has
+ * waited as long as the listener allows, whichever comes first.</p>
+ *
+ * <p>Messages may be offered from any thread, but are normally offered by a channel's IO thread. Offering a message
+ * never blocks for longer than it takes to update the queue itself.</p>
+ *
+ * <p>Exceptions thrown by listeners are logged, and delivery continues with the next message. Mailboxes whose
+ * executors reject delivery tasks (for example, because the executor has shut down) discard their undelivered
+ * messages and report them as dropped.</p>
+ */
+class PubSubMailbox {
+
+    private final PubSubListener listener;
+    private final Executor executor;
+    private final int capacity;
+    private final PubSubOverflowPolicy overflowPolicy;
+    private final FlowControl flowControl;
+    private final RedisMetricsListener metricsListener;
+
+    // Only used by batch mailboxes
+    private final PubSubBatchListener batchListener;
+    private final int maxBatchSize;
+    private final int batchSizeThreshold;
+    private final long maxBatchDelayNanos;
+
+    private long batchStartNanos;
+
+    private final Deque<Delivery> deliveries = new ArrayDeque<>();
+
+    // Only used by conflating mailboxes
+    private final Map<String, Delivery> latestDeliveriesByChannel;
+
+    private boolean drainScheduled = false;
+    private boolean readsSuspended = false;
+
+    // Deliver a bounded number of messages (or batches) per task so one busy listener can't monopolize an executor
+    // thread
+    static final int MAX_DELIVERIES_PER_TASK = 64;
+
+    private static final Logger log = LoggerFactory.getLogger(PubSubMailbox.class);
+
+    /**
+     * Flow control receives notifications from mailboxes that use the {@link PubSubOverflowPolicy#BLOCK} policy when
+     * they fill up and when they have room again.
+     */
+    interface FlowControl {
+
+        /**
+         * Notes that a mailbox is full and that no more messages should be read until it has room again.
+         */
+        void suspendReads();
+
+        /**
+         * Notes that a mailbox that previously suspended reads has room for more messages.
+         */
+        void resumeReads();
+    }
+
+    private static class Delivery {
+        private final String channelName;
+
+        private Object message;
+        private long receivedNanos;
+
+        private Delivery(final String channelName, final Object message, final long receivedNanos) {
+            this.channelName = channelName;
+            this.message = message;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    /**
+     * Constructs a new mailbox.
+     *
+     * @param listener the listener to which to deliver messages; if the listener is a {@link PubSubBatchListener}, the
+     *                 mailbox delivers messages in batches
+     * @param executor the executor on which to deliver messages
+     * @param capacity the number of undelivered messages the mailbox can hold before applying its overflow policy;
+     *                 must be positive
+     * @param overflowPolicy the policy to apply to new messages when the mailbox is full
+     * @param flowControl the flow control to notify when a {@link PubSubOverflowPolicy#BLOCK} mailbox fills and drains
+     * @param metricsListener the listener to notify as messages are dispatched or dropped
+     */
+    PubSubMailbox(final PubSubListener listener,
+                  final Executor executor,
+                  final int capacity,
+                  final PubSubOverflowPolicy overflowPolicy,
+                  final FlowControl flowControl,
+                  final RedisMetricsListener metricsListener) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive.");
+        }
+
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.flowControl = flowControl;
+        this.metricsListener = metricsListener;
+
+        this.latestDeliveriesByChannel = overflowPolicy == PubSubOverflowPolicy.CONFLATE ? new HashMap<>() : null;
+
+        if (listener instanceof PubSubBatchListener) {
+            this.batchListener = (PubSubBatchListener) listener;
+            this.maxBatchSize = batchListener.getMaxBatchSize();
+            this.maxBatchDelayNanos = batchListener.getMaxBatchDelay().toNanos();
+
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("Maximum batch size must be positive.");
+            }
+
+            // Unless the mailbox blocks, it may never hold enough messages to fill a whole batch
+            this.batchSizeThreshold = Math.min(maxBatchSize, capacity);
+        } else {
+            this.batchListener = null;
+            this.maxBatchSize = 1;
+            this.maxBatchDelayNanos = 0;
+            this.batchSizeThreshold = 1;
+        }
+    }
+
+    /**
+     * Offers a published message for delivery to this mailbox's listener. If the message is reference-counted, the
+     * mailbox retains its own reference to the message and releases it after delivery; callers remain responsible for
+     * their own references.
+     *
+     * @param channelName the name of the channel to which the message was published
+     * @param message the message as a {@code byte[]} or {@code ByteBuf}
+     * @param receivedNanos the time at which the message arrived from the server, as reported by
+     *                      {@link System#nanoTime()}
+     */
+    void offer(final String channelName, final Object message, final long receivedNanos) {
+        if (message instanceof ByteBuf) {
+            ((ByteBuf) message).retain();
+        }
+
+        final Object droppedMessage;
+        final boolean suspendReads;
+        final boolean scheduleDrain;
+
+        synchronized (this) {
+            if (deliveries.size() < capacity) {
+                enqueue(channelName, message, receivedNanos);
+
+                droppedMessage = null;
+                suspendReads = false;
+            } else {
+                switch (overflowPolicy) {
+                    case BLOCK: {
+                        enqueue(channelName, message, receivedNanos);
+
+                        droppedMessage = null;
+                        suspendReads = !readsSuspended;
+                        readsSuspended = true;
+
+                        break;
+                    }
+
+                    case DROP_NEWEST: {
+                        droppedMessage = message;
+                        suspendReads = false;
+
+                        break;
+                    }
+
+                    case CONFLATE: {
+                        final Delivery pendingDelivery = latestDeliveriesByChannel.get(channelName);
+
+                        if (pendingDelivery != null) {
+                            droppedMessage = pendingDelivery.message;
+
+                            pendingDelivery.message = message;
+                            pendingDelivery.receivedNanos = receivedNanos;
+                        } else {
+                            droppedMessage = dequeue().message;
+                            enqueue(channelName, message, receivedNanos);
+                        }
+
+                        suspendReads = false;
+
+                        break;
+                    }
+
+                    case DROP_OLDEST:
+                    default: {
+                        droppedMessage = dequeue().message;
+                        enqueue(channelName, message, receivedNanos);
+
+                        suspendReads = false;
+
+                        break;
+                    }
+                }
+            }
+
+            scheduleDrain = !drainScheduled && !deliveries.isEmpty() && isBatchReady();
+
+            if (scheduleDrain) {
+                drainScheduled = true;
+            }
+        }
+
+        if (droppedMessage != null) {
+            RedisValues.release(droppedMessage);
+            metricsListener.handlePubSubMessageDropped();
+        }
+
+        if (suspendReads) {
+            flowControl.suspendReads();
+        }
+
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+    }
+
+    private boolean isBatchReady() {
+        if (batchListener == null) {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+
+        if (deliveries.size() == 1) {
+            // This is the first message in a new batch
+            batchStartNanos = now;
+        }
+
+        return deliveries.size() >= batchSizeThreshold || now - batchStartNanos >= maxBatchDelayNanos;
+    }
+
+    /**
+     * Delivers any messages held by a batch mailbox without waiting for more messages to arrive. Calling this method
+     * on a mailbox that doesn't deliver batches has no effect.
+     */
+    void flush() {
+        final boolean scheduleDrain;
+
+        synchronized (this) {
+            scheduleDrain = !drainScheduled && !deliveries.isEmpty();
+
+            if (scheduleDrain) {
+                drainScheduled = true;
+            }
+        }
+
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Indicates whether this mailbox delivers messages in batches.
+     *
+     * @return {@code true} if this mailbox delivers messages in batches or {@code false} otherwise
+     */
+    boolean isBatching() {
+        return batchListener != null;
+    }
+
+    private void enqueue(final String channelName, final Object message, final long receivedNanos) {
+        final Delivery delivery = new Delivery(channelName, message, receivedNanos);
+        deliveries.addLast(delivery);
+
+        if (latestDeliveriesByChannel != null) {
+            latestDeliveriesByChannel.put(channelName, delivery);
+        }
+    }
+
+    private Delivery dequeue() {
+        final Delivery delivery = deliveries.pollFirst();
+
+        if (delivery != null && latestDeliveriesByChannel != null) {
+            latestDeliveriesByChannel.remove(delivery.channelName, delivery);
+        }
+
+        return delivery;
+    }
+
+    /**
+     * Submits a task to deliver this mailbox's messages. Callers must have marked a drain as scheduled before calling
+     * this method. If the executor rejects the task, nothing will ever deliver the messages already in the mailbox, and
+     * so the mailbox discards them rather than holding on to them (and, for blocking mailboxes, keeping reads suspended)
+     * indefinitely.
+     */
+    private void scheduleDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (final RejectedExecutionException e) {
+            log.warn("Executor rejected pub/sub message delivery; discarding undelivered messages.", e);
+            discardUndeliveredMessages();
+        }
+    }
+
+    private void discardUndeliveredMessages() {
+        final List<Object> discardedMessages;
+        final boolean resumeReads;
+
+        synchronized (this) {
+            discardedMessages = new ArrayList<>(deliveries.size());
+
+            for (Delivery delivery = dequeue(); delivery != null; delivery = dequeue()) {
+                discardedMessages.add(delivery.message);
+            }
+
+            // Give the next message a chance to schedule a new drain
+            drainScheduled = false;
+
+            resumeReads = readsSuspended;
+            readsSuspended = false;
+        }
+
+        for (final Object discardedMessage : discardedMessages) {
+            RedisValues.release(discardedMessage);
+            metricsListener.handlePubSubMessageDropped();
+        }
+
+        if (resumeReads) {
+            flowControl.resumeReads();
+        }
+    }
+
+    private void drain() {
+        // We're still scheduled unless we run out of messages; if we stop early, either because we've delivered as much
+        // as we should in one task or because a listener threw an Error, we need to pick up where we left off
+        boolean rescheduleDrain = true;
+
+        try {
+            for (int i = 0; i < MAX_DELIVERIES_PER_TASK; i++) {
+                final Delivery delivery;
+                final List<Delivery> batch;
+                final boolean resumeReads;
+
+                synchronized (this) {
+                    if (batchListener != null) {
+                        batch = dequeueBatch();
+                        delivery = null;
+                    } else {
+                        batch = null;
+                        delivery = dequeue();
+                    }
+
+                    if (delivery == null && batch == null) {
+                        // Any messages that arrive from here on will be held until the mailbox is ready to deliver them
+                        drainScheduled = false;
+                        rescheduleDrain = false;
+
+                        return;
+                    }
+
+                    resumeReads = readsSuspended && deliveries.size() <= capacity / 2;
+
+                    if (resumeReads) {
+                        readsSuspended = false;
+                    }
+                }
+
+                if (resumeReads) {
+                    flowControl.resumeReads();
+                }
+
+                if (batch != null) {
+                    deliverBatch(batch);
+                } else {
+                    deliver(delivery);
+                }
+            }
+        } finally {
+            if (rescheduleDrain) {
+                // Let other tasks have a turn before we deliver anything else
+                scheduleDrain();
+            }
+        }
+    }
+
+    private List<Delivery> dequeueBatch() {
+        if (deliveries.isEmpty()) {
+            return null;
+        }
+
+        final List<Delivery> batch = new ArrayList<>(Math.min(deliveries.size(), maxBatchSize));
+
+        while (batch.size() < maxBatchSize && !deliveries.isEmpty()) {
+            batch.add(dequeue());
+        }
+
+        return batch;
+    }
+
+    private void deliverBatch(final List<Delivery> batch) {
+        final List<PubSubBatchListener.PublishedMessage> publishedMessages = new ArrayList<>(batch.size());
+        final long now = metricsListener != RedisMetricsListener.NO_OP ? System.nanoTime() : 0;
+
+        for (final Delivery delivery : batch) {
+            if (metricsListener != RedisMetricsListener.NO_OP) {
+                metricsListener.handlePubSubMessageDispatched(now - delivery.receivedNanos);
+            }
+
+            if (delivery.message instanceof ByteBuf) {
+                try {
+                    publishedMessages.add(new PubSubBatchListener.PublishedMessage(delivery.channelName,
+                            ByteBufUtil.getBytes((ByteBuf) delivery.message)));
+                } finally {
+                    RedisValues.release(delivery.message);
+                }
+            } else {
+                publishedMessages.add(new PubSubBatchListener.PublishedMessage(delivery.channelName, (byte[]) delivery.message));
+            }
+        }
+
+        try {
+            batchListener.handlePublishedMessages(publishedMessages);
+        } catch (final Exception e) {
+            log.warn("Pub/sub batch listener threw an exception while handling a batch of published messages.", e);
+        }
+    }
+
+    private void deliver(final Delivery delivery) {
+        if (metricsListener != RedisMetricsListener.NO_OP) {
+            metricsListener.handlePubSubMessageDispatched(System.nanoTime() - delivery.receivedNanos);
+        }
+
+        try {
+            if (delivery.message instanceof ByteBuf) {
+                listener.handlePublishedMessage(delivery.channelName, (ByteBuf) delivery.message);
+            } else {
+                listener.handlePublishedMessage(delivery.channelName, (byte[]) delivery.message);
+            }
+        } catch (final Exception e) {
+            log.warn("Pub/sub listener threw an exception while handling a published message.", e);
+        } finally {
+            RedisValues.release(delivery.message);
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be delivered to this mailbox's listener.
+     *
+     * @return the number of messages waiting to be delivered
+     */
+    synchronized int size() {
+        return deliveries.size();
+    }
+}
@@ -0,0 +1,73 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * <p>A pub/sub message is a message published to a channel (and, if the message matched a pattern subscription, the
+ * pattern it matched), decoded directly from the network by channels created for pub/sub use. It takes the place of the
+ * three- or four-element {@code message} or {@code pmessage} array that would otherwise represent the message.</p>
+ *
+ * <p>The pattern, channel name, and payload of a pub/sub message are bulk strings, and are represented as either
+ * {@code byte[]} or, for channels that decode zero-copy bulk strings, {@link ByteBuf}. In the latter case, receivers of
+ * pub/sub messages are responsible for releasing them.</p>
+ *
+ * @see RedisValues#release(Object)
+ * @see com.eatthepath.rettys.channel.RedisChannelFactory#createPubSubChannel(java.net.SocketAddress, RedisMessageConsumer)
+ */
+public class PubSubMessage {
+
+    private final Object pattern;
+    private final Object channel;
+    private final Object payload;
+
+    /**
+     * Constructs a new pub/sub message.
+     *
+     * @param pattern the pattern matched by the message's channel, or {@code null} if the message was delivered
+     *                because of a subscription to the channel itself
+     * @param channel the name of the channel to which the message was published
+     * @param payload the message itself
+     */
+    public PubSubMessage(final Object pattern, final Object channel, final Object payload) {
+        this.pattern = pattern;
+        this.channel = channel;
+        this.payload = payload;
+    }
+
+    /**
+     * Returns the pattern matched by this message's channel.
+     *
+     * @return the pattern matched by this message's channel as a {@code byte[]} or {@code ByteBuf}, or {@code null} if
+     * this message was delivered because of a subscription to the channel itself
+     */
+    public Object getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the name of the channel to which this message was published.
+     *
+     * @return the name of the channel to which this message was published as a {@code byte[]} or {@code ByteBuf}
+     */
+    public Object getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the payload of this message.
+     *
+     * @return the payload of this message as a {@code byte[]} or {@code ByteBuf}
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "PubSubMessage{" +
+                "pattern=" + pattern +
+                ", channel=" + channel +
+                ", payload=" + payload +
+                '}';
+    }
+}
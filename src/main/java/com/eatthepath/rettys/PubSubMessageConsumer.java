@@ -1,13 +1,20 @@
 package com.eatthepath.rettys;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>A pub/sub message consumer consumes messages from a single channel in pub/sub mode. Pub/sub channels are different
@@ -17,22 +24,84 @@ import java.util.concurrent.Executor;
  * command.</p>
  *
  * <p>A pub/sub message consumer is responsible for pairing groups of responses with a future associated with a command.
- * It also dispatches published messages to registered listeners.</p>
+ * It also dispatches published messages to registered listeners. Listeners for each published message are resolved
+ * without locking on the thread that consumes the message (usually an IO thread); listeners may be added and removed at
+ * any time from any thread.</p>
+ *
+ * <p>Each listener has its own bounded {@link PubSubMailbox mailbox} of undelivered messages, which delivers messages
+ * to the listener via the handler executor in the order in which they arrived, one at a time. When a listener falls
+ * far enough behind that its mailbox fills up, new messages for that listener are handled according to the consumer's
+ * {@link PubSubOverflowPolicy}. For the {@link PubSubOverflowPolicy#BLOCK} policy, the consumer stops reading from the
+ * channel that delivered the message until the listener catches up; this requires the consumer to receive messages via
+ * {@link #consumeMessage(Channel, Object)} so it knows which channel to pause. Consumers that don't know their channel
+ * let blocking mailboxes grow without limit.</p>
+ *
+ * <p>Mailboxes for {@link PubSubBatchListener batch listeners} hold messages until the end of the read cycle in which
+ * they arrived (see {@link #handleReadComplete()}) and then deliver them as a single batch, subject to each batch
+ * listener's limits on batch size and delay.</p>
+ *
+ * <p>Pub/sub message consumers work with channels that decode bulk strings either as {@code byte[]} or as zero-copy
+ * buffers. In the latter case, published messages are passed to
+ * {@link PubSubListener#handlePublishedMessage(String, ByteBuf)}, and the consumer releases each message once all of
+ * its listeners have returned.</p>
+ *
+ * <p>Servers that speak RESP3 send published messages and subscription events as push messages rather than arrays.
+ * Pub/sub message consumers are also {@link RedisPushConsumer push consumers}, and handle pub/sub push messages exactly
+ * as they would the equivalent arrays.</p>
  */
-class PubSubMessageConsumer extends CommandResponseConsumer {
+class PubSubMessageConsumer extends CommandResponseConsumer implements RedisMessageConsumer, RedisPushConsumer, PubSubMailbox.FlowControl {
 
     private final Charset charset;
+    private final int mailboxCapacity;
+    private final PubSubOverflowPolicy overflowPolicy;
+
+    private final PubSubListenerRegistry channelListeners;
+    private final PubSubListenerRegistry patternListeners;
 
-    private final Map<String, Set<PubSubListener>> channelSubscriptions = new HashMap<>();
-    private final Map<String, Set<PubSubListener>> patternSubscriptions = new HashMap<>();
+    private final Map<PubSubListener, PubSubMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Set<PubSubMailbox> batchMailboxes = ConcurrentHashMap.newKeySet();
+
+    private volatile Channel channel;
+    private final AtomicInteger blockedMailboxes = new AtomicInteger();
+
+    /**
+     * The default number of undelivered messages each listener's mailbox can hold before applying the consumer's
+     * overflow policy.
+     */
+    static final int DEFAULT_MAILBOX_CAPACITY = 1024;
 
-    private final Deque<Integer> pendingEventCounts = new ArrayDeque<>();
+    // Only accessed by the thread that consumes messages
     private int subscriptionEventCount = 0;
 
     private static final int UNSUBSCRIBE_ALL = -1;
 
     private static final Logger log = LoggerFactory.getLogger(PubSubMessageConsumer.class);
 
+    /**
+     * A pending subscription change stands in for a caller's subscription or unsubscription future in the queue of
+     * pending futures, so the number of events the future expects always travels with the future itself, even when
+     * futures are added from several threads at once.
+     */
+    private static class PendingSubscriptionChange implements PendingReply {
+        private final CompletableFuture<Object> future;
+        private final int expectedEventCount;
+
+        private PendingSubscriptionChange(final CompletableFuture<Object> future, final int expectedEventCount) {
+            this.future = future;
+            this.expectedEventCount = expectedEventCount;
+        }
+
+        @Override
+        public boolean complete(final Object value) {
+            return future.complete(value);
+        }
+
+        @Override
+        public void fail(final Throwable cause) {
+            future.completeExceptionally(cause);
+        }
+    }
+
     private enum PubSubMessageType {
         MESSAGE("message"),
         PATTERN_MESSAGE("pmessage"),
@@ -47,14 +116,81 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
             this.messageTypeBytes = messageTypeString.getBytes(StandardCharsets.US_ASCII);
         }
 
-        static PubSubMessageType fromBytes(final byte[] messageTypeBytes) {
-            for (final PubSubMessageType messageType : PubSubMessageType.values()) {
-                if (Arrays.equals(messageType.messageTypeBytes, messageTypeBytes)) {
-                    return messageType;
+        /**
+         * Returns the pub/sub message type named by the given bulk string. Each message type has a distinct combination
+         * of first byte and length, so only one candidate type ever needs a full comparison.
+         *
+         * @return the pub/sub message type named by the given bulk string, or {@code null} if the bulk string does not
+         * name a pub/sub message type
+         */
+        static PubSubMessageType fromBulkString(final Object bulkString) {
+            final int length;
+            final byte firstByte;
+
+            if (bulkString instanceof byte[]) {
+                final byte[] bytes = (byte[]) bulkString;
+
+                length = bytes.length;
+                firstByte = length > 0 ? bytes[0] : 0;
+            } else {
+                final ByteBuf byteBuf = (ByteBuf) bulkString;
+
+                length = byteBuf.readableBytes();
+                firstByte = length > 0 ? byteBuf.getByte(byteBuf.readerIndex()) : 0;
+            }
+
+            final PubSubMessageType candidate;
+
+            switch (firstByte) {
+                case 'm': {
+                    candidate = length == 7 ? MESSAGE : null;
+                    break;
+                }
+
+                case 's': {
+                    candidate = length == 9 ? SUBSCRIBE : null;
+                    break;
+                }
+
+                case 'u': {
+                    candidate = length == 11 ? UNSUBSCRIBE : null;
+                    break;
+                }
+
+                case 'p': {
+                    candidate = length == 8 ? PATTERN_MESSAGE :
+                            length == 10 ? PATTERN_SUBSCRIBE :
+                            length == 12 ? PATTERN_UNSUBSCRIBE : null;
+                    break;
+                }
+
+                default: {
+                    candidate = null;
+                    break;
                 }
             }
 
-            throw new IllegalArgumentException("No message type found for byte array: " + Arrays.toString(messageTypeBytes));
+            return candidate != null && candidate.matches(bulkString) ? candidate : null;
+        }
+
+        private boolean matches(final Object bulkString) {
+            if (bulkString instanceof byte[]) {
+                return Arrays.equals(messageTypeBytes, (byte[]) bulkString);
+            }
+
+            final ByteBuf byteBuf = (ByteBuf) bulkString;
+
+            if (byteBuf.readableBytes() != messageTypeBytes.length) {
+                return false;
+            }
+
+            for (int i = 0; i < messageTypeBytes.length; i++) {
+                if (byteBuf.getByte(byteBuf.readerIndex() + i) != messageTypeBytes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
         }
     }
 
@@ -67,9 +203,56 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      * @param charset the character set to be used when decoding channel names and patterns
      */
     public PubSubMessageConsumer(final Executor handlerExecutor, final Charset charset) {
-        super(handlerExecutor);
+        this(handlerExecutor, charset, RedisMetricsListener.NO_OP);
+    }
+
+    /**
+     * Constructs a new pub/sub message consumer that completes futures and calls listeners via the given
+     * {@code Executor}, decodes channel names and patterns using the given character set, and reports pending commands
+     * and pub/sub dispatch lag to the given metrics listener.
+     *
+     * @param handlerExecutor the {@code Executor} on which future completions will be executed and listeners will be
+     *                        notified of published messages
+     * @param charset the character set to be used when decoding channel names and patterns
+     * @param metricsListener the listener to notify as commands are added and removed and as messages are dispatched
+     */
+    public PubSubMessageConsumer(final Executor handlerExecutor, final Charset charset, final RedisMetricsListener metricsListener) {
+        this(handlerExecutor, charset, metricsListener, DEFAULT_MAILBOX_CAPACITY, PubSubOverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Constructs a new pub/sub message consumer that completes futures and calls listeners via the given
+     * {@code Executor}, decodes channel names and patterns using the given character set, reports pending commands and
+     * pub/sub dispatch lag to the given metrics listener, and limits the number of undelivered messages held for each
+     * listener.
+     *
+     * @param handlerExecutor the {@code Executor} on which future completions will be executed and listeners will be
+     *                        notified of published messages
+     * @param charset the character set to be used when decoding channel names and patterns
+     * @param metricsListener the listener to notify as commands are added and removed and as messages are dispatched or
+     *                        dropped
+     * @param mailboxCapacity the number of undelivered messages each listener's mailbox can hold before applying the
+     *                        given overflow policy; must be positive
+     * @param overflowPolicy the policy to apply to new messages for listeners whose mailboxes are full
+     */
+    public PubSubMessageConsumer(final Executor handlerExecutor,
+                                 final Charset charset,
+                                 final RedisMetricsListener metricsListener,
+                                 final int mailboxCapacity,
+                                 final PubSubOverflowPolicy overflowPolicy) {
+
+        super(handlerExecutor, CompletionDispatchStrategy.PER_REPLY, metricsListener);
+
+        if (mailboxCapacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive.");
+        }
 
         this.charset = charset;
+        this.mailboxCapacity = mailboxCapacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "Overflow policy must not be null");
+
+        this.channelListeners = new PubSubListenerRegistry(charset);
+        this.patternListeners = new PubSubListenerRegistry(charset);
     }
 
     /**
@@ -82,8 +265,7 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      */
     public void addPendingSubscriptionFuture(final CompletableFuture<Object> subscriptionFuture, final int topicCount) {
         if (topicCount > 0) {
-            pendingEventCounts.addLast(topicCount);
-            addPendingFuture(subscriptionFuture);
+            addPendingReply(new PendingSubscriptionChange(subscriptionFuture, topicCount));
         } else {
             throw new IllegalArgumentException("Number of topics must be positive, but was actually " + topicCount);
         }
@@ -100,8 +282,7 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      *                   active subscriptions
      */
     public void addPendingUnsubscriptionFuture(final CompletableFuture<Object> unsubscriptionFuture, final int topicCount) {
-        pendingEventCounts.addLast(topicCount > 0 ? topicCount : UNSUBSCRIBE_ALL);
-        addPendingFuture(unsubscriptionFuture);
+        addPendingReply(new PendingSubscriptionChange(unsubscriptionFuture, topicCount > 0 ? topicCount : UNSUBSCRIBE_ALL));
     }
 
     /**
@@ -113,7 +294,7 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      *                     empty
      */
     public void addChannelListener(final PubSubListener listener, final String... channelNames) {
-        addListener(listener, channelSubscriptions, channelNames);
+        addListener(listener, channelListeners, channelNames);
     }
 
     /**
@@ -125,19 +306,24 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      *                     empty
      */
     public void addPatternListener(final PubSubListener listener, final String... patterns) {
-        addListener(listener, patternSubscriptions, patterns);
+        addListener(listener, patternListeners, patterns);
     }
 
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    private static void addListener(final PubSubListener listener, final Map<String, Set<PubSubListener>> listenerMap, final String... topics) {
-        if (Objects.requireNonNull(topics, "List of topics must not be null").length > 0) {
-            synchronized (listenerMap) {
-                for (final String topic : topics) {
-                    listenerMap.computeIfAbsent(topic, c -> new HashSet<>()).add(listener);
+    private void addListener(final PubSubListener listener, final PubSubListenerRegistry registry, final String... topics) {
+        // Listener registration is rare, so we can afford to serialize it to keep mailboxes and registrations in sync
+        synchronized (mailboxes) {
+            registry.addListener(listener, topics);
+
+            mailboxes.computeIfAbsent(listener, l -> {
+                final PubSubMailbox mailbox = new PubSubMailbox(l, getHandlerExecutor(), mailboxCapacity,
+                        overflowPolicy, this, getMetricsListener());
+
+                if (mailbox.isBatching()) {
+                    batchMailboxes.add(mailbox);
                 }
-            }
-        } else {
-            throw new IllegalArgumentException("List of topics must not be empty");
+
+                return mailbox;
+            });
         }
     }
 
@@ -151,7 +337,7 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      *                     the given listener will be removed from all channels to which it was subscribed
      */
     public void removeChannelListener(final PubSubListener listener, final String... channelNames) {
-        removeListener(listener, channelSubscriptions, channelNames);
+        removeListener(listener, channelListeners, channelNames);
     }
 
     /**
@@ -164,42 +350,138 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
      *                 the given listener will be removed from all patterns to which it was subscribed
      */
     public void removePatternListener(final PubSubListener listener, final String... patterns) {
-        removeListener(listener, patternSubscriptions, patterns);
+        removeListener(listener, patternListeners, patterns);
     }
 
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    private static void removeListener(final PubSubListener listener, final Map<String, Set<PubSubListener>> listenerMap, final String... topics) {
-        if (topics == null || topics.length == 0) {
-            synchronized (listenerMap) {
-                // No topics were specified, so remove the given listener from ALL topics
-                listenerMap.values().forEach(listenerSet -> listenerSet.remove(listener));
-            }
-        } else {
-            synchronized (listenerMap) {
-                for (final String topic : topics) {
-                    listenerMap.getOrDefault(topic, Collections.emptySet()).remove(listener);
+    private void removeListener(final PubSubListener listener, final PubSubListenerRegistry registry, final String... topics) {
+        synchronized (mailboxes) {
+            registry.removeListener(listener, topics);
+
+            // Messages already in the mailbox will still be delivered
+            if (!channelListeners.containsListener(listener) && !patternListeners.containsListener(listener)) {
+                final PubSubMailbox mailbox = mailboxes.remove(listener);
+
+                if (mailbox != null && batchMailboxes.remove(mailbox)) {
+                    // Don't leave any held messages stranded
+                    mailbox.flush();
                 }
             }
         }
     }
 
+    /**
+     * Consumes a message from the given channel, which this consumer will pause if a listener's mailbox fills up and
+     * the consumer's overflow policy is {@link PubSubOverflowPolicy#BLOCK}.
+     *
+     * @param source the channel that received the message
+     * @param message the message sent by the server
+     */
+    @Override
+    public void consumeMessage(final Channel source, final Object message) {
+        channel = source;
+        consumeMessage(message);
+    }
+
+    /**
+     * Consumes a push message from the given channel. Pub/sub events are handled as if they had arrived as arrays;
+     * other push messages are discarded.
+     *
+     * @param source the channel that received the push message
+     * @param pushMessage the push message sent by the server
+     */
+    @Override
+    public void consumePushMessage(final Channel source, final RedisPushMessage pushMessage) {
+        final Object[] elements = pushMessage.getElements();
+
+        if (elements.length > 0 && isBulkString(elements[0]) && PubSubMessageType.fromBulkString(elements[0]) != null) {
+            consumeMessage(source, elements);
+        } else {
+            log.debug("Discarding push message not related to pub/sub: {}", pushMessage);
+            RedisValues.release(pushMessage);
+        }
+    }
+
+    @Override
+    public void handleReadComplete(final Channel source) {
+        handleReadComplete();
+    }
+
+    /**
+     * Completes any batched futures and delivers all published messages held for batch listeners during the read
+     * cycle that just finished.
+     */
+    @Override
+    public void handleReadComplete() {
+        super.handleReadComplete();
+        flushBatchMailboxes();
+    }
+
+    @Override
+    public void handleChannelClosure(final Channel channel) {
+        handleChannelClosure();
+    }
+
+    @Override
+    public void handleChannelClosure() {
+        flushBatchMailboxes();
+        super.handleChannelClosure();
+    }
+
+    private void flushBatchMailboxes() {
+        for (final PubSubMailbox batchMailbox : batchMailboxes) {
+            batchMailbox.flush();
+        }
+    }
+
+    @Override
+    public void suspendReads() {
+        final Channel channel = this.channel;
+
+        if (blockedMailboxes.getAndIncrement() == 0 && channel != null) {
+            channel.config().setAutoRead(false);
+        }
+    }
+
+    @Override
+    public void resumeReads() {
+        final Channel channel = this.channel;
+
+        if (blockedMailboxes.decrementAndGet() == 0 && channel != null) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
     @Override
     public void consumeMessage(final Object message) {
-        // The message could be a message array, a subscribe/unsubscribe array, or a String response to a PING or QUIT
-        // command. In theory, it could also be an exception response to a spurious non-pub/sub command.
-        if (message instanceof Object[]) {
+        // The message could be a message array (or a pre-decoded PubSubMessage), a subscribe/unsubscribe array, or a
+        // String response to a PING or QUIT command. In theory, it could also be an exception response to a spurious
+        // non-pub/sub command.
+        if (message instanceof PubSubMessage) {
+            final PubSubMessage pubSubMessage = (PubSubMessage) message;
+
+            try {
+                if (pubSubMessage.getPattern() == null) {
+                    handleChannelMessage(pubSubMessage.getChannel(), pubSubMessage.getPayload());
+                } else {
+                    handlePatternMessage(pubSubMessage.getPattern(), pubSubMessage.getChannel(), pubSubMessage.getPayload());
+                }
+            } finally {
+                RedisValues.release(pubSubMessage);
+            }
+        } else if (message instanceof Object[]) {
             final Object[] messageArray = (Object[]) message;
 
-            if (messageArray.length >= 3 && messageArray[0] instanceof byte[] && messageArray[1] instanceof byte[]) {
-                try {
-                    final PubSubMessageType messageType = PubSubMessageType.fromBytes((byte[]) messageArray[0]);
+            if (messageArray.length >= 3 && isBulkString(messageArray[0]) && isBulkString(messageArray[1])) {
+                final PubSubMessageType messageType = PubSubMessageType.fromBulkString(messageArray[0]);
 
+                if (messageType != null) {
                     switch (messageType) {
                         case SUBSCRIBE:
                         case UNSUBSCRIBE:
                         case PATTERN_SUBSCRIBE:
                         case PATTERN_UNSUBSCRIBE: {
                             if (messageArray.length == 3 && messageArray[2] instanceof Long) {
+                                RedisValues.release(messageArray);
                                 handleSubscriptionChangeEvent((Long) messageArray[2]);
                             } else {
                                 // This isn't the "shape" of message we'd expect; it's possible this is a response to
@@ -211,8 +493,12 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
                         }
 
                         case MESSAGE: {
-                            if (messageArray.length == 3 && messageArray[2] instanceof byte[]) {
-                                handleChannelMessage(new String((byte[]) messageArray[1], charset), (byte[]) messageArray[2]);
+                            if (messageArray.length == 3 && isBulkString(messageArray[2])) {
+                                try {
+                                    handleChannelMessage(messageArray[1], messageArray[2]);
+                                } finally {
+                                    RedisValues.release(messageArray);
+                                }
                             } else {
                                 // This isn't the "shape" of message we'd expect; it's possible this is a response to
                                 // another command (even though that would be really weird).
@@ -223,10 +509,12 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
                         }
 
                         case PATTERN_MESSAGE: {
-                            if (messageArray.length == 4 && messageArray[2] instanceof byte[] && messageArray[3] instanceof byte[]) {
-                                handlePatternMessage(new String((byte[]) messageArray[1], charset),
-                                        new String((byte[]) messageArray[2], charset),
-                                        (byte[]) messageArray[3]);
+                            if (messageArray.length == 4 && isBulkString(messageArray[2]) && isBulkString(messageArray[3])) {
+                                try {
+                                    handlePatternMessage(messageArray[1], messageArray[2], messageArray[3]);
+                                } finally {
+                                    RedisValues.release(messageArray);
+                                }
                             } else {
                                 // This isn't the "shape" of message we'd expect; it's possible this is a response to
                                 // another command (even though that would be really weird).
@@ -242,57 +530,84 @@ class PubSubMessageConsumer extends CommandResponseConsumer {
                             throw new RuntimeException("Unexpected pub/sub message type: " + messageType);
                         }
                     }
-                } catch (final IllegalArgumentException e) {
+                } else {
                     // The first element of the array didn't contain a known pub/sub message type
                     super.consumeMessage(message);
                 }
+            } else {
+                // This can't be a pub/sub event, so it must be a reply to some other command
+                super.consumeMessage(message);
             }
         } else {
             super.consumeMessage(message);
         }
     }
 
+    private static boolean isBulkString(final Object value) {
+        return value instanceof byte[] || value instanceof ByteBuf;
+    }
+
+    private String bulkStringToString(final Object bulkString) {
+        return bulkString instanceof byte[] ?
+                new String((byte[]) bulkString, charset) : ((ByteBuf) bulkString).toString(charset);
+    }
+
     private void handleSubscriptionChangeEvent(final long subscriptionCount) {
-        if (!pendingEventCounts.isEmpty()) {
-            final int expectedCount = pendingEventCounts.peek();
+        final Object pendingReply = peekPendingReply();
+
+        if (pendingReply instanceof PendingSubscriptionChange) {
+            final int expectedCount = ((PendingSubscriptionChange) pendingReply).expectedEventCount;
             subscriptionEventCount += 1;
 
             if (subscriptionEventCount == expectedCount || (expectedCount == UNSUBSCRIBE_ALL && subscriptionCount == 0)) {
                 // We've received as many subscription events as we were expecting and should fulfill the next pending
                 // future.
-                pendingEventCounts.removeFirst();
                 subscriptionEventCount = 0;
 
-                consumeMessage(subscriptionCount);
+                super.consumeMessage(subscriptionCount);
             }
         } else {
             log.error("Received unexpected subscription change event.");
         }
     }
 
-    private void handleChannelMessage(final String channelName, final byte[] messageBytes) {
-        // This may seem like too much dispatching to the executor, but this method may be called by an IO thread. We
-        // want to make sure we're NOT synchronizing in IO threads, so we dispatch the dispatcher.
-        getHandlerExecutor().execute(() -> {
-            synchronized (channelSubscriptions) {
-                channelSubscriptions.getOrDefault(channelName, Collections.emptySet())
-                        .forEach(pubSubListener ->
-                                getHandlerExecutor().execute(() ->
-                                        pubSubListener.handlePublishedMessage(channelName, messageBytes)));
-            }
-        });
+    private void handleChannelMessage(final Object channelName, final Object message) {
+        // Listener lookups never block, so we can resolve listeners right here (possibly on an IO thread) and hand each
+        // message straight to the listeners' mailboxes. Looking up listeners by the raw channel name also means we can
+        // reuse the registered channel name instead of decoding a new string for every message.
+        final PubSubListenerRegistry.Registration registration = channelListeners.getRegistration(channelName);
+
+        if (registration != null) {
+            dispatchMessage(registration.getListeners(), registration.getTopic(), message);
+        }
+    }
+
+    private void handlePatternMessage(final Object pattern, final Object channelName, final Object message) {
+        final PubSubListenerRegistry.Registration registration = patternListeners.getRegistration(pattern);
+
+        // Channel names for pattern messages aren't registered anywhere, so we only decode them if somebody's listening
+        if (registration != null) {
+            dispatchMessage(registration.getListeners(), bulkStringToString(channelName), message);
+        }
+    }
+
+    private long getReceivedNanos() {
+        // Don't bother checking the time if nobody's going to look at it
+        return getMetricsListener() != RedisMetricsListener.NO_OP ? System.nanoTime() : 0;
     }
 
-    private void handlePatternMessage(final String pattern, final String channelName, final byte[] messageBytes) {
-        // This may seem like too much dispatching to the executor, but this method may be called by an IO thread. We
-        // want to make sure we're NOT synchronizing in IO threads, so we dispatch the dispatcher.
-        getHandlerExecutor().execute(() -> {
-            synchronized (patternSubscriptions) {
-                patternSubscriptions.getOrDefault(pattern, Collections.emptySet())
-                        .forEach(pubSubListener ->
-                                getHandlerExecutor().execute(() ->
-                                        pubSubListener.handlePublishedMessage(channelName, messageBytes)));
+    private void dispatchMessage(final PubSubListener[] pubSubListeners, final String channelName, final Object message) {
+        if (pubSubListeners.length > 0) {
+            final long receivedNanos = getReceivedNanos();
+
+            for (final PubSubListener pubSubListener : pubSubListeners) {
+                final PubSubMailbox mailbox = mailboxes.get(pubSubListener);
+
+                // The mailbox may be missing if the listener was removed since we looked up the listeners
+                if (mailbox != null) {
+                    mailbox.offer(channelName, message, receivedNanos);
+                }
             }
-        });
+        }
     }
 }
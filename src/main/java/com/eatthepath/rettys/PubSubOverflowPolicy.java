@@ -0,0 +1,34 @@
+package com.eatthepath.rettys;
+
+/**
+ * An overflow policy determines what happens when a published message arrives for a pub/sub listener whose queue of
+ * undelivered messages is already full, usually because the listener can't keep up with the rate at which messages are
+ * published.
+ */
+public enum PubSubOverflowPolicy {
+
+    /**
+     * Queues the message anyway, but stops reading from the channel (by turning off its {@code autoRead} option) until
+     * the listener has worked through at least half of its queue. No messages are lost, but a slow listener slows down
+     * delivery to all other listeners on the same channel, and, eventually, the server may disconnect the client if
+     * its output buffer grows too large.
+     */
+    BLOCK,
+
+    /**
+     * Discards the oldest undelivered message to make room for the new message.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discards the new message.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Replaces the most recent undelivered message published to the same channel with the new message, so listeners
+     * always receive the latest message for each channel; if no message for the same channel is waiting to be
+     * delivered, discards the oldest undelivered message to make room for the new message.
+     */
+    CONFLATE
+}
@@ -0,0 +1,211 @@
+package com.eatthepath.rettys;
+
+import com.eatthepath.rettys.channel.RedisChannelFactory;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>A Redis client spreads commands across several connections to the same Redis server. A single channel can only
+ * ever use one event loop thread, and so clients open one connection ("stripe") per event loop in their channel
+ * factory's event loop group and route each command to one of those stripes. Each stripe pipelines commands
+ * independently (see {@link PipeliningCommandExecutor}).</p>
+ *
+ * <p>Redis only guarantees that commands sent over the same connection are executed in order. Callers that need
+ * ordering across commands should use {@link StripeSelection#KEY_HASH} (which sends all commands for the same key over
+ * the same connection) or issue their commands from a single thread with {@link StripeSelection#THREAD}.</p>
+ *
+ * <p>Clients act as the shared {@link RedisMessageConsumer} for all of their channels and hand each message to the
+ * stripe for the channel that produced it.</p>
+ */
+public class RedisClient implements RedisCommandExecutor, RedisMessageConsumer {
+
+    private final PipeliningCommandExecutor[] stripes;
+    private final StripeSelection stripeSelection;
+
+    private final Map<Channel, PipeliningCommandExecutor> stripesByChannel = new ConcurrentHashMap<>();
+
+    // Each event loop runs on a single thread for its entire life, so we can find the stripe for the current event loop
+    // (if any) with a single lookup
+    private final Map<Thread, PipeliningCommandExecutor> stripesByEventLoopThread = new ConcurrentHashMap<>();
+
+    /**
+     * A stripe selection strategy determines which connection a client uses to send a command.
+     */
+    public enum StripeSelection {
+
+        /**
+         * Chooses a stripe according to the calling thread. Callers running on one of the client's event loops use
+         * that event loop's connection, which avoids a thread hand-off entirely; other threads are assigned a stripe
+         * by thread ID.
+         */
+        THREAD,
+
+        /**
+         * Chooses a stripe according to the hash of a command's first argument (normally its key), so that all
+         * commands for the same key use the same connection. Commands with no arguments are routed as if by
+         * {@link #THREAD}. Keys are hashed in the form in which they're given (i.e. as a {@code String} or as a
+         * {@code byte[]}), and so callers should consistently use the same form for the same key.
+         */
+        KEY_HASH
+    }
+
+    /**
+     * Connects a new client to the Redis server at the given address with one connection per event loop in the given
+     * channel factory's event loop group.
+     *
+     * @param channelFactory the factory with which to create channels
+     * @param address the address of the Redis server
+     * @param handlerExecutor the executor on which futures returned by the new client will be completed
+     * @param dispatchStrategy the strategy with which the new client will hand replies to waiting futures
+     * @param stripeSelection the strategy with which the new client will choose a connection for each command
+     *
+     * @return a future that completes with a new client when all of its connections are ready to use, or
+     * exceptionally if any connection could not be established
+     */
+    public static CompletableFuture<RedisClient> connect(final RedisChannelFactory channelFactory,
+                                                         final SocketAddress address,
+                                                         final Executor handlerExecutor,
+                                                         final CompletionDispatchStrategy dispatchStrategy,
+                                                         final StripeSelection stripeSelection) {
+
+        final List<PipeliningCommandExecutor> stripes = new ArrayList<>();
+
+        for (final EventExecutor ignored : channelFactory.getEventLoopGroup()) {
+            stripes.add(new PipeliningCommandExecutor(
+                    new CommandResponseConsumer(handlerExecutor, dispatchStrategy, channelFactory.getMetricsListener()),
+                    channelFactory.getCommandTracer()));
+        }
+
+        final RedisClient client = new RedisClient(stripes, stripeSelection);
+        final List<CompletableFuture<Void>> connectFutures = new ArrayList<>(stripes.size());
+
+        for (final EventExecutor eventExecutor : channelFactory.getEventLoopGroup()) {
+            final PipeliningCommandExecutor stripe = stripes.get(connectFutures.size());
+            final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
+
+            final ChannelFuture createChannelFuture =
+                    channelFactory.createChannel(address, client, null, (EventLoop) eventExecutor);
+
+            // Register the channel right away; the server won't send anything until we send a command
+            client.addStripe(createChannelFuture.channel(), stripe);
+
+            createChannelFuture.addListener(future -> {
+                if (future.isSuccess()) {
+                    connectFuture.complete(null);
+                } else {
+                    connectFuture.completeExceptionally(future.cause());
+                }
+            });
+
+            connectFutures.add(connectFuture);
+        }
+
+        return CompletableFuture.allOf(connectFutures.toArray(new CompletableFuture<?>[0])).handle((ignored, cause) -> {
+            if (cause != null) {
+                client.close();
+                throw new IllegalStateException("Could not connect all stripes", cause);
+            }
+
+            return client;
+        });
+    }
+
+    RedisClient(final List<PipeliningCommandExecutor> stripes, final StripeSelection stripeSelection) {
+        if (stripes.isEmpty()) {
+            throw new IllegalArgumentException("Clients must have at least one stripe.");
+        }
+
+        this.stripes = stripes.toArray(new PipeliningCommandExecutor[0]);
+        this.stripeSelection = stripeSelection;
+    }
+
+    void addStripe(final Channel channel, final PipeliningCommandExecutor stripe) {
+        stripe.setChannel(channel);
+        stripesByChannel.put(channel, stripe);
+
+        // Learn which thread belongs to the channel's event loop by asking the event loop itself
+        channel.eventLoop().execute(() -> stripesByEventLoopThread.put(Thread.currentThread(), stripe));
+    }
+
+    @Override
+    public CompletableFuture<Object> executeCommand(final RedisCommand command) {
+        return selectStripe(command).executeCommand(command);
+    }
+
+    PipeliningCommandExecutor selectStripe(final RedisCommand command) {
+        if (stripeSelection == StripeSelection.KEY_HASH && command.getComponents().length > 1) {
+            return stripes[Math.floorMod(getKeyHash(command.getComponents()[1]), stripes.length)];
+        }
+
+        // If we're already on one of our event loops, stay there
+        final PipeliningCommandExecutor eventLoopStripe = stripesByEventLoopThread.get(Thread.currentThread());
+
+        if (eventLoopStripe != null) {
+            return eventLoopStripe;
+        }
+
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    private static int getKeyHash(final Object key) {
+        if (key instanceof byte[]) {
+            return Arrays.hashCode((byte[]) key);
+        }
+
+        return key != null ? key.hashCode() : 0;
+    }
+
+    /**
+     * Closes all of this client's connections.
+     */
+    public void close() {
+        for (final PipeliningCommandExecutor stripe : stripes) {
+            final Channel channel = stripe.getChannel();
+
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public void consumeMessage(final Channel source, final Object message) {
+        getStripe(source).consumeMessage(source, message);
+    }
+
+    @Override
+    public void handleReadComplete(final Channel source) {
+        getStripe(source).handleReadComplete(source);
+    }
+
+    @Override
+    public void handleChannelClosure(final Channel channel) {
+        final PipeliningCommandExecutor stripe = stripesByChannel.remove(channel);
+
+        if (stripe != null) {
+            stripesByEventLoopThread.values().remove(stripe);
+            stripe.handleChannelClosure(channel);
+        }
+    }
+
+    private PipeliningCommandExecutor getStripe(final Channel channel) {
+        final PipeliningCommandExecutor stripe = stripesByChannel.get(channel);
+
+        if (stripe == null) {
+            throw new IllegalStateException("Received a message from an unknown channel: " + channel);
+        }
+
+        return stripe;
+    }
+}
@@ -6,6 +6,12 @@ import java.util.function.Function;
 /**
  * <p>A Redis command is sent by a client to the Redis server to perform some action. Commands always have a command
  * type (e.g. "PING") and may optionally have one or more arguments (e.g. "LLEN mylist").</p>
+ *
+ * <p>Components may be {@code String}, {@code byte[]}, or {@code Number} instances, or {@code null}. Large arguments
+ * may also be passed as {@link io.netty.buffer.ByteBuf}, {@link java.nio.ByteBuffer}, or
+ * {@link io.netty.channel.FileRegion} instances, which are sent to the server without being copied. Ownership of
+ * {@code ByteBuf} and {@code FileRegion} components passes to the channel when a command is written, and the channel
+ * releases them once they've been sent; callers that want to keep using such a component must retain it first.</p>
  */
 public class RedisCommand {
 
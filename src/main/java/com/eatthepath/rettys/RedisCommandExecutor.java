@@ -0,0 +1,19 @@
+package com.eatthepath.rettys;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A Redis command executor sends commands to a Redis server and provides futures that complete when the server replies.
+ */
+public interface RedisCommandExecutor {
+
+    /**
+     * Sends the given command to the Redis server.
+     *
+     * @param command the command to send to the server
+     *
+     * @return a future that completes with the server's reply to the given command, or exceptionally if the server
+     * reported an error, the command could not be sent, or the connection was closed before the server replied
+     */
+    CompletableFuture<Object> executeCommand(RedisCommand command);
+}
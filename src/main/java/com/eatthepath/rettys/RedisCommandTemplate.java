@@ -0,0 +1,187 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * <p>A Redis command template describes a "shape" of command that's sent frequently, like {@code GET key} or
+ * {@code SET key value}. Templates have a fixed number of components, of which some number of leading components (at
+ * least the command type) are constant and the rest are supplied each time the template is {@link #bind(Object...)
+ * bound} to produce a command. The array header and constant components of a template are encoded once and reused for
+ * every command produced by the template, and only the variable arguments are encoded when a command is sent.</p>
+ *
+ * <p>Templates are immutable (apart from their encoding cache) and thread-safe, and are intended to be created once and
+ * shared.</p>
+ */
+public class RedisCommandTemplate {
+
+    private final Object[] constantComponents;
+    private final int argumentCount;
+
+    private volatile EncodedPrefix encodedPrefix;
+
+    private static class EncodedPrefix {
+        private final Charset charset;
+        private final byte[] bytes;
+        private final ByteBuf buffer;
+
+        private EncodedPrefix(final Charset charset, final byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+
+            // The prefix is shared by every command produced by the template, so nobody gets to modify or release it
+            this.buffer = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(bytes).asReadOnly());
+        }
+    }
+
+    /**
+     * Constructs a new command template.
+     *
+     * @param argumentCount the number of variable arguments that follow the constant components in commands produced
+     *                      by this template
+     * @param constantComponents the constant leading components of commands produced by this template, starting with
+     *                           the command type; components must be {@code String}, {@code byte[]}, or {@code Number}
+     *                           instances
+     */
+    public RedisCommandTemplate(final int argumentCount, final Object... constantComponents) {
+        if (argumentCount < 0) {
+            throw new IllegalArgumentException("Argument count must not be negative.");
+        }
+
+        if (constantComponents.length == 0) {
+            throw new IllegalArgumentException("Templates must have at least one constant component.");
+        }
+
+        for (final Object component : constantComponents) {
+            Objects.requireNonNull(component, "Constant components must not be null.");
+        }
+
+        this.constantComponents = constantComponents.clone();
+        this.argumentCount = argumentCount;
+    }
+
+    /**
+     * Creates a new command from this template with the given variable arguments.
+     *
+     * @param arguments the variable arguments for the new command
+     *
+     * @return a new command with this template's constant components followed by the given arguments
+     *
+     * @throws IllegalArgumentException if the number of given arguments does not match this template's argument count
+     */
+    public PreparedRedisCommand bind(final Object... arguments) {
+        if (arguments.length != argumentCount) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %d arguments, but got %d.", argumentCount, arguments.length));
+        }
+
+        final Object[] components = new Object[constantComponents.length + arguments.length];
+        System.arraycopy(constantComponents, 0, components, 0, constantComponents.length);
+        System.arraycopy(arguments, 0, components, constantComponents.length, arguments.length);
+
+        return new PreparedRedisCommand(this, components);
+    }
+
+    /**
+     * Returns the number of constant leading components in commands produced by this template.
+     *
+     * @return the number of constant leading components in commands produced by this template
+     */
+    public int getConstantComponentCount() {
+        return constantComponents.length;
+    }
+
+    /**
+     * Returns the number of variable arguments in commands produced by this template.
+     *
+     * @return the number of variable arguments in commands produced by this template
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * Returns a read-only view of the encoded array header and constant components of commands produced by this
+     * template. The encoded prefix is cached after it's first requested, and each call returns a new view of the cached
+     * prefix with its own reader and writer indices. Views do not need to be released.
+     *
+     * @param charset the character set with which to encode string components
+     *
+     * @return a read-only view of the encoded array header and constant components of commands produced by this
+     * template
+     */
+    public ByteBuf getEncodedPrefix(final Charset charset) {
+        return getCachedPrefix(charset).buffer.duplicate();
+    }
+
+    /**
+     * Returns the length, in bytes, of the encoded array header and constant components of commands produced by this
+     * template.
+     *
+     * @param charset the character set with which to encode string components
+     *
+     * @return the length of the encoded prefix of commands produced by this template
+     */
+    public int getEncodedPrefixLength(final Charset charset) {
+        return getCachedPrefix(charset).bytes.length;
+    }
+
+    /**
+     * Writes the encoded array header and constant components of commands produced by this template to the given
+     * buffer. Unlike {@link #getEncodedPrefix(Charset)}, this method does not allocate once the prefix is cached.
+     *
+     * @param charset the character set with which to encode string components
+     * @param out the buffer to which to write the encoded prefix
+     */
+    public void writeEncodedPrefix(final Charset charset, final ByteBuf out) {
+        out.writeBytes(getCachedPrefix(charset).bytes);
+    }
+
+    private EncodedPrefix getCachedPrefix(final Charset charset) {
+        EncodedPrefix cachedPrefix = encodedPrefix;
+
+        if (cachedPrefix == null || !cachedPrefix.charset.equals(charset)) {
+            // Racing threads may both encode the prefix, but they'll produce identical results
+            cachedPrefix = new EncodedPrefix(charset, encodePrefix(charset));
+            encodedPrefix = cachedPrefix;
+        }
+
+        return cachedPrefix;
+    }
+
+    private byte[] encodePrefix(final Charset charset) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        writeAscii("*" + (constantComponents.length + argumentCount) + "\r\n", outputStream);
+
+        for (final Object component : constantComponents) {
+            final byte[] componentBytes;
+
+            if (component instanceof byte[]) {
+                componentBytes = (byte[]) component;
+            } else if (component instanceof String) {
+                componentBytes = ((String) component).getBytes(charset);
+            } else if (component instanceof Number) {
+                componentBytes = component.toString().getBytes(StandardCharsets.US_ASCII);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument type: " + component.getClass());
+            }
+
+            writeAscii("$" + componentBytes.length + "\r\n", outputStream);
+            outputStream.write(componentBytes, 0, componentBytes.length);
+            writeAscii("\r\n", outputStream);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private static void writeAscii(final String string, final ByteArrayOutputStream outputStream) {
+        final byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+        outputStream.write(bytes, 0, bytes.length);
+    }
+}
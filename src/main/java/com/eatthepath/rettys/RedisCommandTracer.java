@@ -0,0 +1,20 @@
+package com.eatthepath.rettys;
+
+/**
+ * A command tracer receives a {@link CommandTimeline} for every command executed by the executors that use it. Tracers
+ * are called on the thread that completes each command's future, after the future's own dependent actions have run;
+ * they must be thread-safe and should return quickly.
+ *
+ * @see com.eatthepath.rettys.channel.RedisChannelFactory#setCommandTracer(RedisCommandTracer)
+ */
+@FunctionalInterface
+public interface RedisCommandTracer {
+
+    /**
+     * Handles the completion (normal or exceptional) of a traced command.
+     *
+     * @param command the command that completed
+     * @param timeline the timestamps at which the command passed through each stage of its life
+     */
+    void handleCommandTraced(RedisCommand command, CommandTimeline timeline);
+}
@@ -7,4 +7,13 @@ public interface RedisMessageConsumer {
     void consumeMessage(Channel source, Object message);
 
     void handleChannelClosure(Channel channel);
+
+    /**
+     * Notes that the given channel has finished its current read cycle, and that no more messages will be delivered
+     * until the channel reads more data. By default, this method does nothing.
+     *
+     * @param source the channel that finished a read cycle
+     */
+    default void handleReadComplete(final Channel source) {
+    }
 }
@@ -0,0 +1,78 @@
+package com.eatthepath.rettys;
+
+/**
+ * <p>A metrics listener receives notifications about the work done by Redis channels and the executors and consumers
+ * that use them. All methods have empty default implementations, and listeners need only override the methods for
+ * the metrics they care about. Channels and executors that use the {@link #NO_OP} listener skip the work of measuring
+ * anything at all.</p>
+ *
+ * <p>Metrics listeners may be called from many threads (including IO threads) at once and must be thread-safe. They
+ * should return quickly and must never block.</p>
+ *
+ * @see RedisMetricsRecorder
+ * @see com.eatthepath.rettys.channel.RedisChannelFactory#setMetricsListener(RedisMetricsListener)
+ */
+public interface RedisMetricsListener {
+
+    /**
+     * A metrics listener that ignores all notifications.
+     */
+    RedisMetricsListener NO_OP = new RedisMetricsListener() {};
+
+    /**
+     * Handles the completion of a command.
+     *
+     * @param command the command that completed
+     * @param latencyNanos the time, in nanoseconds, between the command's submission and its completion
+     * @param cause the cause of the command's failure, or {@code null} if the command completed successfully
+     */
+    default void handleCommandCompleted(final RedisCommand command, final long latencyNanos, final Throwable cause) {
+    }
+
+    /**
+     * Handles the encoding of a command to be sent to a Redis server.
+     *
+     * @param bytes the number of bytes in the encoded command
+     */
+    default void handleBytesEncoded(final long bytes) {
+    }
+
+    /**
+     * Handles the arrival of bytes from a Redis server, which will be decoded as replies or other messages.
+     *
+     * @param bytes the number of bytes received from the server
+     */
+    default void handleBytesDecoded(final long bytes) {
+    }
+
+    /**
+     * Handles the addition of a command to the queue of commands awaiting replies from a Redis server.
+     */
+    default void handlePendingCommandAdded() {
+    }
+
+    /**
+     * Handles the removal of a command from the queue of commands awaiting replies from a Redis server, either because
+     * a reply arrived or because the channel closed.
+     */
+    default void handlePendingCommandRemoved() {
+    }
+
+    /**
+     * Handles the dispatch of a published message to a pub/sub listener.
+     *
+     * @param dispatchLagNanos the time, in nanoseconds, between the arrival of the message from the server and the
+     *                         moment it was handed to the listener
+     */
+    default void handlePubSubMessageDispatched(final long dispatchLagNanos) {
+    }
+
+    /**
+     * Handles the loss of a published message that was discarded because a pub/sub listener's queue of undelivered
+     * messages was full.
+     *
+     * @see PubSubOverflowPolicy
+     */
+    default void handlePubSubMessageDropped() {
+    }
+}
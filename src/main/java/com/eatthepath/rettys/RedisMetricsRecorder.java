@@ -0,0 +1,146 @@
+package com.eatthepath.rettys;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metrics recorder is a {@link RedisMetricsListener} that keeps simple, in-memory records of the metrics it receives:
+ * a {@link LatencyHistogram} of latencies for each type of command, running totals of bytes encoded and decoded, the
+ * number of commands currently awaiting replies, a histogram of pub/sub dispatch lag, and the number of dropped pub/sub
+ * messages. A single recorder may be shared by any number of channels and executors.
+ */
+public class RedisMetricsRecorder implements RedisMetricsListener {
+
+    private final Map<String, LatencyHistogram> commandLatencies = new ConcurrentHashMap<>();
+    private final LongAdder failedCommands = new LongAdder();
+
+    private final LongAdder bytesEncoded = new LongAdder();
+    private final LongAdder bytesDecoded = new LongAdder();
+
+    private final LongAdder pendingCommands = new LongAdder();
+
+    private final LatencyHistogram pubSubDispatchLag = new LatencyHistogram();
+    private final LongAdder droppedPubSubMessages = new LongAdder();
+
+    @Override
+    public void handleCommandCompleted(final RedisCommand command, final long latencyNanos, final Throwable cause) {
+        commandLatencies.computeIfAbsent(getCommandName(command), ignored -> new LatencyHistogram())
+                .recordValue(latencyNanos);
+
+        if (cause != null) {
+            failedCommands.increment();
+        }
+    }
+
+    private static String getCommandName(final RedisCommand command) {
+        final Object[] components = command.getComponents();
+
+        if (components.length == 0) {
+            return "";
+        }
+
+        final Object commandName = components[0];
+
+        return commandName instanceof byte[] ?
+                new String((byte[]) commandName, StandardCharsets.US_ASCII) : String.valueOf(commandName);
+    }
+
+    @Override
+    public void handleBytesEncoded(final long bytes) {
+        bytesEncoded.add(bytes);
+    }
+
+    @Override
+    public void handleBytesDecoded(final long bytes) {
+        bytesDecoded.add(bytes);
+    }
+
+    @Override
+    public void handlePendingCommandAdded() {
+        pendingCommands.increment();
+    }
+
+    @Override
+    public void handlePendingCommandRemoved() {
+        pendingCommands.decrement();
+    }
+
+    @Override
+    public void handlePubSubMessageDispatched(final long dispatchLagNanos) {
+        pubSubDispatchLag.recordValue(dispatchLagNanos);
+    }
+
+    @Override
+    public void handlePubSubMessageDropped() {
+        droppedPubSubMessages.increment();
+    }
+
+    /**
+     * Returns the latency histograms for all types of commands that have completed so far, keyed by command name (e.g.
+     * "GET").
+     *
+     * @return an unmodifiable view of the latency histograms for all types of commands that have completed so far
+     */
+    public Map<String, LatencyHistogram> getCommandLatencies() {
+        return Collections.unmodifiableMap(commandLatencies);
+    }
+
+    /**
+     * Returns the number of commands that have failed.
+     *
+     * @return the number of commands that have failed
+     */
+    public long getFailedCommands() {
+        return failedCommands.sum();
+    }
+
+    /**
+     * Returns the total number of bytes encoded for transmission to Redis servers.
+     *
+     * @return the total number of bytes encoded for transmission to Redis servers
+     */
+    public long getBytesEncoded() {
+        return bytesEncoded.sum();
+    }
+
+    /**
+     * Returns the total number of bytes received from Redis servers.
+     *
+     * @return the total number of bytes received from Redis servers
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded.sum();
+    }
+
+    /**
+     * Returns the number of commands currently awaiting replies across all connections that report to this recorder.
+     *
+     * @return the number of commands currently awaiting replies
+     */
+    public long getPendingCommands() {
+        return pendingCommands.sum();
+    }
+
+    /**
+     * Returns a histogram of the time, in nanoseconds, between the arrival of published messages and their dispatch to
+     * pub/sub listeners.
+     *
+     * @return a histogram of pub/sub dispatch lag
+     */
+    public LatencyHistogram getPubSubDispatchLag() {
+        return pubSubDispatchLag;
+    }
+
+    /**
+     * Returns the number of published messages discarded because a pub/sub listener's queue of undelivered messages was
+     * full.
+     *
+     * @return the number of published messages discarded because a pub/sub listener fell behind
+     */
+    public long getDroppedPubSubMessages() {
+        return droppedPubSubMessages.sum();
+    }
+}
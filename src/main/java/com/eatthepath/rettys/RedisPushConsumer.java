@@ -0,0 +1,22 @@
+package com.eatthepath.rettys;
+
+import io.netty.channel.Channel;
+
+/**
+ * A push consumer receives out-of-band push messages from Redis channels that use the RESP3 protocol. Push messages are
+ * delivered separately from replies to commands, and so never disturb the pairing of replies with pending commands.
+ * Push consumers are called on the channel's IO thread and must not block.
+ *
+ * @see RedisMessageConsumer
+ */
+public interface RedisPushConsumer {
+
+    /**
+     * Handles a push message from the given channel. If the channel decodes bulk strings as zero-copy buffers, the
+     * consumer owns the push message and must release it (see {@link RedisValues#release(Object)}).
+     *
+     * @param source the channel that received the push message
+     * @param pushMessage the push message sent by the server
+     */
+    void consumePushMessage(Channel source, RedisPushMessage pushMessage);
+}
@@ -0,0 +1,68 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>A Redis push message is an "out-of-band" message sent by a Redis server using the RESP3 protocol. Push messages
+ * are not replies to any particular command; examples include messages published to a pub/sub channel and client-side
+ * caching invalidation notices. The first element of a push message is always a string that identifies the kind of push
+ * message (e.g. {@code "message"} or {@code "invalidate"}).</p>
+ *
+ * @see RedisPushConsumer
+ */
+public class RedisPushMessage {
+
+    private final Object[] elements;
+
+    /**
+     * Constructs a new push message with the given elements.
+     *
+     * @param elements the elements of the push message, including the leading kind string
+     */
+    public RedisPushMessage(final Object[] elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Returns the kind of this push message (e.g. {@code "message"} or {@code "invalidate"}).
+     *
+     * @return the kind of this push message, or {@code null} if the push message is empty or its first element is not a
+     * string
+     */
+    public String getKind() {
+        if (elements.length == 0) {
+            return null;
+        }
+
+        final Object kind = elements[0];
+
+        if (kind instanceof byte[]) {
+            return new String((byte[]) kind, StandardCharsets.US_ASCII);
+        } else if (kind instanceof ByteBuf) {
+            return ((ByteBuf) kind).toString(StandardCharsets.US_ASCII);
+        } else if (kind instanceof String) {
+            return (String) kind;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns all of the elements of this push message, including the leading kind string.
+     *
+     * @return the elements of this push message
+     */
+    public Object[] getElements() {
+        return elements;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisPushMessage{" +
+                "elements=" + Arrays.toString(elements) +
+                '}';
+    }
+}
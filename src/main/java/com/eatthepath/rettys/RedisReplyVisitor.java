@@ -0,0 +1,100 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * <p>A reply visitor builds the result of a command directly from the events produced while parsing the command's
+ * reply, without first building an intermediate tree of {@code Object[]}, {@code byte[]}, and boxed values. The methods
+ * of a reply visitor are called in the order in which the corresponding parts of the reply appear on the wire; the
+ * start and end of each aggregate value (arrays, maps, and sets) are reported separately, and the elements of the
+ * aggregate are reported in between. Maps report their keys and values alternately.</p>
+ *
+ * <p>Strings are reported as regions of a buffer. Buffers passed to a visitor are only valid for the duration of the
+ * method call, and visitors must copy any data they need to keep. Visitors must not modify the buffers' indices or
+ * contents.</p>
+ *
+ * <p>By default, every method throws an {@link IllegalArgumentException} to indicate that the reply has an unexpected
+ * shape; visitors should override the methods for the types they expect. If any method throws an exception, the
+ * visitor receives no further events, and the command fails with that exception. Visitors are not consulted for
+ * top-level error replies; commands with error replies fail with a {@link RedisException} as usual. Reply visitors are
+ * called on a channel's IO thread and must not block.</p>
+ *
+ * @param <T> the type of result built by this visitor
+ *
+ * @see TypedRedisCommand
+ */
+public interface RedisReplyVisitor<T> {
+
+    default void visitSimpleString(final ByteBuf buffer, final int index, final int length) {
+        throw new IllegalArgumentException("Unexpected simple string");
+    }
+
+    default void visitError(final ByteBuf buffer, final int index, final int length) {
+        throw new IllegalArgumentException("Unexpected error");
+    }
+
+    default void visitInteger(final long value) {
+        throw new IllegalArgumentException("Unexpected integer");
+    }
+
+    default void visitBulkString(final ByteBuf buffer, final int index, final int length) {
+        throw new IllegalArgumentException("Unexpected bulk string");
+    }
+
+    default void visitNull() {
+        throw new IllegalArgumentException("Unexpected null");
+    }
+
+    default void visitArrayStart(final int length) {
+        throw new IllegalArgumentException("Unexpected array");
+    }
+
+    default void visitArrayEnd() {
+        throw new IllegalArgumentException("Unexpected array");
+    }
+
+    default void visitDouble(final double value) {
+        throw new IllegalArgumentException("Unexpected double");
+    }
+
+    default void visitBoolean(final boolean value) {
+        throw new IllegalArgumentException("Unexpected boolean");
+    }
+
+    default void visitBigNumber(final ByteBuf buffer, final int index, final int length) {
+        throw new IllegalArgumentException("Unexpected big number");
+    }
+
+    /**
+     * Visits a verbatim string. The reported region excludes the string's format prefix (e.g. {@code "txt:"}).
+     */
+    default void visitVerbatimString(final ByteBuf buffer, final int index, final int length) {
+        throw new IllegalArgumentException("Unexpected verbatim string");
+    }
+
+    /**
+     * Visits the start of a map with the given number of key/value pairs.
+     */
+    default void visitMapStart(final int pairs) {
+        throw new IllegalArgumentException("Unexpected map");
+    }
+
+    default void visitMapEnd() {
+        throw new IllegalArgumentException("Unexpected map");
+    }
+
+    default void visitSetStart(final int length) {
+        throw new IllegalArgumentException("Unexpected set");
+    }
+
+    default void visitSetEnd() {
+        throw new IllegalArgumentException("Unexpected set");
+    }
+
+    /**
+     * Returns the result built by this visitor once the entire reply has been visited.
+     *
+     * @return the result built by this visitor; may be {@code null}
+     */
+    T getResult();
+}
@@ -0,0 +1,123 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.function.Supplier;
+
+/**
+ * This class provides static methods for getting suppliers of common Redis reply visitors. Reply visitors are the
+ * counterparts of the converters in {@link RedisResponseConverters} for {@link TypedRedisCommand typed commands}.
+ */
+class RedisReplyVisitors {
+
+    /**
+     * Disallow construction.
+     */
+    private RedisReplyVisitors() {}
+
+    /**
+     * A reply visitor that ignores all parts of a reply and always returns {@code null}. Because it keeps no state, a
+     * single instance may be shared by all replies.
+     */
+    private static final RedisReplyVisitor<Void> VOID_VISITOR = new RedisReplyVisitor<Void>() {
+        @Override
+        public void visitSimpleString(final ByteBuf buffer, final int index, final int length) {
+        }
+
+        @Override
+        public void visitError(final ByteBuf buffer, final int index, final int length) {
+        }
+
+        @Override
+        public void visitInteger(final long value) {
+        }
+
+        @Override
+        public void visitBulkString(final ByteBuf buffer, final int index, final int length) {
+        }
+
+        @Override
+        public void visitNull() {
+        }
+
+        @Override
+        public void visitArrayStart(final int length) {
+        }
+
+        @Override
+        public void visitArrayEnd() {
+        }
+
+        @Override
+        public void visitDouble(final double value) {
+        }
+
+        @Override
+        public void visitBoolean(final boolean value) {
+        }
+
+        @Override
+        public void visitBigNumber(final ByteBuf buffer, final int index, final int length) {
+        }
+
+        @Override
+        public void visitVerbatimString(final ByteBuf buffer, final int index, final int length) {
+        }
+
+        @Override
+        public void visitMapStart(final int pairs) {
+        }
+
+        @Override
+        public void visitMapEnd() {
+        }
+
+        @Override
+        public void visitSetStart(final int length) {
+        }
+
+        @Override
+        public void visitSetEnd() {
+        }
+
+        @Override
+        public Void getResult() {
+            return null;
+        }
+    };
+
+    /**
+     * A supplier of reply visitors that discard Redis replies and always return {@code null}. This is intended for
+     * commands where Redis unconditionally returns an "OK" string as a reply.
+     */
+    public static final Supplier<RedisReplyVisitor<Void>> VOID_VISITOR_SUPPLIER = () -> VOID_VISITOR;
+
+    /**
+     * A supplier of reply visitors that interpret Redis replies as {@link Long} values.
+     */
+    public static final Supplier<RedisReplyVisitor<Long>> INTEGER_VISITOR_SUPPLIER = IntegerVisitor::new;
+
+    private static class IntegerVisitor implements RedisReplyVisitor<Long> {
+        private long value;
+        private boolean hasValue = false;
+
+        @Override
+        public void visitInteger(final long value) {
+            if (hasValue) {
+                throw new IllegalArgumentException("Unexpected second integer");
+            }
+
+            this.value = value;
+            this.hasValue = true;
+        }
+
+        @Override
+        public Long getResult() {
+            if (!hasValue) {
+                throw new IllegalArgumentException("Reply did not contain an integer");
+            }
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>This class provides static methods for working with Java representations of Redis values.</p>
+ *
+ * <p>When a channel is configured to decode bulk strings as zero-copy {@link ByteBuf} views (see
+ * {@link com.eatthepath.rettys.channel.RedisChannelFactory}), the Redis values it produces may contain reference-counted
+ * buffers, either directly or nested within arrays. Whoever receives such a value from a {@code CompletableFuture} owns
+ * it and must eventually release it (for example, with {@link #release(Object)}) or pass ownership along to something
+ * else that will. Values that contain no buffers may safely be passed to {@link #release(Object)}, which does nothing
+ * in that case.</p>
+ */
+public class RedisValues {
+
+    /**
+     * Disallow construction.
+     */
+    private RedisValues() {}
+
+    /**
+     * Releases any reference-counted buffers contained in the given Redis value, including buffers nested within
+     * arrays, sets, maps, push messages, and pub/sub messages.
+     *
+     * @param redisValue the value to release; may be {@code null}
+     */
+    public static void release(final Object redisValue) {
+        if (redisValue instanceof ByteBuf) {
+            ReferenceCountUtil.safeRelease(redisValue);
+        } else if (redisValue instanceof Object[]) {
+            for (final Object element : (Object[]) redisValue) {
+                release(element);
+            }
+        } else if (redisValue instanceof Collection) {
+            for (final Object element : (Collection<?>) redisValue) {
+                release(element);
+            }
+        } else if (redisValue instanceof Map) {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) redisValue).entrySet()) {
+                release(entry.getKey());
+                release(entry.getValue());
+            }
+        } else if (redisValue instanceof RedisPushMessage) {
+            release(((RedisPushMessage) redisValue).getElements());
+        } else if (redisValue instanceof PubSubMessage) {
+            release(((PubSubMessage) redisValue).getPattern());
+            release(((PubSubMessage) redisValue).getChannel());
+            release(((PubSubMessage) redisValue).getPayload());
+        }
+    }
+}
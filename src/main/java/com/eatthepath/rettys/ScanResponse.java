@@ -1,7 +1,11 @@
 package com.eatthepath.rettys;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
 import java.nio.charset.Charset;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class ScanResponse {
     private final byte[] cursor;
@@ -44,6 +48,67 @@ public class ScanResponse {
         };
     }
 
+    static Supplier<RedisReplyVisitor<ScanResponse>> scanResponseVisitorSupplier(final Charset charset) {
+        return () -> new ScanResponseVisitor(charset);
+    }
+
+    /**
+     * Builds a scan response directly from a {@code [cursor, [key, key, ...]]} reply.
+     */
+    private static class ScanResponseVisitor implements RedisReplyVisitor<ScanResponse> {
+        private final Charset charset;
+
+        private int depth = 0;
+
+        private byte[] cursor;
+        private String[] keys;
+        private int keysRead = 0;
+
+        private ScanResponseVisitor(final Charset charset) {
+            this.charset = charset;
+        }
+
+        @Override
+        public void visitArrayStart(final int length) {
+            if (depth == 0) {
+                if (length != 2) {
+                    throw new IllegalArgumentException("Unexpected array length for cursor response: " + length);
+                }
+            } else if (depth == 1 && cursor != null && keys == null) {
+                keys = new String[length];
+            } else {
+                throw new IllegalArgumentException("Unexpected array in cursor response");
+            }
+
+            depth += 1;
+        }
+
+        @Override
+        public void visitArrayEnd() {
+            depth -= 1;
+        }
+
+        @Override
+        public void visitBulkString(final ByteBuf buffer, final int index, final int length) {
+            if (depth == 1 && cursor == null) {
+                cursor = ByteBufUtil.getBytes(buffer, index, length);
+            } else if (depth == 2) {
+                keys[keysRead++] = buffer.toString(index, length, charset);
+            } else {
+                throw new IllegalArgumentException("Unexpected bulk string in cursor response");
+            }
+        }
+
+        @Override
+        public ScanResponse getResult() {
+            if (cursor == null || keys == null) {
+                throw new IllegalArgumentException("Incomplete cursor response");
+            }
+
+            return new ScanResponse(cursor, keys);
+        }
+    }
+
     ScanResponse(final byte[] cursor, final String[] keys) {
         this.cursor = cursor;
         this.keys = keys;
@@ -10,4 +10,12 @@ public interface SingleChannelMessageConsumer {
     void consumeMessage(Object message);
 
     void handleChannelClosure();
+
+    /**
+     * Notes that the channel has finished its current read cycle. By default, this method does nothing.
+     *
+     * @see RedisMessageConsumer#handleReadComplete(io.netty.channel.Channel)
+     */
+    default void handleReadComplete() {
+    }
 }
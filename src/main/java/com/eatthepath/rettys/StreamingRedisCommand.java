@@ -0,0 +1,48 @@
+package com.eatthepath.rettys;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * <p>A streaming Redis command is a command whose array reply is delivered one element at a time instead of as a single
+ * array. Each element is passed to the command's element consumer as soon as it has arrived in its entirety, and the
+ * data for elements that have already been delivered is not retained; this keeps the memory needed to receive a reply
+ * proportional to the size of its largest element rather than to the size of the whole reply. Streaming commands are
+ * intended for commands with potentially huge replies like {@code LRANGE}, {@code HGETALL}, or {@code SMEMBERS}.</p>
+ *
+ * <p>Elements are delivered in order on the channel's IO thread, and element consumers must not block. If the channel
+ * decodes bulk strings as zero-copy buffers, each element is owned by the element consumer, which must release it (see
+ * {@link RedisValues#release(Object)}).</p>
+ *
+ * <p>When the entire reply has been delivered, the reply to the command itself (and the value with which its pending
+ * future is completed) is the number of elements in the array as a {@link Long}. Replies that are not arrays (errors,
+ * for example) and {@code null} arrays are delivered as they would be for any other command.</p>
+ *
+ * <p>Streaming commands rely on a one-to-one correspondence between commands and replies, and should not be sent to
+ * channels in pub/sub mode.</p>
+ */
+public class StreamingRedisCommand extends RedisCommand {
+
+    private final Consumer<Object> elementConsumer;
+
+    /**
+     * Constructs a streaming Redis command with the given element consumer and components.
+     *
+     * @param elementConsumer the consumer to which elements of the reply to this command will be delivered
+     * @param components the components of the command, starting with the command type
+     */
+    public StreamingRedisCommand(final Consumer<Object> elementConsumer, final Object... components) {
+        super(components);
+
+        this.elementConsumer = Objects.requireNonNull(elementConsumer, "Element consumer must not be null.");
+    }
+
+    /**
+     * Returns the consumer to which elements of the reply to this command will be delivered.
+     *
+     * @return the consumer to which elements of the reply to this command will be delivered
+     */
+    public Consumer<Object> getElementConsumer() {
+        return elementConsumer;
+    }
+}
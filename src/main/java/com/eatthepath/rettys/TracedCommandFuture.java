@@ -0,0 +1,65 @@
+package com.eatthepath.rettys;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A traced command future is a pending future for a command that carries the command's {@link CommandTimeline} through
+ * the stages of the command's life and reports the finished timeline to a {@link RedisCommandTracer} when completed
+ * normally, completed exceptionally, or cancelled.
+ */
+class TracedCommandFuture extends CompletableFuture<Object> {
+
+    private final RedisCommand command;
+    private final CommandTimeline timeline;
+    private final RedisCommandTracer commandTracer;
+
+    TracedCommandFuture(final RedisCommand command, final RedisCommandTracer commandTracer) {
+        this.command = command;
+        this.timeline = new CommandTimeline(System.nanoTime());
+        this.commandTracer = commandTracer;
+    }
+
+    CommandTimeline getTimeline() {
+        return timeline;
+    }
+
+    @Override
+    public boolean complete(final Object value) {
+        markCompleted();
+
+        final boolean completed = super.complete(value);
+
+        if (completed) {
+            commandTracer.handleCommandTraced(command, timeline);
+        }
+
+        return completed;
+    }
+
+    @Override
+    public boolean completeExceptionally(final Throwable cause) {
+        markCompleted();
+
+        final boolean completed = super.completeExceptionally(cause);
+
+        if (completed) {
+            commandTracer.handleCommandTraced(command, timeline);
+        }
+
+        return completed;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        // CompletableFuture doesn't cancel itself via completeExceptionally, but does consider a future completed with a
+        // CancellationException to be cancelled; cancelling this way makes sure cancelled commands get traced, too
+        return completeExceptionally(new CancellationException()) || isCancelled();
+    }
+
+    private void markCompleted() {
+        if (!isDone()) {
+            timeline.setCompletedNanos(System.nanoTime());
+        }
+    }
+}
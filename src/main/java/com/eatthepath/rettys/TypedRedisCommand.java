@@ -0,0 +1,42 @@
+package com.eatthepath.rettys;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * <p>A typed Redis command builds its result directly from the wire using a {@link RedisReplyVisitor} rather than having
+ * its reply decoded to a generic tree of Java objects and then converted. The pending future for a typed command is
+ * completed with the visitor's result (or exceptionally if the server sent an error or the visitor rejected the
+ * reply).</p>
+ *
+ * <p>Like streaming commands, typed commands rely on a one-to-one correspondence between commands and replies, and
+ * should not be sent to channels in pub/sub mode.</p>
+ *
+ * @param <T> the type of result produced by this command
+ */
+public class TypedRedisCommand<T> extends RedisCommand {
+
+    private final Supplier<? extends RedisReplyVisitor<T>> replyVisitorSupplier;
+
+    /**
+     * Constructs a typed Redis command with the given reply visitor supplier and components.
+     *
+     * @param replyVisitorSupplier a supplier of visitors for replies to this command; a new visitor is requested for
+     *                             each reply
+     * @param components the components of the command, starting with the command type
+     */
+    public TypedRedisCommand(final Supplier<? extends RedisReplyVisitor<T>> replyVisitorSupplier, final Object... components) {
+        super(components);
+
+        this.replyVisitorSupplier = Objects.requireNonNull(replyVisitorSupplier, "Reply visitor supplier must not be null.");
+    }
+
+    /**
+     * Returns a new visitor for a reply to this command.
+     *
+     * @return a new visitor for a reply to this command
+     */
+    public RedisReplyVisitor<T> newReplyVisitor() {
+        return replyVisitorSupplier.get();
+    }
+}
@@ -0,0 +1,36 @@
+package com.eatthepath.rettys.channel;
+
+/**
+ * <p>A flush policy controls when channels created by a {@link RedisChannelFactory} flush written commands to the
+ * network. Every flush of a channel generally costs a system call, and so consolidating several flushes into one can
+ * substantially reduce overhead when many commands are written in quick succession. Consolidating flushes when traffic
+ * is light, though, only delays commands without saving much work.</p>
+ *
+ * <p>Under all policies, flushes requested while a channel is reading replies from the server are deferred until the
+ * channel has finished reading; this doesn't delay commands because the channel's event loop is busy in the meantime
+ * anyhow.</p>
+ *
+ * @see RedisChannelFactory#setFlushPolicy(FlushPolicy)
+ * @see FlushStatistics
+ */
+public enum FlushPolicy {
+
+    /**
+     * A policy that flushes immediately whenever a flush is requested outside of a read.
+     */
+    LATENCY_FIRST,
+
+    /**
+     * A policy that always defers flushes until the channel's event loop has finished its current batch of work (or
+     * until a large number of flushes have been deferred), writing everything that accumulated in the meantime with a
+     * single flush.
+     */
+    THROUGHPUT_FIRST,
+
+    /**
+     * A policy that flushes immediately when traffic is light and behaves like {@link #THROUGHPUT_FIRST} when the
+     * channel is busy. A channel is considered busy if several commands are already awaiting replies from the server or
+     * if flushes have recently been arriving in rapid succession.
+     */
+    ADAPTIVE
+}
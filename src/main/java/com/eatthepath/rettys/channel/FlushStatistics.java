@@ -0,0 +1,62 @@
+package com.eatthepath.rettys.channel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flush statistics count the flushes requested of and performed by the channels created by a
+ * {@link RedisChannelFactory}. Each flush that reaches the network generally costs one write system call, so the
+ * difference between the two is the number of system calls saved by the factory's {@link FlushPolicy}. Flush
+ * statistics are thread-safe.
+ *
+ * @see RedisChannelFactory#getFlushStatistics()
+ */
+public class FlushStatistics {
+
+    private final LongAdder flushesRequested = new LongAdder();
+    private final LongAdder flushesPerformed = new LongAdder();
+
+    void handleFlushRequested() {
+        flushesRequested.increment();
+    }
+
+    void handleFlushPerformed() {
+        flushesPerformed.increment();
+    }
+
+    /**
+     * Returns the number of flushes requested by callers.
+     *
+     * @return the number of flushes requested by callers
+     */
+    public long getFlushesRequested() {
+        return flushesRequested.sum();
+    }
+
+    /**
+     * Returns the number of flushes actually passed along to the network.
+     *
+     * @return the number of flushes actually passed along to the network
+     */
+    public long getFlushesPerformed() {
+        return flushesPerformed.sum();
+    }
+
+    /**
+     * Returns the number of flushes (and, approximately, write system calls) saved by consolidating requested flushes.
+     *
+     * @return the number of flushes saved by consolidating requested flushes
+     */
+    public long getFlushesSaved() {
+        // Read "performed" first so a concurrent flush can't make the difference negative
+        final long performed = getFlushesPerformed();
+        return Math.max(0, getFlushesRequested() - performed);
+    }
+
+    @Override
+    public String toString() {
+        return "FlushStatistics{" +
+                "flushesRequested=" + getFlushesRequested() +
+                ", flushesPerformed=" + getFlushesPerformed() +
+                '}';
+    }
+}
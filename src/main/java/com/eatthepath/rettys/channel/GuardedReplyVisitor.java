@@ -0,0 +1,203 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisReplyVisitor;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A guarded reply visitor wraps a command's reply visitor so that an exception thrown by the visitor can't interrupt
+ * parsing. Once the wrapped visitor throws an exception, it receives no further events, and the exception becomes the
+ * result of the visit.
+ */
+class GuardedReplyVisitor implements RedisReplyVisitor<Object> {
+
+    private final RedisReplyVisitor<?> visitor;
+
+    private RuntimeException failure;
+
+    GuardedReplyVisitor(final RedisReplyVisitor<?> visitor) {
+        this.visitor = visitor;
+    }
+
+    @Override
+    public void visitSimpleString(final ByteBuf buffer, final int index, final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitSimpleString(buffer, index, length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitError(final ByteBuf buffer, final int index, final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitError(buffer, index, length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitInteger(final long value) {
+        if (failure == null) {
+            try {
+                visitor.visitInteger(value);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitBulkString(final ByteBuf buffer, final int index, final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitBulkString(buffer, index, length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitNull() {
+        if (failure == null) {
+            try {
+                visitor.visitNull();
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitArrayStart(final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitArrayStart(length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitArrayEnd() {
+        if (failure == null) {
+            try {
+                visitor.visitArrayEnd();
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitDouble(final double value) {
+        if (failure == null) {
+            try {
+                visitor.visitDouble(value);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitBoolean(final boolean value) {
+        if (failure == null) {
+            try {
+                visitor.visitBoolean(value);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitBigNumber(final ByteBuf buffer, final int index, final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitBigNumber(buffer, index, length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitVerbatimString(final ByteBuf buffer, final int index, final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitVerbatimString(buffer, index, length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitMapStart(final int pairs) {
+        if (failure == null) {
+            try {
+                visitor.visitMapStart(pairs);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitMapEnd() {
+        if (failure == null) {
+            try {
+                visitor.visitMapEnd();
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitSetStart(final int length) {
+        if (failure == null) {
+            try {
+                visitor.visitSetStart(length);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    @Override
+    public void visitSetEnd() {
+        if (failure == null) {
+            try {
+                visitor.visitSetEnd();
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Returns the wrapped visitor's result or, if the wrapped visitor threw an exception at any point, that exception.
+     *
+     * @return the wrapped visitor's result or the exception it threw
+     */
+    @Override
+    public Object getResult() {
+        if (failure == null) {
+            try {
+                return visitor.getResult();
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        return failure;
+    }
+}
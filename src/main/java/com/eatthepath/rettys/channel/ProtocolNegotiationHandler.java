@@ -0,0 +1,77 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisException;
+import com.eatthepath.rettys.RedisValues;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * <p>A protocol negotiation handler asks a Redis server to switch to the RESP3 protocol by sending a {@code HELLO 3}
+ * command as soon as a channel becomes active. The handler consumes the server's reply to the {@code HELLO} command and
+ * then removes itself from the pipeline.</p>
+ *
+ * <p>If the server doesn't support RESP3 (or doesn't understand the {@code HELLO} command at all), the channel
+ * continues to use RESP2. In either case, the negotiated protocol version is recorded in the channel's
+ * {@link RedisChannelFactory#PROTOCOL_VERSION_ATTRIBUTE_KEY} attribute.</p>
+ */
+class ProtocolNegotiationHandler extends ChannelInboundHandlerAdapter {
+
+    private final Promise<RedisProtocolVersion> negotiationPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+
+    private static final RedisCommand HELLO_COMMAND = new RedisCommand("HELLO", 3);
+
+    private static final IOException CHANNEL_CLOSED_EXCEPTION =
+            new IOException("Channel closed before protocol negotiation finished.");
+
+    private static final Logger log = LoggerFactory.getLogger(ProtocolNegotiationHandler.class);
+
+    /**
+     * Returns a future that completes with the negotiated protocol version once the server has replied to the
+     * {@code HELLO} command.
+     *
+     * @return a future that completes with the negotiated protocol version
+     */
+    Future<RedisProtocolVersion> getNegotiationFuture() {
+        return negotiationPromise;
+    }
+
+    @Override
+    public void channelActive(final ChannelHandlerContext context) {
+        context.writeAndFlush(HELLO_COMMAND);
+        context.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object message) {
+        final RedisProtocolVersion protocolVersion;
+
+        if (message instanceof RedisException) {
+            // Servers that predate RESP3 won't recognize the HELLO command at all, and newer servers may reject the
+            // requested protocol version with a NOPROTO error; either way, we'll just stick with RESP2.
+            log.debug("Server rejected RESP3 negotiation; continuing with RESP2: {}", ((RedisException) message).getMessage());
+            protocolVersion = RedisProtocolVersion.RESP2;
+        } else {
+            RedisValues.release(message);
+            protocolVersion = RedisProtocolVersion.RESP3;
+        }
+
+        context.channel().attr(RedisChannelFactory.PROTOCOL_VERSION_ATTRIBUTE_KEY).set(protocolVersion);
+        context.pipeline().remove(this);
+
+        negotiationPromise.trySuccess(protocolVersion);
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext context) {
+        negotiationPromise.tryFailure(CHANNEL_CLOSED_EXCEPTION);
+        context.fireChannelInactive();
+    }
+}
@@ -0,0 +1,203 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.PubSubMessage;
+import com.eatthepath.rettys.RedisMetricsListener;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * <p>A pub/sub response decoder is a {@link RedisResponseDecoder} for channels in pub/sub mode. Nearly everything a
+ * Redis server sends to a subscribed client is a published message, which would normally arrive as a three-element
+ * ({@code message}) or four-element ({@code pmessage}) array of bulk strings, or as a push message with the same
+ * elements under RESP3. Pub/sub response decoders recognize those arrays and push messages by their fixed headers and
+ * decode them straight from the network buffer into {@link PubSubMessage} instances, skipping the general-purpose
+ * decoder's state machine and the intermediate {@code Object[]} representation.</p>
+ *
+ * <p>Everything else (replies to {@code SUBSCRIBE} and {@code PING} commands, errors, other push messages, and any
+ * published message with an unusual shape) falls back to the general-purpose decoder and is passed along the pipeline
+ * as usual. Published messages decoded by this decoder are not replies to commands, and are not reported to the
+ * channel's {@link ReplyTracker}.</p>
+ */
+class PubSubResponseDecoder extends RedisResponseDecoder {
+
+    private final boolean zeroCopyBulkStrings;
+
+    // The bounds of the bulk strings in the message currently being decoded; pattern messages have three bulk strings
+    // after the message type, and channel messages have two
+    private final int[] bulkStringOffsets = new int[3];
+    private final int[] bulkStringLengths = new int[3];
+
+    // Headers are the same for arrays and RESP3 push messages after the leading prefix byte
+    private static final byte[] MESSAGE_HEADER = "*3\r\n$7\r\nmessage\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATTERN_MESSAGE_HEADER = "*4\r\n$8\r\npmessage\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int INCOMPLETE = -1;
+    private static final int NOT_A_BULK_STRING = -2;
+
+    /**
+     * Constructs a new pub/sub response decoder.
+     *
+     * @param zeroCopyBulkStrings if {@code true}, bulk strings are decoded as retained, read-only {@link ByteBuf}
+     *                            slices that must be released by their receiver; if {@code false}, bulk strings are
+     *                            decoded as {@code byte[]}
+     * @param replyTracker the tracker that pairs replies with the commands that produced them; may be {@code null}
+     * @param metricsListener the listener to notify when bytes arrive from the server
+     */
+    PubSubResponseDecoder(final boolean zeroCopyBulkStrings, final ReplyTracker replyTracker, final RedisMetricsListener metricsListener) {
+        super(zeroCopyBulkStrings, replyTracker, metricsListener);
+
+        this.zeroCopyBulkStrings = zeroCopyBulkStrings;
+    }
+
+    @Override
+    TopLevelDecodeResult decodeTopLevelValue(final ByteBuf in, final List<Object> out) {
+        final byte prefix = in.getByte(in.readerIndex());
+
+        if (prefix != RedisProtocolUtil.ARRAY_PREFIX && prefix != RedisProtocolUtil.PUSH_PREFIX) {
+            return TopLevelDecodeResult.NOT_HANDLED;
+        } else if (in.readableBytes() < 2) {
+            // A lone array prefix can't be a complete frame, so there's no harm in waiting to see what comes next
+            return TopLevelDecodeResult.NEEDS_MORE_DATA;
+        }
+
+        final byte[] header;
+
+        switch (in.getByte(in.readerIndex() + 1)) {
+            case '3': {
+                header = MESSAGE_HEADER;
+                break;
+            }
+
+            case '4': {
+                header = PATTERN_MESSAGE_HEADER;
+                break;
+            }
+
+            default: {
+                return TopLevelDecodeResult.NOT_HANDLED;
+            }
+        }
+
+        // Only compare as much of the header as we actually have; if what we have matches, the frame can't possibly be
+        // complete yet, and we'll check again when more data arrives
+        final int headerBytesAvailable = Math.min(header.length, in.readableBytes());
+
+        for (int i = 2; i < headerBytesAvailable; i++) {
+            if (in.getByte(in.readerIndex() + i) != header[i]) {
+                return TopLevelDecodeResult.NOT_HANDLED;
+            }
+        }
+
+        if (headerBytesAvailable < header.length) {
+            return TopLevelDecodeResult.NEEDS_MORE_DATA;
+        }
+
+        final int bulkStringCount = header == PATTERN_MESSAGE_HEADER ? 3 : 2;
+        int index = in.readerIndex() + header.length;
+
+        for (int i = 0; i < bulkStringCount; i++) {
+            index = scanBulkString(in, index, i);
+
+            if (index == INCOMPLETE) {
+                return TopLevelDecodeResult.NEEDS_MORE_DATA;
+            } else if (index == NOT_A_BULK_STRING) {
+                return TopLevelDecodeResult.NOT_HANDLED;
+            }
+        }
+
+        final PubSubMessage pubSubMessage = bulkStringCount == 3 ?
+                new PubSubMessage(getBulkString(in, 0), getBulkString(in, 1), getBulkString(in, 2)) :
+                new PubSubMessage(null, getBulkString(in, 0), getBulkString(in, 1));
+
+        in.readerIndex(index);
+        out.add(pubSubMessage);
+
+        return TopLevelDecodeResult.DECODED;
+    }
+
+    /**
+     * Finds the bounds of the bulk string that starts at the given index without modifying the given buffer.
+     *
+     * @param in the buffer in which to find a bulk string
+     * @param index the index of the bulk string's prefix
+     * @param bulkStringIndex the position of the bulk string within the current message
+     *
+     * @return the index of the first byte after the bulk string's trailing CRLF, {@link #INCOMPLETE} if the buffer does
+     * not contain the entire bulk string, or {@link #NOT_A_BULK_STRING} if the data at the given index is not a
+     * non-null bulk string
+     */
+    private int scanBulkString(final ByteBuf in, final int index, final int bulkStringIndex) {
+        final int writerIndex = in.writerIndex();
+
+        if (index >= writerIndex) {
+            return INCOMPLETE;
+        } else if (in.getByte(index) != RedisProtocolUtil.BULK_STRING_PREFIX) {
+            return NOT_A_BULK_STRING;
+        }
+
+        long length = 0;
+        int carriageReturnIndex = index + 1;
+
+        for (;; carriageReturnIndex++) {
+            if (carriageReturnIndex >= writerIndex) {
+                return INCOMPLETE;
+            }
+
+            final byte b = in.getByte(carriageReturnIndex);
+
+            if (b >= '0' && b <= '9') {
+                length = (length * 10) + (b - '0');
+
+                if (length > Integer.MAX_VALUE) {
+                    // Let the general-purpose decoder deal with this one
+                    return NOT_A_BULK_STRING;
+                }
+            } else if (b == '\r') {
+                break;
+            } else {
+                // This includes null bulk strings, which have a negative length
+                return NOT_A_BULK_STRING;
+            }
+        }
+
+        if (carriageReturnIndex == index + 1) {
+            // No digits at all
+            return NOT_A_BULK_STRING;
+        }
+
+        final long payloadStart = carriageReturnIndex + 2;
+        final long payloadEnd = payloadStart + length;
+
+        if (payloadEnd + 2 > writerIndex) {
+            return INCOMPLETE;
+        }
+
+        if (in.getByte(carriageReturnIndex + 1) != '\n'
+                || in.getByte((int) payloadEnd) != '\r'
+                || in.getByte((int) payloadEnd + 1) != '\n') {
+
+            return NOT_A_BULK_STRING;
+        }
+
+        bulkStringOffsets[bulkStringIndex] = (int) payloadStart;
+        bulkStringLengths[bulkStringIndex] = (int) length;
+
+        return (int) payloadEnd + 2;
+    }
+
+    private Object getBulkString(final ByteBuf in, final int bulkStringIndex) {
+        final int offset = bulkStringOffsets[bulkStringIndex];
+        final int length = bulkStringLengths[bulkStringIndex];
+
+        if (zeroCopyBulkStrings) {
+            return in.retainedSlice(offset, length).asReadOnly();
+        } else {
+            final byte[] bulkString = new byte[length];
+            in.getBytes(offset, bulkString);
+
+            return bulkString;
+        }
+    }
+}
@@ -1,61 +1,415 @@
 package com.eatthepath.rettys.channel;
 
+import com.eatthepath.rettys.RedisCommandTracer;
 import com.eatthepath.rettys.RedisMessageConsumer;
+import com.eatthepath.rettys.RedisMetricsListener;
+import com.eatthepath.rettys.RedisPushConsumer;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.AttributeKey;
 
+import javax.net.ssl.SSLException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.charset.Charset;
+import java.util.Objects;
 
+/**
+ * <p>A Redis channel factory creates channels connected to Redis servers. Channel factories choose a
+ * {@link RedisTransport} to match the type of event loop group with which they were constructed; factories constructed
+ * with an epoll event loop group, for example, will create epoll channels. Factories that use a native transport that
+ * supports Unix domain sockets may connect to {@code io.netty.channel.unix.DomainSocketAddress} addresses as well as
+ * to network addresses.</p>
+ *
+ * @see RedisTransport#getPreferredTransport()
+ */
 public class RedisChannelFactory {
 
     private final EventLoopGroup eventLoopGroup;
 
     private final Charset charset;
-    private final boolean useSsl;
+    private final SslContext sslContext;
 
+    private volatile boolean zeroCopyBulkStrings = false;
+    private volatile RedisProtocolVersion protocolVersion = RedisProtocolVersion.RESP2;
+    private volatile FlushPolicy flushPolicy = FlushPolicy.ADAPTIVE;
+    private volatile RedisWireTap wireTap = null;
+    private volatile RedisMetricsListener metricsListener = RedisMetricsListener.NO_OP;
+    private volatile RedisCommandTracer commandTracer = null;
+
+    private final FlushStatistics flushStatistics = new FlushStatistics();
+
+    /**
+     * The name of the channel attribute that holds the protocol version in use by a channel created by a Redis channel
+     * factory.
+     */
+    public static final AttributeKey<RedisProtocolVersion> PROTOCOL_VERSION_ATTRIBUTE_KEY =
+            AttributeKey.valueOf(RedisChannelFactory.class, "protocolVersion");
+
+    /**
+     * Constructs a new channel factory. If {@code useSsl} is {@code true}, the factory builds a single client SSL
+     * context that's shared by all of the channels it creates. The SSL context uses the JDK's SSL implementation, which
+     * resumes previous sessions when reconnecting to the same server.
+     *
+     * @param ioEventLoopGroup the event loop group in which to create channels
+     * @param charset the character set with which to encode string arguments
+     * @param useSsl {@code true} if channels should connect to Redis servers via TLS or {@code false} otherwise
+     *
+     * @throws UncheckedIOException if TLS was requested, but an SSL context could not be built
+     *
+     * @see #newClientSslContext(SslProvider)
+     */
     public RedisChannelFactory(final EventLoopGroup ioEventLoopGroup, final Charset charset, final boolean useSsl) {
+        this(ioEventLoopGroup, charset, useSsl ? newClientSslContext(SslProvider.JDK) : null);
+    }
+
+    /**
+     * Constructs a new channel factory that uses the given SSL context for all of its channels. Callers may use this
+     * constructor to choose an SSL provider, trust managers, client certificates, session cache sizes, and so on.
+     *
+     * @param ioEventLoopGroup the event loop group in which to create channels
+     * @param charset the character set with which to encode string arguments
+     * @param sslContext the client SSL context with which to secure channels; may be {@code null}, in which case
+     *                   channels will not use TLS
+     *
+     * @see #newClientSslContext(SslProvider)
+     */
+    public RedisChannelFactory(final EventLoopGroup ioEventLoopGroup, final Charset charset, final SslContext sslContext) {
+        if (sslContext != null && !sslContext.isClient()) {
+            throw new IllegalArgumentException("SSL context must be a client context.");
+        }
+
         this.eventLoopGroup = ioEventLoopGroup;
 
         this.charset = charset;
-        this.useSsl = useSsl;
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * <p>Builds a new client SSL context that uses the given SSL provider and resumes previous sessions wherever the
+     * provider allows it. The returned context is meant to be passed to
+     * {@link #RedisChannelFactory(EventLoopGroup, Charset, SslContext)} and shared by all of the factory's channels.</p>
+     *
+     * <p>{@link SslProvider#OPENSSL} and {@link SslProvider#OPENSSL_REFCNT} require {@code netty-tcnative} (for
+     * example, {@code netty-tcnative-boringssl-static}) on the classpath. OpenSSL makes full handshakes cheaper, but
+     * note that the OpenSSL client session cache in the version of Netty this library is built against is a no-op, and
+     * so OpenSSL client contexts never resume sessions; the JDK's implementation does.</p>
+     *
+     * @param sslProvider the SSL provider with which to build the context
+     *
+     * @return a new client SSL context
+     *
+     * @throws UncheckedIOException if the SSL context could not be built (if, for example, OpenSSL was requested but
+     * {@code netty-tcnative} is not available)
+     */
+    public static SslContext newClientSslContext(final SslProvider sslProvider) {
+        return buildClientSslContext(SslContextBuilder.forClient().sslProvider(sslProvider));
+    }
+
+    static SslContext buildClientSslContext(final SslContextBuilder sslContextBuilder) {
+        final SslContext sslContext;
+
+        try {
+            sslContext = sslContextBuilder.build();
+        } catch (final SSLException e) {
+            throw new UncheckedIOException("Could not build SSL context", e);
+        }
+
+        // The JDK's client session cache is always on, but OpenSSL's must be turned on explicitly (in versions of Netty
+        // that support it at all)
+        if (sslContext.sessionContext() instanceof OpenSslSessionContext) {
+            ((OpenSslSessionContext) sslContext.sessionContext()).setSessionCacheEnabled(true);
+        }
+
+        return sslContext;
+    }
+
+    /**
+     * Returns the SSL context shared by all channels created by this factory.
+     *
+     * @return the SSL context shared by all channels created by this factory, or {@code null} if channels created by
+     * this factory don't use TLS
+     */
+    public SslContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Creates a new SSL handler for a channel that will connect to the given address. SSL engines for network addresses
+     * are created with the server's host and port, which allows the SSL context to resume previous sessions with the
+     * same server (and lets the server use SNI).
+     */
+    SslHandler newSslHandler(final ByteBufAllocator allocator, final SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            final InetSocketAddress inetSocketAddress = (InetSocketAddress) address;
+
+            return sslContext.newHandler(allocator, inetSocketAddress.getHostString(), inetSocketAddress.getPort());
+        }
+
+        return sslContext.newHandler(allocator);
+    }
+
+    /**
+     * Sets whether channels created by this factory decode bulk strings as retained, read-only
+     * {@link io.netty.buffer.ByteBuf} views of the received data instead of copying them to {@code byte[]}. When
+     * enabled, message consumers and anything they hand values to become responsible for releasing them. Bulk strings
+     * are copied to {@code byte[]} by default. This setting affects channels created after it is changed.
+     *
+     * @param zeroCopyBulkStrings {@code true} to decode bulk strings as zero-copy buffers or {@code false} to decode
+     *                            them as {@code byte[]}
+     *
+     * @see com.eatthepath.rettys.RedisValues#release(Object)
+     */
+    public void setZeroCopyBulkStrings(final boolean zeroCopyBulkStrings) {
+        this.zeroCopyBulkStrings = zeroCopyBulkStrings;
+    }
+
+    /**
+     * Sets the protocol version that channels created by this factory will request from Redis servers. Channels use
+     * RESP2 by default. If RESP3 is requested, channels will send a {@code HELLO 3} command as soon as they connect,
+     * and futures returned by {@link #createChannel(SocketAddress, RedisMessageConsumer, RedisPushConsumer)} will not
+     * complete until the server has replied. Servers that don't support RESP3 will continue to use RESP2. This setting
+     * affects channels created after it is changed.
+     *
+     * @param protocolVersion the protocol version to request from Redis servers
+     *
+     * @see #PROTOCOL_VERSION_ATTRIBUTE_KEY
+     */
+    public void setProtocolVersion(final RedisProtocolVersion protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * Sets the policy that determines when channels created by this factory flush commands to the network. Channels
+     * use {@link FlushPolicy#ADAPTIVE} by default. This setting affects channels created after it is changed.
+     *
+     * @param flushPolicy the policy that determines when channels flush commands to the network
+     *
+     * @see #getFlushStatistics()
+     */
+    public void setFlushPolicy(final FlushPolicy flushPolicy) {
+        this.flushPolicy = Objects.requireNonNull(flushPolicy);
+    }
+
+    /**
+     * Sets the wire tap to install in channels created by this factory. Channels have no wire tap by default. This
+     * setting affects channels created after it is changed; callers may also install wire taps in (or remove them from)
+     * existing channels at any time.
+     *
+     * @param wireTap the wire tap to install in new channels, or {@code null} if new channels should not have a wire tap
+     *
+     * @see RedisWireTap#install(Channel)
+     * @see RedisWireTap#removeFrom(Channel)
+     */
+    public void setWireTap(final RedisWireTap wireTap) {
+        this.wireTap = wireTap;
+    }
+
+    /**
+     * Sets the listener to which channels created by this factory (and executors that use those channels) report
+     * metrics. Channels use {@link RedisMetricsListener#NO_OP} by default. This setting affects channels and executors
+     * created after it is changed.
+     *
+     * @param metricsListener the listener to which to report metrics
+     */
+    public void setMetricsListener(final RedisMetricsListener metricsListener) {
+        this.metricsListener = Objects.requireNonNull(metricsListener);
+    }
+
+    /**
+     * Returns the listener to which channels created by this factory report metrics.
+     *
+     * @return the listener to which channels created by this factory report metrics
+     */
+    public RedisMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the tracer to which executors that use channels created by this factory report the timeline of each
+     * command. Commands are not traced by default. This setting affects executors created after it is changed.
+     *
+     * @param commandTracer the tracer to which to report command timelines, or {@code null} if commands should not be
+     *                      traced
+     */
+    public void setCommandTracer(final RedisCommandTracer commandTracer) {
+        this.commandTracer = commandTracer;
+    }
+
+    /**
+     * Returns the tracer to which executors that use channels created by this factory report the timeline of each
+     * command.
+     *
+     * @return the tracer to which to report command timelines, or {@code null} if commands are not traced
+     */
+    public RedisCommandTracer getCommandTracer() {
+        return commandTracer;
+    }
+
+    /**
+     * Returns statistics about the flushes requested of and performed by all channels created by this factory.
+     *
+     * @return statistics about the flushes requested of and performed by all channels created by this factory
+     */
+    public FlushStatistics getFlushStatistics() {
+        return flushStatistics;
     }
 
     public ChannelFuture createChannel(final SocketAddress inetSocketAddress, final RedisMessageConsumer responseConsumer) {
+        return createChannel(inetSocketAddress, responseConsumer, null);
+    }
+
+    /**
+     * Creates a new channel connected to the Redis server at the given address.
+     *
+     * @param inetSocketAddress the address of the Redis server
+     * @param responseConsumer the consumer to which replies to commands will be dispatched
+     * @param pushConsumer the consumer to which RESP3 push messages will be dispatched; may be {@code null}, in which
+     *                     case push messages are discarded
+     *
+     * @return a future that completes when the channel has connected and, if RESP3 was requested, finished negotiating
+     * a protocol version
+     */
+    public ChannelFuture createChannel(final SocketAddress inetSocketAddress, final RedisMessageConsumer responseConsumer, final RedisPushConsumer pushConsumer) {
+        return createChannelInGroup(inetSocketAddress, responseConsumer, pushConsumer, eventLoopGroup, false);
+    }
+
+    /**
+     * Creates a new channel connected to the Redis server at the given address and bound to the given event loop.
+     * Callers that want to spread connections evenly across the threads of this factory's event loop group (see
+     * {@link #getEventLoopGroup()}) may use this method to choose an event loop for each channel explicitly.
+     *
+     * @param inetSocketAddress the address of the Redis server
+     * @param responseConsumer the consumer to which replies to commands will be dispatched
+     * @param pushConsumer the consumer to which RESP3 push messages will be dispatched; may be {@code null}, in which
+     *                     case push messages are discarded
+     * @param eventLoop the event loop to which the new channel will be bound
+     *
+     * @return a future that completes when the channel has connected and, if RESP3 was requested, finished negotiating
+     * a protocol version
+     */
+    public ChannelFuture createChannel(final SocketAddress inetSocketAddress, final RedisMessageConsumer responseConsumer, final RedisPushConsumer pushConsumer, final EventLoop eventLoop) {
+        return createChannelInGroup(inetSocketAddress, responseConsumer, pushConsumer, eventLoop, false);
+    }
+
+    /**
+     * <p>Creates a new channel connected to the Redis server at the given address for use in pub/sub mode. Pub/sub
+     * channels decode published messages directly to {@link com.eatthepath.rettys.PubSubMessage} instances instead of
+     * arrays, and pass them to the given consumer like any other message; all other messages from the server are
+     * decoded as usual. Under {@link FlushPolicy#ADAPTIVE}, pub/sub channels decide whether they're busy solely by the
+     * rate at which flushes arrive because replies on pub/sub channels don't correspond one-to-one with commands.</p>
+     *
+     * <p>Under RESP3, servers send published messages and subscription events as push messages. Published messages are
+     * still decoded to {@link com.eatthepath.rettys.PubSubMessage} instances and passed to the given consumer; if the
+     * consumer is also a {@link RedisPushConsumer}, all other push messages (including subscription events) are passed
+     * to it, and are discarded otherwise.</p>
+     *
+     * @param inetSocketAddress the address of the Redis server
+     * @param messageConsumer the consumer to which published messages and replies to commands will be dispatched
+     *
+     * @return a future that completes when the channel has connected and, if RESP3 was requested, finished negotiating
+     * a protocol version
+     */
+    public ChannelFuture createPubSubChannel(final SocketAddress inetSocketAddress, final RedisMessageConsumer messageConsumer) {
+        final RedisPushConsumer pushConsumer =
+                messageConsumer instanceof RedisPushConsumer ? (RedisPushConsumer) messageConsumer : null;
+
+        return createChannelInGroup(inetSocketAddress, messageConsumer, pushConsumer, eventLoopGroup, true);
+    }
+
+    /**
+     * Returns the event loop group in which this factory creates channels.
+     *
+     * @return the event loop group in which this factory creates channels
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    private ChannelFuture createChannelInGroup(final SocketAddress inetSocketAddress, final RedisMessageConsumer responseConsumer, final RedisPushConsumer pushConsumer, final EventLoopGroup eventLoopGroup, final boolean pubSub) {
+        final boolean zeroCopyBulkStrings = this.zeroCopyBulkStrings;
+        final FlushPolicy flushPolicy = this.flushPolicy;
+        final RedisWireTap wireTap = this.wireTap;
+        final RedisMetricsListener metricsListener = this.metricsListener;
+        final ProtocolNegotiationHandler protocolNegotiationHandler =
+                protocolVersion == RedisProtocolVersion.RESP3 ? new ProtocolNegotiationHandler() : null;
+
         final Bootstrap bootstrap = new Bootstrap();
-        bootstrap.channel(NioSocketChannel.class);
+        bootstrap.channel(RedisTransport.forEventLoopGroup(eventLoopGroup).getChannelClass(inetSocketAddress));
         bootstrap.group(eventLoopGroup);
 
-        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
+        bootstrap.handler(new ChannelInitializer<Channel>() {
 
             @Override
-            protected void initChannel(final SocketChannel channel) throws Exception {
+            protected void initChannel(final Channel channel) throws Exception {
                 final ChannelPipeline pipeline = channel.pipeline();
 
-                if (useSsl) {
-                    pipeline.addLast(new SslHandler(SslContextBuilder.forClient().build().newEngine(channel.alloc())));
+                channel.attr(PROTOCOL_VERSION_ATTRIBUTE_KEY).set(RedisProtocolVersion.RESP2);
+
+                if (sslContext != null) {
+                    pipeline.addLast(newSslHandler(channel.alloc(), inetSocketAddress));
+                }
+
+                final ReplyTracker replyTracker = new ReplyTracker();
+
+                // Pub/sub channels can't count commands in flight; a single SUBSCRIBE may produce several replies, and
+                // published messages arrive without any command at all, so adaptive flushing only considers flush rates
+                pipeline.addLast(new RedisFlushHandler(flushPolicy, pubSub ? null : replyTracker, flushStatistics,
+                        RedisFlushHandler.DEFAULT_MAX_DEFERRED_FLUSHES));
+
+                if (wireTap != null) {
+                    pipeline.addLast(new RedisWireTapHandler(wireTap));
                 }
 
-                // TODO Tune parameters
-                pipeline.addLast(new FlushConsolidationHandler());
+                pipeline.addLast(pubSub ?
+                        new PubSubResponseDecoder(zeroCopyBulkStrings, replyTracker, metricsListener) :
+                        new RedisResponseDecoder(zeroCopyBulkStrings, replyTracker, metricsListener));
+                pipeline.addLast(new RedisCommandEncoder(charset, replyTracker, metricsListener));
+
+                if (protocolNegotiationHandler != null) {
+                    pipeline.addLast(protocolNegotiationHandler);
+                }
+
+                pipeline.addLast(new RedisMessageHandler(responseConsumer, pushConsumer));
+            }
+        });
+
+        final ChannelFuture connectFuture = bootstrap.connect(inetSocketAddress);
+
+        if (protocolNegotiationHandler == null) {
+            return connectFuture;
+        }
+
+        // Don't let callers use the channel until we know which protocol it's speaking
+        final ChannelPromise channelReadyPromise = connectFuture.channel().newPromise();
 
-                pipeline.addLast(new RedisFrameDecoder());
-                // TODO Make this configurable
-                pipeline.addLast(new RedisFrameLoggingHandler(charset));
-                pipeline.addLast(new RedisValueDecoder());
-                pipeline.addLast(new RedisCommandEncoder(charset));
-                pipeline.addLast(new RedisMessageHandler(responseConsumer));
+        connectFuture.addListener(connectionFuture -> {
+            if (connectionFuture.isSuccess()) {
+                protocolNegotiationHandler.getNegotiationFuture().addListener(negotiationFuture -> {
+                    if (negotiationFuture.isSuccess()) {
+                        channelReadyPromise.trySuccess();
+                    } else {
+                        channelReadyPromise.tryFailure(negotiationFuture.cause());
+                    }
+                });
+            } else {
+                channelReadyPromise.tryFailure(connectionFuture.cause());
             }
         });
 
-        return bootstrap.connect(inetSocketAddress);
+        return channelReadyPromise;
     }
 }
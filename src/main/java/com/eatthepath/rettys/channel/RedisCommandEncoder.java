@@ -1,19 +1,55 @@
 package com.eatthepath.rettys.channel;
 
+import com.eatthepath.rettys.PreparedRedisCommand;
 import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisCommandTemplate;
+import com.eatthepath.rettys.RedisMetricsListener;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.PromiseCombiner;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 /**
- * A Redis command encoder serializes Redis commands to arrays of "bulk strings" to send to a Redis server.
+ * <p>A Redis command encoder serializes Redis commands to arrays of "bulk strings" to send to a Redis server.</p>
+ *
+ * <p>Command encoders try not to allocate anything but the outbound buffer itself, which is sized exactly before any
+ * components are written. Integral numbers ({@link Long}, {@link Integer}, {@link Short}, and {@link Byte}) and lengths
+ * are written digit-by-digit directly into the outbound buffer, as are strings if the encoder's character set is UTF-8.
+ * Strings in other character sets and other kinds of numbers are converted to {@code byte[]} once, when the outbound
+ * buffer is sized, and the converted bytes are reused when the component is written.</p>
+ *
+ * <p>For {@link PreparedRedisCommand prepared commands}, encoders copy the array header and constant components
+ * pre-encoded by the command's template and only encode the command's variable arguments.</p>
+ *
+ * <p>Commands may also have {@link ByteBuf}, {@link ByteBuffer} (including memory-mapped buffers), and
+ * {@link FileRegion} components, which are sent without being copied. Encoders write such commands as a composite of
+ * small header buffers and the caller's payloads rather than encoding them into a single buffer. Encoders take
+ * ownership of {@code ByteBuf} and {@code FileRegion} components once commands are written to a channel and release
+ * them when they've been sent. File regions can't be written to channels that use TLS.</p>
  */
 class RedisCommandEncoder extends MessageToByteEncoder<RedisCommand> {
 
     private final Charset charset;
+    private final boolean utf8;
+    private final ReplyTracker replyTracker;
+    private final RedisMetricsListener metricsListener;
+
+    // Components that had to be converted to byte[] to size the outbound buffer for the most recently sized command,
+    // indexed by position within the command; encoders are only used by a single thread at a time, so there's no need
+    // to synchronize access
+    private RedisCommand sizedCommand;
+    private byte[][] convertedComponents = new byte[0][];
 
     private static final byte ARRAY_PREFIX = '*';
     private static final byte BULK_STRING_PREFIX = '$';
@@ -23,30 +59,290 @@ class RedisCommandEncoder extends MessageToByteEncoder<RedisCommand> {
     private static final byte[] NULL_BULK_STRING = new byte[] { BULK_STRING_PREFIX, '-', '1', '\r', '\n' };
 
     RedisCommandEncoder(final Charset charset) {
+        this(charset, null);
+    }
+
+    /**
+     * Constructs a new command encoder.
+     *
+     * @param charset the character set with which to encode string arguments
+     * @param replyTracker the tracker to notify when commands are written; may be {@code null}
+     */
+    RedisCommandEncoder(final Charset charset, final ReplyTracker replyTracker) {
+        this(charset, replyTracker, RedisMetricsListener.NO_OP);
+    }
+
+    /**
+     * Constructs a new command encoder that reports the size of each encoded command to the given metrics listener.
+     *
+     * @param charset the character set with which to encode string arguments
+     * @param replyTracker the tracker to notify when commands are written; may be {@code null}
+     * @param metricsListener the listener to notify when commands are encoded
+     */
+    RedisCommandEncoder(final Charset charset, final ReplyTracker replyTracker, final RedisMetricsListener metricsListener) {
         this.charset = charset;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.replyTracker = replyTracker;
+        this.metricsListener = metricsListener;
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(final ChannelHandlerContext context, final RedisCommand command, final boolean preferDirect) {
+        final int encodedLength = getEncodedLength(command);
+
+        return preferDirect ? context.alloc().ioBuffer(encodedLength) : context.alloc().heapBuffer(encodedLength);
+    }
+
+    /**
+     * Returns the exact number of bytes needed to encode the given command.
+     *
+     * @param command the command for which to calculate an encoded length
+     *
+     * @return the number of bytes needed to encode the given command
+     */
+    int getEncodedLength(final RedisCommand command) {
+        final Object[] components = command.getComponents();
+
+        int encodedLength;
+        int firstVariableComponent;
+
+        if (command instanceof PreparedRedisCommand) {
+            final RedisCommandTemplate template = ((PreparedRedisCommand) command).getTemplate();
+
+            encodedLength = template.getEncodedPrefixLength(charset);
+            firstVariableComponent = template.getConstantComponentCount();
+        } else {
+            encodedLength = 1 + getDecimalLength(components.length) + CRLF.length;
+            firstVariableComponent = 0;
+        }
+
+        if (convertedComponents.length < components.length) {
+            convertedComponents = new byte[components.length][];
+        }
+
+        sizedCommand = null;
+
+        for (int i = firstVariableComponent; i < components.length; i++) {
+            final Object component = components[i];
+
+            convertedComponents[i] = null;
+
+            if (component == null) {
+                encodedLength += NULL_BULK_STRING.length;
+            } else {
+                final int bulkStringLength;
+
+                if (requiresConversion(component)) {
+                    // Hang on to the converted bytes so we don't have to convert the component again to write it
+                    final byte[] bulkStringBytes = getBulkStringBytes(component);
+
+                    convertedComponents[i] = bulkStringBytes;
+                    sizedCommand = command;
+
+                    bulkStringLength = bulkStringBytes.length;
+                } else {
+                    bulkStringLength = getBulkStringLength(component);
+                }
+
+                encodedLength += 1 + getDecimalLength(bulkStringLength) + CRLF.length + bulkStringLength + CRLF.length;
+            }
+        }
+
+        return encodedLength;
     }
 
     @Override
     protected void encode(final ChannelHandlerContext context, final RedisCommand command, final ByteBuf out) {
-        // All Redis commands are sent as an array of bulk strings. Start with the array header.
-        out.writeByte(ARRAY_PREFIX);
-        writeUnsignedIntAsRedisIntegerBytes(command.getComponents().length, out);
-        out.writeBytes(CRLF);
+        final Object[] components = command.getComponents();
+        final int start = out.writerIndex();
+        final boolean useConvertedComponents = sizedCommand == command;
+
+        sizedCommand = null;
 
         // Each argument (including the name of the command) is written as a Redis bulk string
-        for (final Object component : command.getComponents()) {
-            if (component == null) {
-                out.writeBytes(NULL_BULK_STRING);
+        for (int i = writeArrayHeader(command, out); i < components.length; i++) {
+            if (useConvertedComponents && convertedComponents[i] != null) {
+                writeBulkString(convertedComponents[i], out);
+
+                // Don't hold on to the caller's data any longer than we need to
+                convertedComponents[i] = null;
             } else {
-                final byte[] bulkStringBytes = getBulkStringBytes(component);
+                writeComponent(components[i], out);
+            }
+        }
+
+        metricsListener.handleBytesEncoded(out.writerIndex() - start);
+
+        if (replyTracker != null) {
+            replyTracker.handleCommandWritten(command);
+        }
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext context, final Object message, final ChannelPromise promise) throws Exception {
+        if (message instanceof RedisCommand && hasZeroCopyComponents((RedisCommand) message)) {
+            writeZeroCopy(context, (RedisCommand) message, promise);
+        } else {
+            super.write(context, message, promise);
+        }
+    }
 
-                out.writeByte(BULK_STRING_PREFIX);
-                writeUnsignedIntAsRedisIntegerBytes(bulkStringBytes.length, out);
-                out.writeBytes(CRLF);
-                out.writeBytes(bulkStringBytes);
-                out.writeBytes(CRLF);
+    private static boolean hasZeroCopyComponents(final RedisCommand command) {
+        for (final Object component : command.getComponents()) {
+            if (component instanceof ByteBuf || component instanceof ByteBuffer || component instanceof FileRegion) {
+                return true;
             }
         }
+
+        return false;
+    }
+
+    /**
+     * Writes a command with zero-copy components as a sequence of small buffers containing headers and ordinary
+     * components interleaved with the zero-copy payloads themselves. Consecutive buffers are combined into a single
+     * composite buffer; file regions must be written on their own.
+     */
+    private void writeZeroCopy(final ChannelHandlerContext context, final RedisCommand command, final ChannelPromise promise) {
+        final Object[] components = command.getComponents();
+
+        // Make sure we can encode the entire command before we write any part of it
+        for (final Object component : components) {
+            if (component != null && !(component instanceof ByteBuf || component instanceof ByteBuffer
+                    || component instanceof FileRegion || component instanceof byte[]
+                    || component instanceof String || component instanceof Number)) {
+
+                for (final Object componentToRelease : components) {
+                    ReferenceCountUtil.safeRelease(componentToRelease);
+                }
+
+                throw new EncoderException("Unexpected argument type: " + component.getClass());
+            }
+        }
+
+        final PromiseCombiner promiseCombiner = new PromiseCombiner(context.executor());
+        long bytesEncoded = 0;
+
+        CompositeByteBuf composite = context.alloc().compositeDirectBuffer(Integer.MAX_VALUE);
+        ByteBuf headers = context.alloc().ioBuffer();
+
+        for (int i = writeArrayHeader(command, headers); i < components.length; i++) {
+            final Object component = components[i];
+
+            if (component instanceof ByteBuf || component instanceof ByteBuffer) {
+                final ByteBuf payload = component instanceof ByteBuf ?
+                        (ByteBuf) component : Unpooled.wrappedBuffer((ByteBuffer) component);
+
+                writeBulkStringHeader(payload.readableBytes(), headers);
+                composite.addComponent(true, headers);
+                composite.addComponent(true, payload);
+
+                headers = context.alloc().ioBuffer();
+                headers.writeBytes(CRLF);
+            } else if (component instanceof FileRegion) {
+                final FileRegion fileRegion = (FileRegion) component;
+
+                writeBulkStringHeader(fileRegion.count(), headers);
+                composite.addComponent(true, headers);
+
+                bytesEncoded += composite.readableBytes() + fileRegion.count();
+
+                promiseCombiner.add(context.write(composite));
+                promiseCombiner.add(context.write(fileRegion));
+
+                composite = context.alloc().compositeDirectBuffer(Integer.MAX_VALUE);
+                headers = context.alloc().ioBuffer();
+                headers.writeBytes(CRLF);
+            } else {
+                writeComponent(component, headers);
+            }
+        }
+
+        composite.addComponent(true, headers);
+        bytesEncoded += composite.readableBytes();
+
+        promiseCombiner.add(context.write(composite));
+        promiseCombiner.finish(promise);
+
+        metricsListener.handleBytesEncoded(bytesEncoded);
+
+        if (replyTracker != null) {
+            replyTracker.handleCommandWritten(command);
+        }
+    }
+
+    /**
+     * Writes the array header for the given command (or, for prepared commands, the template's pre-encoded array header
+     * and constant components) to the given buffer.
+     *
+     * @return the index of the first component that still needs to be written
+     */
+    private int writeArrayHeader(final RedisCommand command, final ByteBuf out) {
+        if (command instanceof PreparedRedisCommand) {
+            // The template has already encoded the array header and all of the constant components for us
+            final RedisCommandTemplate template = ((PreparedRedisCommand) command).getTemplate();
+
+            template.writeEncodedPrefix(charset, out);
+            return template.getConstantComponentCount();
+        } else {
+            // All Redis commands are sent as an array of bulk strings. Start with the array header.
+            out.writeByte(ARRAY_PREFIX);
+            writeDecimal(command.getComponents().length, out);
+            out.writeBytes(CRLF);
+
+            return 0;
+        }
+    }
+
+    private void writeComponent(final Object component, final ByteBuf out) {
+        if (component == null) {
+            out.writeBytes(NULL_BULK_STRING);
+        } else if (isIntegral(component)) {
+            final long value = ((Number) component).longValue();
+
+            writeBulkStringHeader(getDecimalLength(value), out);
+            writeDecimal(value, out);
+            out.writeBytes(CRLF);
+        } else if (utf8 && component instanceof String) {
+            final String string = (String) component;
+
+            writeBulkStringHeader(ByteBufUtil.utf8Bytes(string), out);
+            ByteBufUtil.writeUtf8(out, string);
+            out.writeBytes(CRLF);
+        } else {
+            writeBulkString(getBulkStringBytes(component), out);
+        }
+    }
+
+    private static void writeBulkString(final byte[] bulkStringBytes, final ByteBuf out) {
+        writeBulkStringHeader(bulkStringBytes.length, out);
+        out.writeBytes(bulkStringBytes);
+        out.writeBytes(CRLF);
+    }
+
+    private static void writeBulkStringHeader(final long length, final ByteBuf out) {
+        out.writeByte(BULK_STRING_PREFIX);
+        writeDecimal(length, out);
+        out.writeBytes(CRLF);
+    }
+
+    /**
+     * Indicates whether the given component must be converted to {@code byte[]} before its encoded length is known.
+     */
+    private boolean requiresConversion(final Object redisValue) {
+        return !(redisValue instanceof byte[] || isIntegral(redisValue) || (utf8 && redisValue instanceof String));
+    }
+
+    /**
+     * Returns the encoded length of a component that doesn't require conversion to {@code byte[]}.
+     */
+    private static int getBulkStringLength(final Object redisValue) {
+        if (isIntegral(redisValue)) {
+            return getDecimalLength(((Number) redisValue).longValue());
+        } else if (redisValue instanceof String) {
+            return ByteBufUtil.utf8Bytes((String) redisValue);
+        } else {
+            return ((byte[]) redisValue).length;
+        }
     }
 
     byte[] getBulkStringBytes(final Object redisValue) {
@@ -67,7 +363,48 @@ class RedisCommandEncoder extends MessageToByteEncoder<RedisCommand> {
         return bulkStringBytes;
     }
 
-    private static void writeUnsignedIntAsRedisIntegerBytes(final int i, final ByteBuf out) {
-        out.writeBytes(String.valueOf(i).getBytes(StandardCharsets.US_ASCII));
+    private static boolean isIntegral(final Object redisValue) {
+        return redisValue instanceof Long || redisValue instanceof Integer
+                || redisValue instanceof Short || redisValue instanceof Byte;
+    }
+
+    /**
+     * Returns the number of characters (including a leading minus sign, if any) in the decimal representation of the
+     * given value.
+     */
+    static int getDecimalLength(final long value) {
+        int length = value < 0 ? 2 : 1;
+
+        for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+            length += 1;
+        }
+
+        return length;
+    }
+
+    /**
+     * Writes the decimal representation of the given value as ASCII digits directly to the given buffer.
+     */
+    static void writeDecimal(final long value, final ByteBuf out) {
+        final int length = getDecimalLength(value);
+
+        out.ensureWritable(length);
+
+        final int start = out.writerIndex();
+        int index = start + length - 1;
+
+        // Work with non-positive values so we don't overflow when negating Long.MIN_VALUE
+        long remaining = value < 0 ? value : -value;
+
+        do {
+            out.setByte(index--, (int) ('0' - (remaining % 10)));
+            remaining /= 10;
+        } while (remaining != 0);
+
+        if (value < 0) {
+            out.setByte(start, '-');
+        }
+
+        out.writerIndex(start + length);
     }
 }
@@ -0,0 +1,198 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.Objects;
+
+/**
+ * <p>A Redis flush handler consolidates flushes according to a {@link FlushPolicy}. It works much like Netty's
+ * {@link io.netty.handler.flush.FlushConsolidationHandler}, but can also decide whether to consolidate flushes based on
+ * how busy its channel is.</p>
+ *
+ * <p>Flush handlers must be placed before (i.e. closer to the network than) the encoder in a channel's pipeline.</p>
+ */
+class RedisFlushHandler extends ChannelDuplexHandler {
+
+    private final FlushPolicy flushPolicy;
+    private final ReplyTracker replyTracker;
+    private final FlushStatistics flushStatistics;
+    private final int maxDeferredFlushes;
+
+    private ChannelHandlerContext context;
+    private final Runnable flushTask;
+
+    private boolean readInProgress = false;
+    private int deferredFlushes = 0;
+    private boolean flushTaskScheduled = false;
+
+    private long lastFlushRequestNanos = 0;
+    private long smoothedFlushIntervalNanos = Long.MAX_VALUE;
+
+    /**
+     * The default maximum number of flushes to defer before flushing regardless of policy.
+     */
+    static final int DEFAULT_MAX_DEFERRED_FLUSHES = 256;
+
+    /**
+     * The number of commands awaiting replies above which an adaptive flush handler considers its channel busy.
+     */
+    static final long ADAPTIVE_BUSY_COMMANDS_IN_FLIGHT = 1;
+
+    /**
+     * The (smoothed) interval between flush requests below which an adaptive flush handler considers its channel busy.
+     */
+    static final long ADAPTIVE_BUSY_FLUSH_INTERVAL_NANOS = 20_000;
+
+    /**
+     * Constructs a new flush handler.
+     *
+     * @param flushPolicy the policy that determines when to consolidate flushes
+     * @param replyTracker the tracker from which to learn how many commands are awaiting replies; may be {@code null},
+     *                     in which case adaptive handlers consider only the rate at which flushes arrive
+     * @param flushStatistics the statistics to update as flushes are requested and performed
+     * @param maxDeferredFlushes the maximum number of flushes to defer before flushing regardless of policy
+     */
+    RedisFlushHandler(final FlushPolicy flushPolicy, final ReplyTracker replyTracker, final FlushStatistics flushStatistics, final int maxDeferredFlushes) {
+        if (maxDeferredFlushes < 1) {
+            throw new IllegalArgumentException("Maximum deferred flushes must be positive.");
+        }
+
+        this.flushPolicy = Objects.requireNonNull(flushPolicy);
+        this.replyTracker = replyTracker;
+        this.flushStatistics = Objects.requireNonNull(flushStatistics);
+        this.maxDeferredFlushes = maxDeferredFlushes;
+
+        this.flushTask = () -> {
+            flushTaskScheduled = false;
+
+            // If a read started in the meantime, the flush will happen when it finishes
+            if (!readInProgress) {
+                flushNow();
+            }
+        };
+    }
+
+    ReplyTracker getReplyTracker() {
+        return replyTracker;
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void flush(final ChannelHandlerContext context) {
+        flushStatistics.handleFlushRequested();
+
+        deferredFlushes += 1;
+
+        if (deferredFlushes >= maxDeferredFlushes) {
+            flushNow();
+        } else if (!readInProgress) {
+            if (shouldDeferFlush(System.nanoTime())) {
+                scheduleFlush();
+            } else {
+                flushNow();
+            }
+        }
+
+        // Otherwise, we'll flush when the current read is complete
+    }
+
+    boolean shouldDeferFlush(final long nanoTime) {
+        switch (flushPolicy) {
+            case LATENCY_FIRST: {
+                return false;
+            }
+
+            case THROUGHPUT_FIRST: {
+                return true;
+            }
+
+            case ADAPTIVE: {
+                // Keep an exponentially-weighted moving average of the time between flush requests
+                if (lastFlushRequestNanos != 0) {
+                    final long interval = nanoTime - lastFlushRequestNanos;
+
+                    smoothedFlushIntervalNanos = smoothedFlushIntervalNanos == Long.MAX_VALUE ?
+                            interval : smoothedFlushIntervalNanos + ((interval - smoothedFlushIntervalNanos) >> 3);
+                }
+
+                lastFlushRequestNanos = nanoTime;
+
+                return (replyTracker != null && replyTracker.getCommandsInFlight() > ADAPTIVE_BUSY_COMMANDS_IN_FLIGHT) ||
+                        smoothedFlushIntervalNanos < ADAPTIVE_BUSY_FLUSH_INTERVAL_NANOS;
+            }
+
+            default: {
+                throw new IllegalStateException("Unexpected flush policy: " + flushPolicy);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushTaskScheduled) {
+            flushTaskScheduled = true;
+            context.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    private void flushNow() {
+        if (deferredFlushes > 0) {
+            deferredFlushes = 0;
+
+            flushStatistics.handleFlushPerformed();
+            context.flush();
+        }
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object message) {
+        readInProgress = true;
+        context.fireChannelRead(message);
+    }
+
+    @Override
+    public void channelReadComplete(final ChannelHandlerContext context) {
+        readInProgress = false;
+
+        flushNow();
+        context.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext context) {
+        // If the outbound buffer is full, there's no sense in holding writes back any longer
+        if (!context.channel().isWritable()) {
+            flushNow();
+        }
+
+        context.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext context, final Throwable cause) {
+        flushNow();
+        context.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(final ChannelHandlerContext context, final ChannelPromise promise) {
+        flushNow();
+        context.disconnect(promise);
+    }
+
+    @Override
+    public void close(final ChannelHandlerContext context, final ChannelPromise promise) {
+        flushNow();
+        context.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext context) {
+        flushNow();
+    }
+}
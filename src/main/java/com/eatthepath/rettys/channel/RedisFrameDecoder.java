@@ -9,7 +9,8 @@ import java.util.List;
 
 /**
  * A Redis frame decoder breaks a stream of bytes from a Redis server into complete "frames," each of which represents
- * a complete Redis value.
+ * a complete Redis value. Channels created by a {@link RedisChannelFactory} use a single-pass
+ * {@link RedisResponseDecoder} instead of a frame decoder and a {@link RedisValueDecoder}.
  */
 class RedisFrameDecoder extends ByteToMessageDecoder {
 
@@ -104,6 +105,11 @@ class RedisFrameDecoder extends ByteToMessageDecoder {
                     int totalArrayElementLength = 0;
 
                     for (int i = 0; i < arrayLength; i++) {
+                        if (totalArrayElementLength > byteBuf.readableBytes()) {
+                            // An earlier element is incomplete, so we can't even find the start of this one
+                            throw BUFFER_UNDERRUN_EXCEPTION;
+                        }
+
                         totalArrayElementLength += getLengthOfNextFrame(byteBuf.slice(
                                 byteBuf.readerIndex() + totalArrayElementLength,
                                 byteBuf.readableBytes() - totalArrayElementLength));
@@ -1,25 +1,59 @@
 package com.eatthepath.rettys.channel;
 
 import com.eatthepath.rettys.RedisMessageConsumer;
+import com.eatthepath.rettys.RedisPushConsumer;
+import com.eatthepath.rettys.RedisPushMessage;
+import com.eatthepath.rettys.RedisValues;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-
-import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * A handler that dispatches messages from Redis to an out-of-pipeline message consumer.
+ * A handler that dispatches messages from Redis to an out-of-pipeline message consumer. RESP3 push messages are
+ * dispatched to a separate push consumer so they never interfere with the pairing of replies to commands.
  */
 class RedisMessageHandler extends ChannelInboundHandlerAdapter {
 
     private final RedisMessageConsumer messageConsumer;
+    private final RedisPushConsumer pushConsumer;
+
+    private static final Logger log = LoggerFactory.getLogger(RedisMessageHandler.class);
 
     RedisMessageHandler(final RedisMessageConsumer messageConsumer) {
+        this(messageConsumer, null);
+    }
+
+    /**
+     * Constructs a new message handler.
+     *
+     * @param messageConsumer the consumer to which replies to commands will be dispatched
+     * @param pushConsumer the consumer to which push messages will be dispatched; may be {@code null}, in which case
+     *                     push messages are discarded
+     */
+    RedisMessageHandler(final RedisMessageConsumer messageConsumer, final RedisPushConsumer pushConsumer) {
         this.messageConsumer = messageConsumer;
+        this.pushConsumer = pushConsumer;
     }
 
     @Override
     public void channelRead(final ChannelHandlerContext context, final Object message) {
-        messageConsumer.consumeMessage(context.channel(), message);
+        if (message instanceof RedisPushMessage) {
+            if (pushConsumer != null) {
+                pushConsumer.consumePushMessage(context.channel(), (RedisPushMessage) message);
+            } else {
+                log.debug("Discarding push message with no push consumer: {}", message);
+                RedisValues.release(message);
+            }
+        } else {
+            messageConsumer.consumeMessage(context.channel(), message != RedisResponseDecoder.NULL_RESPONSE ? message : null);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(final ChannelHandlerContext context) {
+        messageConsumer.handleReadComplete(context.channel());
+        context.fireChannelReadComplete();
     }
 
     @Override
@@ -10,6 +10,18 @@ class RedisProtocolUtil {
     static final byte BULK_STRING_PREFIX = '$';
     static final byte ARRAY_PREFIX = '*';
 
+    // RESP3 types; see https://github.com/antirez/RESP3/blob/master/spec.md
+    static final byte NULL_PREFIX = '_';
+    static final byte DOUBLE_PREFIX = ',';
+    static final byte BOOLEAN_PREFIX = '#';
+    static final byte BLOB_ERROR_PREFIX = '!';
+    static final byte VERBATIM_STRING_PREFIX = '=';
+    static final byte BIG_NUMBER_PREFIX = '(';
+    static final byte MAP_PREFIX = '%';
+    static final byte SET_PREFIX = '~';
+    static final byte ATTRIBUTE_PREFIX = '|';
+    static final byte PUSH_PREFIX = '>';
+
     /**
      * Reads the next integer value from the given byte buffer. This method consumes the trailing '\r\n'.
      *
@@ -0,0 +1,18 @@
+package com.eatthepath.rettys.channel;
+
+/**
+ * An enumeration of versions of the Redis serialization protocol (RESP).
+ */
+public enum RedisProtocolVersion {
+
+    /**
+     * The RESP2 protocol, which all Redis servers support.
+     */
+    RESP2,
+
+    /**
+     * The RESP3 protocol, which Redis 6 and newer support. RESP3 has richer data types and allows servers to send
+     * out-of-band "push" messages on the same connection as replies to commands.
+     */
+    RESP3
+}
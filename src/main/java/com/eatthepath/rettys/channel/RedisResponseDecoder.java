@@ -0,0 +1,921 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisException;
+import com.eatthepath.rettys.RedisMetricsListener;
+import com.eatthepath.rettys.RedisPushMessage;
+import com.eatthepath.rettys.RedisReplyVisitor;
+import com.eatthepath.rettys.RedisValues;
+import com.eatthepath.rettys.StreamingRedisCommand;
+import com.eatthepath.rettys.TypedRedisCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.ByteProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * <p>A Redis response decoder parses a stream of bytes from a Redis server directly into Java representations of Redis
+ * values in a single pass. Unlike the combination of a {@link RedisFrameDecoder} and a {@link RedisValueDecoder},
+ * which must wait for (and repeatedly re-measure) a complete frame before parsing it a second time, a response decoder
+ * is a resumable state machine: it consumes whatever data is available, remembers its position within the current value
+ * (including any partially-populated arrays), and picks up where it left off when more data arrives. Each byte from
+ * the server is examined once, and the only data retained between reads is an incomplete simple string or bulk
+ * string.</p>
+ *
+ * <p>Response decoders understand both RESP2 and RESP3. Redis value types are converted to Java types as follows:</p>
+ *
+ * <table>
+ *     <thead>
+ *         <tr>
+ *             <th>Redis type</th>
+ *             <th>Java type</th>
+ *         </tr>
+ *     </thead>
+ *
+ *     <tbody>
+ *         <tr>
+ *             <td>Simple string</td>
+ *             <td>{@link String}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Error, blob error</td>
+ *             <td>{@link RedisException}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Integer</td>
+ *             <td>{@link Long}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Bulk string</td>
+ *             <td>byte[] (or {@link ByteBuf} for zero-copy bulk strings)</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Array</td>
+ *             <td>Object[]</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Null (RESP3)</td>
+ *             <td>{@code null}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Double (RESP3)</td>
+ *             <td>{@link Double}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Boolean (RESP3)</td>
+ *             <td>{@link Boolean}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Big number (RESP3)</td>
+ *             <td>{@link BigInteger}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Verbatim string (RESP3)</td>
+ *             <td>{@link String} (without the format prefix)</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Map (RESP3)</td>
+ *             <td>{@link LinkedHashMap}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Set (RESP3)</td>
+ *             <td>{@link LinkedHashSet}</td>
+ *         </tr>
+ *
+ *         <tr>
+ *             <td>Push (RESP3)</td>
+ *             <td>{@link RedisPushMessage}</td>
+ *         </tr>
+ *     </tbody>
+ * </table>
+ *
+ * <p>Note that {@code byte[]} keys in maps and elements in sets use identity equality, and so callers should iterate
+ * over maps and sets rather than look up values by key. RESP3 attributes are parsed and then discarded; the value they
+ * describe is decoded as if the attribute weren't present. Top-level {@code null} values are represented by
+ * {@link #NULL_RESPONSE}.</p>
+ *
+ * <p>Response decoders may optionally decode bulk strings as "zero-copy" buffers instead of {@code byte[]}. In that
+ * case, each bulk string is a retained, read-only slice of the buffer that received it from the network rather than a
+ * copy on the heap, and receivers of decoded values become responsible for releasing them.</p>
+ *
+ * <p>When constructed with a {@link ReplyTracker}, response decoders deliver the elements of array replies to
+ * {@link StreamingRedisCommand streaming commands} to the command's element consumer as each element is completed, and
+ * then pass the number of elements in the array along the pipeline in place of the array itself. Push messages are
+ * not replies to commands and are not counted as replies by the tracker.</p>
+ *
+ * <p>Replies to {@link TypedRedisCommand typed commands} are not decoded to Java objects at all. Instead, the decoder
+ * reports each part of the reply to the command's {@link RedisReplyVisitor} as it's parsed, pointing the visitor
+ * directly at the bytes in the cumulation buffer, and passes the visitor's result along the pipeline in place of the
+ * reply. If the visitor throws an exception, that exception is passed along in place of the reply. Top-level error
+ * replies to typed commands are decoded as {@link RedisException RedisExceptions} as usual, and attributes within
+ * replies to typed commands are discarded without being reported to the visitor.</p>
+ *
+ * @see RedisValues#release(Object)
+ */
+class RedisResponseDecoder extends ByteToMessageDecoder {
+
+    private final boolean zeroCopyBulkStrings;
+    private final ReplyTracker replyTracker;
+    private final RedisMetricsListener metricsListener;
+
+    private RedisCommand currentCommand;
+    private GuardedReplyVisitor replyVisitor;
+    private int attributeDepth;
+
+    private State state = State.READ_PREFIX;
+
+    private byte prefix;
+
+    // Digits accumulate as a negative number so that Long.MIN_VALUE (which has no positive counterpart) fits
+    private long integerValue;
+    private boolean integerIsNegative;
+    private boolean integerHasDigits;
+
+    private int lineBytesScanned;
+
+    private int bulkStringLength;
+
+    private final Deque<PartialAggregate> partialAggregates = new ArrayDeque<>();
+
+    private static final int VERBATIM_STRING_FORMAT_LENGTH = 4;
+
+    private static final Logger log = LoggerFactory.getLogger(RedisResponseDecoder.class);
+
+    /**
+     * A placeholder for top-level {@code null} values, which can't be passed along a Netty pipeline as-is.
+     *
+     * @see RedisMessageHandler
+     */
+    static final Object NULL_RESPONSE = new Object();
+
+    /**
+     * Constructs a new response decoder that decodes bulk strings as {@code byte[]}.
+     */
+    RedisResponseDecoder() {
+        this(false, null);
+    }
+
+    /**
+     * Constructs a new response decoder.
+     *
+     * @param zeroCopyBulkStrings if {@code true}, bulk strings are decoded as retained, read-only {@link ByteBuf}
+     *                            slices that must be released by their receiver; if {@code false}, bulk strings are
+     *                            decoded as {@code byte[]}
+     * @param replyTracker the tracker that pairs replies with the commands that produced them; may be {@code null}, in
+     *                     which case all replies are decoded in their entirety
+     */
+    RedisResponseDecoder(final boolean zeroCopyBulkStrings, final ReplyTracker replyTracker) {
+        this(zeroCopyBulkStrings, replyTracker, RedisMetricsListener.NO_OP);
+    }
+
+    /**
+     * Constructs a new response decoder that reports the number of bytes it receives to the given metrics listener.
+     *
+     * @param zeroCopyBulkStrings if {@code true}, bulk strings are decoded as retained, read-only {@link ByteBuf}
+     *                            slices that must be released by their receiver; if {@code false}, bulk strings are
+     *                            decoded as {@code byte[]}
+     * @param replyTracker the tracker that pairs replies with the commands that produced them; may be {@code null}, in
+     *                     which case all replies are decoded in their entirety
+     * @param metricsListener the listener to notify when bytes arrive from the server
+     */
+    RedisResponseDecoder(final boolean zeroCopyBulkStrings, final ReplyTracker replyTracker, final RedisMetricsListener metricsListener) {
+        this.zeroCopyBulkStrings = zeroCopyBulkStrings;
+        this.replyTracker = replyTracker;
+        this.metricsListener = metricsListener;
+
+        if (zeroCopyBulkStrings) {
+            // Slices of the cumulation buffer may outlive it, and a merging cumulator would have to copy everything that
+            // remains when slices are still outstanding; composing buffers instead avoids copying large payloads.
+            setCumulator(COMPOSITE_CUMULATOR);
+        }
+    }
+
+    /**
+     * The outcome of an attempt by a subclass to decode a top-level value on its own.
+     *
+     * @see #decodeTopLevelValue(ByteBuf, List)
+     */
+    enum TopLevelDecodeResult {
+        /**
+         * A complete value was decoded and the buffer's reader index was advanced past it.
+         */
+        DECODED,
+
+        /**
+         * The value may be one the subclass would decode, but more data is needed to be sure; the buffer is unchanged.
+         */
+        NEEDS_MORE_DATA,
+
+        /**
+         * The value is not one the subclass decodes, and should be decoded as usual; the buffer is unchanged.
+         */
+        NOT_HANDLED
+    }
+
+    private enum State {
+        READ_PREFIX,
+        READ_INTEGER,
+        READ_INTEGER_LINE_FEED,
+        READ_LINE,
+        READ_BULK_STRING
+    }
+
+    /**
+     * An aggregate value (an array, map, set, attribute, or push message) whose elements are still arriving from the
+     * server. Partial aggregates either collect their elements or, if they belong to a streaming command, pass each
+     * element along to an element consumer as it arrives. Maps and attributes are collected as a flat sequence of
+     * alternating keys and values. Aggregates that are being reported to a reply visitor only count their elements.
+     */
+    private static class PartialAggregate {
+        private final byte prefix;
+        private final int length;
+        private final Object[] elements;
+        private final Consumer<Object> elementConsumer;
+        private final boolean visited;
+
+        private int elementsRead = 0;
+
+        private PartialAggregate(final byte prefix, final int length, final Consumer<Object> elementConsumer, final boolean visited) {
+            this.prefix = prefix;
+            this.length = length;
+            this.elements = elementConsumer == null && !visited ? new Object[length] : null;
+            this.elementConsumer = elementConsumer;
+            this.visited = visited;
+        }
+
+        /**
+         * Adds the given element to this aggregate.
+         *
+         * @param element the element to add
+         *
+         * @return {@code true} if this aggregate is complete after adding the given element or {@code false} otherwise
+         */
+        private boolean addElement(final Object element) {
+            if (elementConsumer != null) {
+                try {
+                    elementConsumer.accept(element);
+                } catch (final Exception e) {
+                    log.warn("Element consumer threw an exception while handling an array element.", e);
+                }
+
+                elementsRead += 1;
+            } else if (elements != null) {
+                elements[elementsRead++] = element;
+            } else {
+                elementsRead += 1;
+            }
+
+            return elementsRead == length;
+        }
+
+        /**
+         * Returns the value that represents this aggregate once it's complete.
+         *
+         * @return the complete aggregate value or, if this aggregate's elements were delivered to an element consumer,
+         * the number of elements delivered
+         */
+        private Object getCompleteValue() {
+            if (elementConsumer != null) {
+                return (long) length;
+            }
+
+            switch (prefix) {
+                case RedisProtocolUtil.SET_PREFIX: {
+                    final Set<Object> set = new LinkedHashSet<>(elements.length);
+
+                    for (final Object element : elements) {
+                        if (!set.add(element)) {
+                            // Redis shouldn't ever send duplicate set elements, but if it does, make sure we don't leak
+                            RedisValues.release(element);
+                        }
+                    }
+
+                    return set;
+                }
+
+                case RedisProtocolUtil.MAP_PREFIX: {
+                    final Map<Object, Object> map = new LinkedHashMap<>(elements.length);
+
+                    for (int i = 0; i < elements.length; i += 2) {
+                        if (map.containsKey(elements[i])) {
+                            // As with sets, duplicate keys "shouldn't" happen, but let's not leak if they do
+                            RedisValues.release(elements[i]);
+                        }
+
+                        RedisValues.release(map.put(elements[i], elements[i + 1]));
+                    }
+
+                    return map;
+                }
+
+                case RedisProtocolUtil.PUSH_PREFIX: {
+                    return new RedisPushMessage(elements);
+                }
+
+                default: {
+                    return elements;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object message) throws Exception {
+        if (message instanceof ByteBuf) {
+            metricsListener.handleBytesDecoded(((ByteBuf) message).readableBytes());
+        }
+
+        super.channelRead(context, message);
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext context, final ByteBuf in, final List<Object> out) throws IOException {
+        while (in.isReadable()) {
+            switch (state) {
+                case READ_PREFIX: {
+                    if (partialAggregates.isEmpty()) {
+                        final TopLevelDecodeResult topLevelDecodeResult = decodeTopLevelValue(in, out);
+
+                        if (topLevelDecodeResult == TopLevelDecodeResult.DECODED) {
+                            break;
+                        } else if (topLevelDecodeResult == TopLevelDecodeResult.NEEDS_MORE_DATA) {
+                            return;
+                        }
+                    }
+
+                    prefix = in.readByte();
+
+                    if (partialAggregates.isEmpty() && replyTracker != null
+                            && prefix != RedisProtocolUtil.ATTRIBUTE_PREFIX && prefix != RedisProtocolUtil.PUSH_PREFIX) {
+
+                        // This is the start of a new top-level reply
+                        currentCommand = replyTracker.handleReplyStarted();
+
+                        if (currentCommand instanceof TypedRedisCommand
+                                && prefix != RedisProtocolUtil.ERROR_STRING_PREFIX
+                                && prefix != RedisProtocolUtil.BLOB_ERROR_PREFIX) {
+
+                            replyVisitor = new GuardedReplyVisitor(((TypedRedisCommand<?>) currentCommand).newReplyVisitor());
+                        }
+                    }
+
+                    switch (prefix) {
+                        case RedisProtocolUtil.SIMPLE_STRING_PREFIX:
+                        case RedisProtocolUtil.ERROR_STRING_PREFIX:
+                        case RedisProtocolUtil.NULL_PREFIX:
+                        case RedisProtocolUtil.DOUBLE_PREFIX:
+                        case RedisProtocolUtil.BOOLEAN_PREFIX:
+                        case RedisProtocolUtil.BIG_NUMBER_PREFIX: {
+                            lineBytesScanned = 0;
+                            state = State.READ_LINE;
+                            break;
+                        }
+
+                        case RedisProtocolUtil.INTEGER_PREFIX:
+                        case RedisProtocolUtil.BULK_STRING_PREFIX:
+                        case RedisProtocolUtil.BLOB_ERROR_PREFIX:
+                        case RedisProtocolUtil.VERBATIM_STRING_PREFIX:
+                        case RedisProtocolUtil.ARRAY_PREFIX:
+                        case RedisProtocolUtil.MAP_PREFIX:
+                        case RedisProtocolUtil.SET_PREFIX:
+                        case RedisProtocolUtil.ATTRIBUTE_PREFIX:
+                        case RedisProtocolUtil.PUSH_PREFIX: {
+                            integerValue = 0;
+                            integerIsNegative = false;
+                            integerHasDigits = false;
+                            state = State.READ_INTEGER;
+                            break;
+                        }
+
+                        default: {
+                            throw new IOException(String.format("Unexpected prefix: %x", prefix));
+                        }
+                    }
+
+                    break;
+                }
+
+                case READ_INTEGER: {
+                    if (readIntegerDigits(in)) {
+                        state = State.READ_INTEGER_LINE_FEED;
+                    }
+
+                    break;
+                }
+
+                case READ_INTEGER_LINE_FEED: {
+                    expectByte(in.readByte(), (byte) '\n');
+
+                    if (!integerHasDigits) {
+                        throw new IOException("Integer value had no digits");
+                    }
+
+                    handleInteger(integerIsNegative ? integerValue : -integerValue, out);
+                    break;
+                }
+
+                case READ_LINE: {
+                    final int lineFeedIndex = in.forEachByte(in.readerIndex() + lineBytesScanned,
+                            in.readableBytes() - lineBytesScanned, ByteProcessor.FIND_LF);
+
+                    if (lineFeedIndex < 0) {
+                        // We don't have the whole line yet; remember how far we've looked so we don't have to scan
+                        // the same bytes again when more data arrives.
+                        lineBytesScanned = in.readableBytes();
+                        return;
+                    }
+
+                    // Exclude the trailing CRLF from the string itself
+                    final int lineLength = lineFeedIndex - in.readerIndex() - 1;
+
+                    if (isVisiting()) {
+                        visitLine(in, in.readerIndex(), lineLength);
+                        in.readerIndex(lineFeedIndex + 1);
+
+                        handleVisitedValue(out);
+                    } else {
+                        final String line = in.toString(in.readerIndex(), lineLength, StandardCharsets.US_ASCII);
+                        in.readerIndex(lineFeedIndex + 1);
+
+                        handleValue(parseLine(line), out);
+                    }
+
+                    break;
+                }
+
+                case READ_BULK_STRING: {
+                    // The payload is followed by a trailing CRLF
+                    if (in.readableBytes() < bulkStringLength + 2) {
+                        return;
+                    }
+
+                    if (isVisiting()) {
+                        visitBulkString(in);
+
+                        expectByte(in.readByte(), (byte) '\r');
+                        expectByte(in.readByte(), (byte) '\n');
+
+                        handleVisitedValue(out);
+                        break;
+                    }
+
+                    final Object bulkString = readBulkString(in);
+
+                    try {
+                        expectByte(in.readByte(), (byte) '\r');
+                        expectByte(in.readByte(), (byte) '\n');
+                    } catch (final IOException e) {
+                        RedisValues.release(bulkString);
+                        throw e;
+                    }
+
+                    handleValue(bulkString, out);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives subclasses a chance to decode the next top-level value without going through this decoder's general-purpose
+     * state machine. This method is called whenever this decoder is between top-level values and data is available. By
+     * default, this method declines to decode anything.
+     *
+     * @param in the buffer from which to decode a value; implementations must not modify the buffer unless they decode
+     *           a complete value
+     * @param out the list to which decoded values should be added
+     *
+     * @return the outcome of the attempt to decode a value
+     *
+     * @throws IOException if the data in the buffer could not be parsed
+     */
+    TopLevelDecodeResult decodeTopLevelValue(final ByteBuf in, final List<Object> out) throws IOException {
+        return TopLevelDecodeResult.NOT_HANDLED;
+    }
+
+    /**
+     * Reads as many digits of an integer as are available from the given buffer.
+     *
+     * @param in the buffer from which to read digits
+     *
+     * @return {@code true} if the terminating carriage return was reached or {@code false} if more data is needed
+     *
+     * @throws IOException if a character other than a digit, a leading minus sign, or a terminating carriage return was
+     * encountered, or if the digits describe a value that does not fit in a {@code long}
+     */
+    private boolean readIntegerDigits(final ByteBuf in) throws IOException {
+        while (in.isReadable()) {
+            final byte b = in.readByte();
+
+            if (b >= '0' && b <= '9') {
+                final long limit = integerIsNegative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+                final int digit = b - '0';
+
+                if (integerValue < limit / 10 || integerValue * 10 < limit + digit) {
+                    throw new IOException("Integer value does not fit in a long");
+                }
+
+                integerValue = (integerValue * 10) - digit;
+                integerHasDigits = true;
+            } else if (b == '\r') {
+                return true;
+            } else if (b == '-' && !integerHasDigits && !integerIsNegative) {
+                integerIsNegative = true;
+            } else {
+                throw new IOException(String.format("Unexpected character in integer: %x", b));
+            }
+        }
+
+        return false;
+    }
+
+    private void handleInteger(final long value, final List<Object> out) throws IOException {
+        switch (prefix) {
+            case RedisProtocolUtil.INTEGER_PREFIX: {
+                if (isVisiting()) {
+                    replyVisitor.visitInteger(value);
+                    handleVisitedValue(out);
+                } else {
+                    handleValue(value, out);
+                }
+
+                break;
+            }
+
+            case RedisProtocolUtil.BULK_STRING_PREFIX:
+            case RedisProtocolUtil.BLOB_ERROR_PREFIX:
+            case RedisProtocolUtil.VERBATIM_STRING_PREFIX: {
+                if (value < 0) {
+                    // Redis represents null bulk string values as "$-1\r\n"
+                    handleNull(out);
+                } else {
+                    bulkStringLength = checkLength(value);
+                    state = State.READ_BULK_STRING;
+                }
+
+                break;
+            }
+
+            case RedisProtocolUtil.ARRAY_PREFIX:
+            case RedisProtocolUtil.SET_PREFIX:
+            case RedisProtocolUtil.PUSH_PREFIX: {
+                startAggregate(value, out);
+                break;
+            }
+
+            case RedisProtocolUtil.MAP_PREFIX:
+            case RedisProtocolUtil.ATTRIBUTE_PREFIX: {
+                // Maps and attributes report the number of key/value pairs, not the total number of elements; check the
+                // number of pairs first so doubling it can't overflow
+                startAggregate(value < 0 ? value : checkLength(value) * 2L, out);
+                break;
+            }
+
+            default: {
+                // This should never happen; it means we started reading an integer for a type that doesn't have one
+                throw new IllegalStateException(String.format("Unexpected prefix for integer value: %x", prefix));
+            }
+        }
+    }
+
+    private static int checkLength(final long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Length too long: " + length);
+        }
+
+        return (int) length;
+    }
+
+    private void startAggregate(final long length, final List<Object> out) throws IOException {
+        if (length < 0) {
+            handleNull(out);
+            return;
+        }
+
+        final int elementCount = checkLength(length);
+        final boolean visited = isVisiting() && prefix != RedisProtocolUtil.ATTRIBUTE_PREFIX;
+
+        if (prefix == RedisProtocolUtil.ATTRIBUTE_PREFIX) {
+            // Attributes (and everything in them) get decoded and discarded even when the reply is being visited
+            attributeDepth += 1;
+        }
+
+        final boolean streaming = partialAggregates.isEmpty()
+                && currentCommand instanceof StreamingRedisCommand
+                && prefix != RedisProtocolUtil.PUSH_PREFIX
+                && prefix != RedisProtocolUtil.ATTRIBUTE_PREFIX;
+
+        final PartialAggregate partialAggregate = new PartialAggregate(prefix, elementCount,
+                streaming ? ((StreamingRedisCommand) currentCommand).getElementConsumer() : null, visited);
+
+        if (visited) {
+            switch (prefix) {
+                case RedisProtocolUtil.MAP_PREFIX: {
+                    replyVisitor.visitMapStart(elementCount / 2);
+                    break;
+                }
+
+                case RedisProtocolUtil.SET_PREFIX: {
+                    replyVisitor.visitSetStart(elementCount);
+                    break;
+                }
+
+                default: {
+                    replyVisitor.visitArrayStart(elementCount);
+                    break;
+                }
+            }
+        }
+
+        if (length == 0) {
+            handleCompleteAggregate(partialAggregate, out);
+        } else {
+            partialAggregates.push(partialAggregate);
+            state = State.READ_PREFIX;
+        }
+    }
+
+    private Object parseLine(final String line) throws IOException {
+        switch (prefix) {
+            case RedisProtocolUtil.SIMPLE_STRING_PREFIX: {
+                return line;
+            }
+
+            case RedisProtocolUtil.ERROR_STRING_PREFIX: {
+                return new RedisException(line);
+            }
+
+            case RedisProtocolUtil.NULL_PREFIX: {
+                return null;
+            }
+
+            case RedisProtocolUtil.DOUBLE_PREFIX: {
+                switch (line) {
+                    case "inf":
+                        return Double.POSITIVE_INFINITY;
+
+                    case "-inf":
+                        return Double.NEGATIVE_INFINITY;
+
+                    case "nan":
+                        return Double.NaN;
+
+                    default: {
+                        try {
+                            return Double.parseDouble(line);
+                        } catch (final NumberFormatException e) {
+                            throw new IOException("Could not parse double: " + line, e);
+                        }
+                    }
+                }
+            }
+
+            case RedisProtocolUtil.BOOLEAN_PREFIX: {
+                if ("t".equals(line)) {
+                    return Boolean.TRUE;
+                } else if ("f".equals(line)) {
+                    return Boolean.FALSE;
+                }
+
+                throw new IOException("Could not parse boolean: " + line);
+            }
+
+            case RedisProtocolUtil.BIG_NUMBER_PREFIX: {
+                try {
+                    return new BigInteger(line);
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Could not parse big number: " + line, e);
+                }
+            }
+
+            default: {
+                // This should never happen; it means we started reading a line for a type that doesn't have one
+                throw new IllegalStateException(String.format("Unexpected prefix for line value: %x", prefix));
+            }
+        }
+    }
+
+    /**
+     * Reports a complete line value (excluding the trailing CRLF) at the given position in the given buffer to the
+     * current reply visitor.
+     */
+    private void visitLine(final ByteBuf in, final int index, final int length) throws IOException {
+        switch (prefix) {
+            case RedisProtocolUtil.SIMPLE_STRING_PREFIX: {
+                replyVisitor.visitSimpleString(in, index, length);
+                break;
+            }
+
+            case RedisProtocolUtil.ERROR_STRING_PREFIX: {
+                replyVisitor.visitError(in, index, length);
+                break;
+            }
+
+            case RedisProtocolUtil.NULL_PREFIX: {
+                replyVisitor.visitNull();
+                break;
+            }
+
+            case RedisProtocolUtil.DOUBLE_PREFIX: {
+                replyVisitor.visitDouble((Double) parseLine(in.toString(index, length, StandardCharsets.US_ASCII)));
+                break;
+            }
+
+            case RedisProtocolUtil.BOOLEAN_PREFIX: {
+                replyVisitor.visitBoolean((Boolean) parseLine(in.toString(index, length, StandardCharsets.US_ASCII)));
+                break;
+            }
+
+            case RedisProtocolUtil.BIG_NUMBER_PREFIX: {
+                replyVisitor.visitBigNumber(in, index, length);
+                break;
+            }
+
+            default: {
+                // This should never happen; it means we started reading a line for a type that doesn't have one
+                throw new IllegalStateException(String.format("Unexpected prefix for line value: %x", prefix));
+            }
+        }
+    }
+
+    /**
+     * Reports the bulk string at the reader index of the given buffer to the current reply visitor and advances the
+     * reader index past the string (but not its trailing CRLF).
+     */
+    private void visitBulkString(final ByteBuf in) throws IOException {
+        switch (prefix) {
+            case RedisProtocolUtil.BLOB_ERROR_PREFIX: {
+                replyVisitor.visitError(in, in.readerIndex(), bulkStringLength);
+                break;
+            }
+
+            case RedisProtocolUtil.VERBATIM_STRING_PREFIX: {
+                if (bulkStringLength < VERBATIM_STRING_FORMAT_LENGTH) {
+                    throw new IOException("Verbatim string too short to contain a format: " + bulkStringLength);
+                }
+
+                replyVisitor.visitVerbatimString(in, in.readerIndex() + VERBATIM_STRING_FORMAT_LENGTH,
+                        bulkStringLength - VERBATIM_STRING_FORMAT_LENGTH);
+
+                break;
+            }
+
+            default: {
+                replyVisitor.visitBulkString(in, in.readerIndex(), bulkStringLength);
+                break;
+            }
+        }
+
+        in.skipBytes(bulkStringLength);
+    }
+
+    private Object readBulkString(final ByteBuf in) throws IOException {
+        switch (prefix) {
+            case RedisProtocolUtil.BLOB_ERROR_PREFIX: {
+                return new RedisException(in.readCharSequence(bulkStringLength, StandardCharsets.UTF_8).toString());
+            }
+
+            case RedisProtocolUtil.VERBATIM_STRING_PREFIX: {
+                // Verbatim strings start with a three-character format (e.g. "txt") and a colon
+                if (bulkStringLength < VERBATIM_STRING_FORMAT_LENGTH) {
+                    throw new IOException("Verbatim string too short to contain a format: " + bulkStringLength);
+                }
+
+                in.skipBytes(VERBATIM_STRING_FORMAT_LENGTH);
+
+                return in.readCharSequence(bulkStringLength - VERBATIM_STRING_FORMAT_LENGTH, StandardCharsets.UTF_8).toString();
+            }
+
+            default: {
+                if (zeroCopyBulkStrings) {
+                    return in.readRetainedSlice(bulkStringLength).asReadOnly();
+                } else {
+                    final byte[] bulkStringBytes = new byte[bulkStringLength];
+                    in.readBytes(bulkStringBytes);
+
+                    return bulkStringBytes;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a complete value, either by adding it to the innermost partial aggregate or, if this value is not part of
+     * an aggregate, by passing it along to the next handler in the pipeline. When adding a value to a partial aggregate
+     * completes that aggregate, the aggregate itself is handled as a complete value.
+     */
+    private void handleValue(final Object value, final List<Object> out) {
+        final PartialAggregate partialAggregate = partialAggregates.peek();
+
+        if (partialAggregate == null) {
+            out.add(value != null ? value : NULL_RESPONSE);
+            currentCommand = null;
+            replyVisitor = null;
+        } else if (partialAggregate.addElement(value)) {
+            partialAggregates.pop();
+            handleCompleteAggregate(partialAggregate, out);
+            return;
+        }
+
+        state = State.READ_PREFIX;
+    }
+
+    /**
+     * Handles the completion of a value that has already been reported to the current reply visitor. This is the
+     * visitor-driven counterpart to {@link #handleValue(Object, List)}; if the value is not part of an aggregate, the
+     * visitor's result is passed along to the next handler in the pipeline.
+     */
+    private void handleVisitedValue(final List<Object> out) {
+        final PartialAggregate partialAggregate = partialAggregates.peek();
+
+        if (partialAggregate == null) {
+            final Object result = replyVisitor.getResult();
+
+            out.add(result != null ? result : NULL_RESPONSE);
+            currentCommand = null;
+            replyVisitor = null;
+        } else if (partialAggregate.addElement(null)) {
+            partialAggregates.pop();
+            handleCompleteAggregate(partialAggregate, out);
+            return;
+        }
+
+        state = State.READ_PREFIX;
+    }
+
+    private void handleNull(final List<Object> out) {
+        if (isVisiting()) {
+            replyVisitor.visitNull();
+            handleVisitedValue(out);
+        } else {
+            handleValue(null, out);
+        }
+    }
+
+    private void handleCompleteAggregate(final PartialAggregate partialAggregate, final List<Object> out) {
+        if (partialAggregate.prefix == RedisProtocolUtil.ATTRIBUTE_PREFIX) {
+            // Attributes describe the value that follows them, but aren't values in their own right
+            RedisValues.release(partialAggregate.elements);
+            attributeDepth -= 1;
+            state = State.READ_PREFIX;
+        } else if (partialAggregate.visited) {
+            switch (partialAggregate.prefix) {
+                case RedisProtocolUtil.MAP_PREFIX: {
+                    replyVisitor.visitMapEnd();
+                    break;
+                }
+
+                case RedisProtocolUtil.SET_PREFIX: {
+                    replyVisitor.visitSetEnd();
+                    break;
+                }
+
+                default: {
+                    replyVisitor.visitArrayEnd();
+                    break;
+                }
+            }
+
+            handleVisitedValue(out);
+        } else {
+            handleValue(partialAggregate.getCompleteValue(), out);
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(final ChannelHandlerContext context) {
+        // Partially-populated aggregates may be holding on to slices of buffers we'll never see again
+        while (!partialAggregates.isEmpty()) {
+            RedisValues.release(partialAggregates.pop().elements);
+        }
+    }
+
+    private boolean isVisiting() {
+        return replyVisitor != null && attributeDepth == 0;
+    }
+
+    private static void expectByte(final byte actual, final byte expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException(String.format("Expected %x, but found %x", expected, actual));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+
+/**
+ * <p>A Redis transport identifies a Netty transport (an event loop group implementation and the channel classes that
+ * go with it) that a {@link RedisChannelFactory} can use to connect to Redis servers. Native transports avoid some of
+ * the overhead of Java's NIO selectors and, unlike NIO, support Unix domain sockets, which let clients talk to Redis
+ * servers on the same host without going through the TCP stack at all.</p>
+ *
+ * <p>Native transports are optional. The epoll transport is available when {@code netty-transport-native-epoll} (with
+ * a classifier matching the current platform) is on the classpath, and the io_uring transport is available when
+ * Netty's incubating {@code netty-incubator-transport-native-io_uring} is on the classpath and the kernel supports it.
+ * Transports are discovered by reflection, and so neither dependency is needed at compile time.</p>
+ *
+ * <p>Channel factories choose a transport to match the type of event loop group they're given. Callers that want the
+ * fastest available transport should create their event loop group with
+ * {@link #getPreferredTransport()}{@code .newEventLoopGroup(threads)}.</p>
+ */
+public enum RedisTransport {
+
+    IO_URING("io.netty.incubator.channel.uring.IOUring",
+            "io.netty.incubator.channel.uring.IOUringEventLoopGroup",
+            "io.netty.incubator.channel.uring.IOUringSocketChannel",
+            null),
+
+    EPOLL("io.netty.channel.epoll.Epoll",
+            "io.netty.channel.epoll.EpollEventLoopGroup",
+            "io.netty.channel.epoll.EpollSocketChannel",
+            "io.netty.channel.epoll.EpollDomainSocketChannel"),
+
+    NIO(null,
+            NioEventLoopGroup.class.getName(),
+            NioSocketChannel.class.getName(),
+            null);
+
+    private final boolean available;
+
+    private final Class<? extends EventLoopGroup> eventLoopGroupClass;
+    private final Class<? extends Channel> socketChannelClass;
+    private final Class<? extends Channel> domainSocketChannelClass;
+
+    private static final Class<?> DOMAIN_SOCKET_ADDRESS_CLASS = loadClass("io.netty.channel.unix.DomainSocketAddress");
+
+    private static final Logger log = LoggerFactory.getLogger(RedisTransport.class);
+
+    @SuppressWarnings("unchecked")
+    RedisTransport(final String availabilityClassName, final String eventLoopGroupClassName,
+                   final String socketChannelClassName, final String domainSocketChannelClassName) {
+
+        this.eventLoopGroupClass = (Class<? extends EventLoopGroup>) loadClass(eventLoopGroupClassName);
+        this.socketChannelClass = (Class<? extends Channel>) loadClass(socketChannelClassName);
+        this.domainSocketChannelClass = domainSocketChannelClassName != null ?
+                (Class<? extends Channel>) loadClass(domainSocketChannelClassName) : null;
+
+        this.available = eventLoopGroupClass != null && socketChannelClass != null &&
+                (availabilityClassName == null || isNativeTransportAvailable(availabilityClassName));
+    }
+
+    private static Class<?> loadClass(final String className) {
+        try {
+            return Class.forName(className, false, RedisTransport.class.getClassLoader());
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static boolean isNativeTransportAvailable(final String availabilityClassName) {
+        final Class<?> availabilityClass = loadClass(availabilityClassName);
+
+        if (availabilityClass == null) {
+            return false;
+        }
+
+        try {
+            // Both Epoll and IOUring have a static isAvailable() method that checks whether the native library loaded
+            final Method isAvailableMethod = availabilityClass.getMethod("isAvailable");
+            return (Boolean) isAvailableMethod.invoke(null);
+        } catch (final ReflectiveOperationException | LinkageError e) {
+            log.debug("Could not check availability of {}", availabilityClassName, e);
+            return false;
+        }
+    }
+
+    /**
+     * Indicates whether this transport can be used in the current environment.
+     *
+     * @return {@code true} if this transport can be used in the current environment or {@code false} otherwise
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Indicates whether this transport can connect to Unix domain sockets.
+     *
+     * @return {@code true} if this transport is available and can connect to Unix domain sockets or {@code false}
+     * otherwise
+     */
+    public boolean supportsDomainSockets() {
+        return available && domainSocketChannelClass != null;
+    }
+
+    /**
+     * Returns the fastest transport available in the current environment, preferring io_uring, then epoll, then NIO.
+     *
+     * @return the fastest transport available in the current environment
+     */
+    public static RedisTransport getPreferredTransport() {
+        for (final RedisTransport transport : values()) {
+            if (transport.isAvailable()) {
+                return transport;
+            }
+        }
+
+        // NIO is always available
+        return NIO;
+    }
+
+    /**
+     * Creates a new event loop group for this transport.
+     *
+     * @param threads the number of threads in the new event loop group, or 0 to use Netty's default
+     *
+     * @return a new event loop group for this transport
+     *
+     * @throws IllegalStateException if this transport is not available
+     */
+    public EventLoopGroup newEventLoopGroup(final int threads) {
+        if (!available) {
+            throw new IllegalStateException(name() + " transport is not available.");
+        }
+
+        try {
+            return eventLoopGroupClass.getConstructor(int.class).newInstance(threads);
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create event loop group for " + name() + " transport.", e);
+        }
+    }
+
+    /**
+     * Returns the transport whose channels can be registered with the given event loop group or event loop.
+     *
+     * @param eventLoopGroup an event loop group or an event loop
+     *
+     * @return the transport that matches the given event loop group
+     */
+    static RedisTransport forEventLoopGroup(final EventLoopGroup eventLoopGroup) {
+        // Individual event loops generally belong to a group of the type we're looking for
+        final EventLoopGroup group = eventLoopGroup instanceof EventLoop && ((EventLoop) eventLoopGroup).parent() != null ?
+                ((EventLoop) eventLoopGroup).parent() : eventLoopGroup;
+
+        for (final RedisTransport transport : values()) {
+            if (transport.eventLoopGroupClass != null && transport.eventLoopGroupClass.isInstance(group)) {
+                return transport;
+            }
+        }
+
+        return NIO;
+    }
+
+    /**
+     * Returns the channel class this transport uses to connect to the given address.
+     *
+     * @param address the address to which to connect
+     *
+     * @return the channel class this transport uses to connect to the given address
+     *
+     * @throws IllegalArgumentException if this transport can't connect to the given type of address
+     */
+    Class<? extends Channel> getChannelClass(final SocketAddress address) {
+        if (isDomainSocketAddress(address)) {
+            if (domainSocketChannelClass == null) {
+                throw new IllegalArgumentException(name() + " transport does not support Unix domain sockets.");
+            }
+
+            return domainSocketChannelClass;
+        }
+
+        return socketChannelClass;
+    }
+
+    static boolean isDomainSocketAddress(final SocketAddress address) {
+        return DOMAIN_SOCKET_ADDRESS_CLASS != null && DOMAIN_SOCKET_ADDRESS_CLASS.isInstance(address);
+    }
+}
@@ -69,7 +69,7 @@ class RedisValueDecoder extends ByteToMessageDecoder {
      *
      * @throws IOException if a Redis value could not be extracted from the given byte buffer
      */
-    private Object parseNextValue(final ByteBuf byteBuf) throws IOException {
+    Object parseNextValue(final ByteBuf byteBuf) throws IOException {
         final byte prefixByte = byteBuf.readByte();
 
         switch (prefixByte) {
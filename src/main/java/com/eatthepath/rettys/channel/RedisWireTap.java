@@ -0,0 +1,212 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A wire tap captures previews of the raw bytes that Redis channels send and receive. Wire taps are optional and
+ * may be installed in or removed from a channel at any time; channels without a wire tap pay no cost at all for
+ * frame capture.</p>
+ *
+ * <p>Wire taps are designed to be safe to leave installed in production. Each wire tap samples at most a fixed number
+ * of frames per second across all of the channels in which it's installed, and previews include at most a fixed number
+ * of bytes from each frame. Previews are formatted into a reusable buffer, so formatting a preview doesn't allocate
+ * memory (though sinks may, of course, allocate memory when handling previews).</p>
+ *
+ * @see RedisChannelFactory#setWireTap(RedisWireTap)
+ */
+public class RedisWireTap {
+
+    private final int maxFramesPerSecond;
+    private final int maxPreviewBytes;
+    private final Sink sink;
+
+    private final AtomicLong currentSecond = new AtomicLong();
+    private final AtomicInteger framesSampledThisSecond = new AtomicInteger();
+
+    private final LongAdder sampledFrames = new LongAdder();
+    private final LongAdder skippedFrames = new LongAdder();
+
+    private static final Logger log = LoggerFactory.getLogger(RedisWireTap.class);
+
+    /**
+     * An enumeration of directions in which frames may travel through a channel.
+     */
+    public enum Direction {
+
+        /**
+         * Indicates that a frame was read from the server.
+         */
+        READ,
+
+        /**
+         * Indicates that a frame was written to the server.
+         */
+        WRITE
+    }
+
+    /**
+     * A sink receives frame previews from a wire tap. Sinks are called from channels' event loops and should return
+     * quickly.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Handles a preview of a frame that passed through a channel.
+         *
+         * @param channel the channel through which the frame passed
+         * @param direction the direction in which the frame traveled
+         * @param frameLength the total length of the frame in bytes
+         * @param preview a printable preview of the frame, which may be truncated; the preview is only valid for the
+         *                duration of the call, and sinks must copy it (for example, with {@link Object#toString()}) if
+         *                they need to keep it
+         */
+        void handleFrame(Channel channel, Direction direction, long frameLength, CharSequence preview);
+    }
+
+    /**
+     * Constructs a new wire tap that logs frame previews at the {@code DEBUG} level.
+     *
+     * @param maxFramesPerSecond the maximum number of frames to sample per second
+     * @param maxPreviewBytes the maximum number of bytes to include in the preview of any frame
+     */
+    public RedisWireTap(final int maxFramesPerSecond, final int maxPreviewBytes) {
+        this(maxFramesPerSecond, maxPreviewBytes, (channel, direction, frameLength, preview) -> {
+            if (log.isDebugEnabled()) {
+                log.debug("{} {} ({} bytes): {}", channel, direction, frameLength, preview);
+            }
+        });
+    }
+
+    /**
+     * Constructs a new wire tap that passes frame previews to the given sink.
+     *
+     * @param maxFramesPerSecond the maximum number of frames to sample per second
+     * @param maxPreviewBytes the maximum number of bytes to include in the preview of any frame
+     * @param sink the sink to which to pass frame previews
+     */
+    public RedisWireTap(final int maxFramesPerSecond, final int maxPreviewBytes, final Sink sink) {
+        if (maxFramesPerSecond < 1) {
+            throw new IllegalArgumentException("Maximum frames per second must be positive.");
+        }
+
+        if (maxPreviewBytes < 0) {
+            throw new IllegalArgumentException("Maximum preview length must not be negative.");
+        }
+
+        this.maxFramesPerSecond = maxFramesPerSecond;
+        this.maxPreviewBytes = maxPreviewBytes;
+        this.sink = Objects.requireNonNull(sink, "Sink must not be null");
+    }
+
+    /**
+     * Installs this wire tap in the given channel, replacing any wire tap already installed. The channel must have
+     * been created by a {@link RedisChannelFactory}.
+     *
+     * @param channel the channel in which to install this wire tap
+     */
+    public void install(final Channel channel) {
+        final ChannelPipeline pipeline = channel.pipeline();
+
+        removeFrom(channel);
+
+        // Frames should be captured just before they're decoded (or just after they're encoded)
+        final ChannelHandlerContext decoderContext = pipeline.context(RedisResponseDecoder.class);
+
+        if (decoderContext == null) {
+            throw new IllegalArgumentException("Channel does not have a Redis response decoder.");
+        }
+
+        pipeline.addBefore(decoderContext.name(), null, new RedisWireTapHandler(this));
+    }
+
+    /**
+     * Removes any wire tap installed in the given channel.
+     *
+     * @param channel the channel from which to remove a wire tap
+     *
+     * @return {@code true} if a wire tap was removed from the channel or {@code false} if no wire tap was installed
+     */
+    public static boolean removeFrom(final Channel channel) {
+        final ChannelHandlerContext wireTapContext = channel.pipeline().context(RedisWireTapHandler.class);
+
+        if (wireTapContext == null) {
+            return false;
+        }
+
+        try {
+            channel.pipeline().remove(wireTapContext.name());
+            return true;
+        } catch (final NoSuchElementException e) {
+            // Somebody else got there first
+            return false;
+        }
+    }
+
+    /**
+     * Returns the maximum number of bytes to include in the preview of any frame.
+     *
+     * @return the maximum number of bytes to include in the preview of any frame
+     */
+    int getMaxPreviewBytes() {
+        return maxPreviewBytes;
+    }
+
+    Sink getSink() {
+        return sink;
+    }
+
+    /**
+     * Decides whether a frame passing through a channel at the given time should be sampled.
+     *
+     * @param nanoTime the time, as reported by {@link System#nanoTime()}, at which the frame passed through a channel
+     *
+     * @return {@code true} if the frame should be sampled or {@code false} if it should be skipped
+     */
+    boolean trySample(final long nanoTime) {
+        final long second = TimeUnit.NANOSECONDS.toSeconds(nanoTime);
+        final long previousSecond = currentSecond.get();
+
+        if (second != previousSecond && currentSecond.compareAndSet(previousSecond, second)) {
+            framesSampledThisSecond.set(0);
+        }
+
+        // This may let a handful of extra frames through when the second rolls over, but that's harmless
+        if (framesSampledThisSecond.incrementAndGet() <= maxFramesPerSecond) {
+            sampledFrames.increment();
+            return true;
+        }
+
+        skippedFrames.increment();
+        return false;
+    }
+
+    /**
+     * Returns the number of frames this wire tap has sampled.
+     *
+     * @return the number of frames this wire tap has sampled
+     */
+    public long getSampledFrames() {
+        return sampledFrames.sum();
+    }
+
+    /**
+     * Returns the number of frames this wire tap has skipped because they exceeded its sampling rate.
+     *
+     * @return the number of frames this wire tap has skipped
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.sum();
+    }
+}
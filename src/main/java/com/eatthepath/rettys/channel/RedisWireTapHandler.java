@@ -0,0 +1,119 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+
+/**
+ * A wire tap handler passes previews of frames read from and written to a channel to a {@link RedisWireTap}. Wire tap
+ * handlers belong to a single channel and reuse a single buffer for formatting previews.
+ */
+class RedisWireTapHandler extends ChannelDuplexHandler {
+
+    private final RedisWireTap wireTap;
+    private final StringBuilder previewBuilder;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    RedisWireTapHandler(final RedisWireTap wireTap) {
+        this.wireTap = wireTap;
+
+        // Each byte takes at most four characters ("\xff"), plus a little room for the truncation note
+        this.previewBuilder = new StringBuilder((wireTap.getMaxPreviewBytes() * 4) + 32);
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object message) {
+        tap(context, RedisWireTap.Direction.READ, message);
+        context.fireChannelRead(message);
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext context, final Object message, final ChannelPromise writePromise) {
+        tap(context, RedisWireTap.Direction.WRITE, message);
+        context.write(message, writePromise);
+    }
+
+    private void tap(final ChannelHandlerContext context, final RedisWireTap.Direction direction, final Object message) {
+        final long frameLength;
+
+        if (message instanceof ByteBuf) {
+            frameLength = ((ByteBuf) message).readableBytes();
+        } else if (message instanceof FileRegion) {
+            frameLength = ((FileRegion) message).count() - ((FileRegion) message).transferred();
+        } else {
+            return;
+        }
+
+        if (!wireTap.trySample(System.nanoTime())) {
+            return;
+        }
+
+        previewBuilder.setLength(0);
+
+        if (message instanceof ByteBuf) {
+            appendPreview((ByteBuf) message, wireTap.getMaxPreviewBytes(), previewBuilder);
+        } else {
+            previewBuilder.append("<file region>");
+        }
+
+        wireTap.getSink().handleFrame(context.channel(), direction, frameLength, previewBuilder);
+    }
+
+    /**
+     * Appends a printable preview of the readable bytes of the given buffer to the given string builder without
+     * changing the buffer's reader index. Printable ASCII characters are appended as-is; carriage returns, newlines,
+     * and tabs are escaped as {@code \r}, {@code \n}, and {@code \t}; and all other bytes (including backslashes) are
+     * escaped as {@code \xNN}.
+     *
+     * @param byteBuf the buffer to preview
+     * @param maxPreviewBytes the maximum number of bytes from the buffer to include in the preview
+     * @param stringBuilder the string builder to which to append the preview
+     */
+    static void appendPreview(final ByteBuf byteBuf, final int maxPreviewBytes, final StringBuilder stringBuilder) {
+        final int readableBytes = byteBuf.readableBytes();
+        final int previewBytes = Math.min(readableBytes, maxPreviewBytes);
+        final int start = byteBuf.readerIndex();
+
+        for (int i = start; i < start + previewBytes; i++) {
+            final byte b = byteBuf.getByte(i);
+
+            switch (b) {
+                case '\r': {
+                    stringBuilder.append("\\r");
+                    break;
+                }
+
+                case '\n': {
+                    stringBuilder.append("\\n");
+                    break;
+                }
+
+                case '\t': {
+                    stringBuilder.append("\\t");
+                    break;
+                }
+
+                default: {
+                    if (b >= 0x20 && b < 0x7f && b != '\\') {
+                        stringBuilder.append((char) b);
+                    } else {
+                        stringBuilder.append("\\x")
+                                .append(HEX_DIGITS[(b >> 4) & 0xf])
+                                .append(HEX_DIGITS[b & 0xf]);
+                    }
+
+                    break;
+                }
+            }
+        }
+
+        if (readableBytes > previewBytes) {
+            stringBuilder.append("... (")
+                    .append(readableBytes - previewBytes)
+                    .append(" more bytes)");
+        }
+    }
+}
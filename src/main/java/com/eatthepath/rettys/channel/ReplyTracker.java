@@ -0,0 +1,84 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.StreamingRedisCommand;
+import com.eatthepath.rettys.TypedRedisCommand;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * <p>A reply tracker pairs commands written to a channel with the replies the server sends in response so that a
+ * {@link RedisResponseDecoder} can handle replies to certain commands (a {@link StreamingRedisCommand} or a
+ * {@link TypedRedisCommand}) differently from others. Redis replies to commands in the order in which they were sent, so the <em>n</em>th reply
+ * belongs to the <em>n</em>th command; trackers count both and only remember the commands that need special handling.</p>
+ *
+ * <p>Reply trackers are shared by the encoder and decoder of a single channel and are not thread-safe; they must only
+ * be used from the channel's event loop.</p>
+ */
+class ReplyTracker {
+
+    private long commandsWritten = 0;
+    private long repliesStarted = 0;
+
+    private final Queue<TrackedCommand> trackedCommands = new ArrayDeque<>();
+
+    private static class TrackedCommand {
+        private final long sequenceNumber;
+        private final RedisCommand command;
+
+        private TrackedCommand(final long sequenceNumber, final RedisCommand command) {
+            this.sequenceNumber = sequenceNumber;
+            this.command = command;
+        }
+    }
+
+    /**
+     * Notes that the given command has been written to the channel.
+     *
+     * @param command the command that was written to the channel
+     */
+    void handleCommandWritten(final RedisCommand command) {
+        commandsWritten += 1;
+
+        if (command instanceof StreamingRedisCommand || command instanceof TypedRedisCommand) {
+            trackedCommands.add(new TrackedCommand(commandsWritten, command));
+        }
+    }
+
+    /**
+     * Returns the number of commands that have been written to the channel, but for which the server has not yet
+     * started sending a reply.
+     *
+     * @return the number of commands awaiting a reply
+     */
+    long getCommandsInFlight() {
+        // Replies may run "ahead" of commands if the server sends something we weren't expecting
+        return Math.max(0, commandsWritten - repliesStarted);
+    }
+
+    /**
+     * Notes that the server has started sending a new top-level reply and returns the command to which it belongs if
+     * that command needs special handling.
+     *
+     * @return the command to which the new reply belongs if that command needs special handling or {@code null}
+     * otherwise
+     */
+    RedisCommand handleReplyStarted() {
+        repliesStarted += 1;
+
+        // If the server has somehow sent more replies than we expected, we may already have missed the replies to some
+        // tracked commands; there's nothing we can do for those now.
+        while (!trackedCommands.isEmpty() && trackedCommands.peek().sequenceNumber < repliesStarted) {
+            trackedCommands.remove();
+        }
+
+        final TrackedCommand nextTrackedCommand = trackedCommands.peek();
+
+        if (nextTrackedCommand != null && nextTrackedCommand.sequenceNumber == repliesStarted) {
+            return trackedCommands.remove().command;
+        }
+
+        return null;
+    }
+}
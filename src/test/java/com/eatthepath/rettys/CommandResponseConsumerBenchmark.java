@@ -0,0 +1,71 @@
+package com.eatthepath.rettys;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of handing a pipeline's worth of replies from an IO thread to waiting futures under each
+ * {@link CompletionDispatchStrategy}. Each operation consumes one read cycle's worth of replies and waits for the last
+ * future to complete, so the score reflects both the IO thread's work and the hand-off to the handler thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommandResponseConsumerBenchmark {
+
+    @Param({"PER_REPLY", "BATCHED", "INLINE"})
+    public CompletionDispatchStrategy dispatchStrategy;
+
+    @Param({"1", "500"})
+    public int pipelineDepth;
+
+    private ExecutorService handlerExecutor;
+    private CommandResponseConsumer commandResponseConsumer;
+
+    private List<CompletableFuture<Object>> futures;
+
+    private static final Object REPLY = "OK";
+
+    @Setup
+    public void setUp() {
+        handlerExecutor = Executors.newSingleThreadExecutor();
+        commandResponseConsumer = new CommandResponseConsumer(handlerExecutor, dispatchStrategy);
+
+        futures = new ArrayList<>(pipelineDepth);
+    }
+
+    @TearDown
+    public void tearDown() {
+        handlerExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Object consumeReadCycle() {
+        futures.clear();
+
+        for (int i = 0; i < pipelineDepth; i++) {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+
+            futures.add(future);
+            commandResponseConsumer.addPendingFuture(future);
+        }
+
+        for (int i = 0; i < pipelineDepth; i++) {
+            commandResponseConsumer.consumeMessage(REPLY);
+        }
+
+        commandResponseConsumer.handleReadComplete();
+
+        // Futures complete in order, so once the last one is done, they're all done
+        return futures.get(pipelineDepth - 1).join();
+    }
+}
@@ -1,12 +1,16 @@
 package com.eatthepath.rettys;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
-import java.util.concurrent.Executor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -52,6 +56,91 @@ class CommandResponseConsumerTest {
         assertEquals(redisException, completionException.getCause());
     }
 
+    @Test
+    void testConsumeMessageReleasesUndeliverableBuffers() {
+        final CompletableFuture<Object> cancelledFuture = new CompletableFuture<>();
+        cancelledFuture.cancel(false);
+
+        final ByteBuf cancelledReply = Unpooled.buffer();
+        final ByteBuf orphanedReply = Unpooled.buffer();
+
+        commandResponseConsumer.addPendingFuture(cancelledFuture);
+        commandResponseConsumer.consumeMessage(new Object[] { cancelledReply });
+        commandResponseConsumer.consumeMessage(orphanedReply);
+
+        assertEquals(0, cancelledReply.refCnt());
+        assertEquals(0, orphanedReply.refCnt());
+    }
+
+    @Test
+    void testConsumeMessageBatched() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final CommandResponseConsumer batchingConsumer =
+                new CommandResponseConsumer(tasks::add, CompletionDispatchStrategy.BATCHED);
+
+        final CompletableFuture<Object> firstFuture = new CompletableFuture<>();
+        final CompletableFuture<Object> secondFuture = new CompletableFuture<>();
+        final RedisException redisException = new RedisException("TEST Test exception");
+
+        batchingConsumer.addPendingFuture(firstFuture);
+        batchingConsumer.addPendingFuture(secondFuture);
+
+        batchingConsumer.consumeMessage("first");
+        batchingConsumer.consumeMessage(redisException);
+
+        assertTrue(tasks.isEmpty());
+
+        batchingConsumer.handleReadComplete();
+
+        // Both futures should be completed by a single task
+        assertEquals(1, tasks.size());
+        assertFalse(firstFuture.isDone());
+
+        tasks.get(0).run();
+
+        assertEquals("first", firstFuture.join());
+
+        final CompletionException completionException = assertThrows(CompletionException.class, secondFuture::join);
+        assertEquals(redisException, completionException.getCause());
+
+        // A read cycle with no replies shouldn't produce a task
+        batchingConsumer.handleReadComplete();
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    void testConsumeMessageBatchedChannelClosure() {
+        final CommandResponseConsumer batchingConsumer =
+                new CommandResponseConsumer(Runnable::run, CompletionDispatchStrategy.BATCHED);
+
+        final CompletableFuture<Object> answeredFuture = new CompletableFuture<>();
+        final CompletableFuture<Object> unansweredFuture = new CompletableFuture<>();
+
+        batchingConsumer.addPendingFuture(answeredFuture);
+        batchingConsumer.addPendingFuture(unansweredFuture);
+
+        batchingConsumer.consumeMessage("answer");
+        batchingConsumer.handleChannelClosure();
+
+        assertEquals("answer", answeredFuture.join());
+
+        final CompletionException completionException = assertThrows(CompletionException.class, unansweredFuture::join);
+        assertTrue(completionException.getCause() instanceof IOException);
+    }
+
+    @Test
+    void testConsumeMessageInline() {
+        final CommandResponseConsumer inlineConsumer = new CommandResponseConsumer(task -> fail("Unexpected task"),
+                CompletionDispatchStrategy.INLINE);
+
+        final CompletableFuture<Object> pendingFuture = new CompletableFuture<>();
+
+        inlineConsumer.addPendingFuture(pendingFuture);
+        inlineConsumer.consumeMessage("inline");
+
+        assertEquals("inline", pendingFuture.getNow(null));
+    }
+
     @Test
     void testHandleChannelClosure() {
         final CompletableFuture<Object> pendingFuture = new CompletableFuture<>();
@@ -62,4 +151,162 @@ class CommandResponseConsumerTest {
         final CompletionException completionException = assertThrows(CompletionException.class, pendingFuture::join);
         assertTrue(completionException.getCause() instanceof IOException);
     }
+
+    @Test
+    void testAddPendingFutureAfterChannelClosure() {
+        final CompletableFuture<Object> pendingFuture = new CompletableFuture<>();
+
+        commandResponseConsumer.handleChannelClosure();
+        commandResponseConsumer.addPendingFuture(pendingFuture);
+
+        final CompletionException completionException = assertThrows(CompletionException.class, pendingFuture::join);
+        assertTrue(completionException.getCause() instanceof IOException);
+    }
+
+    @Test
+    void testAddPendingFutureDuringChannelClosure() {
+        final AtomicReference<CommandResponseConsumer> consumerReference = new AtomicReference<>();
+
+        final RedisMetricsRecorder metricsRecorder = new RedisMetricsRecorder() {
+            @Override
+            public void handlePendingCommandAdded() {
+                super.handlePendingCommandAdded();
+
+                // Close the channel after the future has been queued, but before the consumer checks for closure again
+                consumerReference.get().handleChannelClosure();
+            }
+        };
+
+        final CommandResponseConsumer consumer =
+                new CommandResponseConsumer(Runnable::run, CompletionDispatchStrategy.PER_REPLY, metricsRecorder);
+
+        consumerReference.set(consumer);
+
+        final CompletableFuture<Object> pendingFuture = new CompletableFuture<>();
+        consumer.addPendingFuture(pendingFuture);
+
+        final CompletionException completionException = assertThrows(CompletionException.class, pendingFuture::join);
+        assertTrue(completionException.getCause() instanceof IOException);
+
+        // The future should only have been counted as removed once
+        assertEquals(0, metricsRecorder.getPendingCommands());
+    }
+
+    @Test
+    void testConcurrentAddPendingFutureAndChannelClosure() throws Exception {
+        final int rounds = 1000;
+        final int futuresPerRound = 100;
+
+        final ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+
+        try {
+            // The window in which a future can slip past a channel closure is tiny, so try to hit it many times
+            for (int round = 0; round < rounds; round++) {
+                final RedisMetricsRecorder metricsRecorder = new RedisMetricsRecorder();
+                final CommandResponseConsumer concurrentConsumer =
+                        new CommandResponseConsumer(Runnable::run, CompletionDispatchStrategy.PER_REPLY, metricsRecorder);
+
+                final List<CompletableFuture<Object>> futures = new ArrayList<>(futuresPerRound);
+                final CountDownLatch startLatch = new CountDownLatch(1);
+
+                final Future<?> producerFuture = producerExecutor.submit(() -> {
+                    startLatch.countDown();
+
+                    for (int i = 0; i < futuresPerRound; i++) {
+                        final CompletableFuture<Object> future = new CompletableFuture<>();
+                        futures.add(future);
+
+                        concurrentConsumer.addPendingFuture(future);
+                    }
+
+                    return null;
+                });
+
+                startLatch.await();
+                concurrentConsumer.handleChannelClosure();
+                producerFuture.get();
+
+                // No future should be stranded in the queue, either as a never-completed future or as a pending command
+                assertTrue(futures.stream().allMatch(CompletableFuture::isCompletedExceptionally));
+                assertEquals(0, metricsRecorder.getPendingCommands(), "Stranded pending command in round " + round);
+            }
+        } finally {
+            producerExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentAddPendingFuture() throws Exception {
+        final int producerCount = 4;
+        final int futuresPerProducer = 50_000;
+        final int totalFutures = producerCount * futuresPerProducer;
+
+        final CommandResponseConsumer concurrentConsumer = new CommandResponseConsumer(Runnable::run);
+        final AtomicInteger futuresAdded = new AtomicInteger();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        final List<List<CompletableFuture<Object>>> futuresByProducer = new ArrayList<>(producerCount);
+
+        final ExecutorService producerExecutor = Executors.newFixedThreadPool(producerCount);
+
+        try {
+            final List<Future<?>> producerFutures = new ArrayList<>();
+
+            for (int p = 0; p < producerCount; p++) {
+                final List<CompletableFuture<Object>> futures = new ArrayList<>(futuresPerProducer);
+                futuresByProducer.add(futures);
+
+                producerFutures.add(producerExecutor.submit(() -> {
+                    startLatch.await();
+
+                    for (int i = 0; i < futuresPerProducer; i++) {
+                        final CompletableFuture<Object> future = new CompletableFuture<>();
+                        futures.add(future);
+
+                        concurrentConsumer.addPendingFuture(future);
+                        futuresAdded.incrementAndGet();
+                    }
+
+                    return null;
+                }));
+            }
+
+            startLatch.countDown();
+
+            // Act as the IO thread, consuming "replies" as quickly as futures show up
+            for (long reply = 0; reply < totalFutures; reply++) {
+                while (futuresAdded.get() <= reply) {
+                    Thread.yield();
+                }
+
+                concurrentConsumer.consumeMessage(reply);
+            }
+
+            for (final Future<?> producerFuture : producerFutures) {
+                producerFuture.get();
+            }
+        } finally {
+            producerExecutor.shutdownNow();
+        }
+
+        // Every future should have received a distinct reply, and each producer's futures should have received replies
+        // in the order in which that producer added them
+        final boolean[] repliesSeen = new boolean[totalFutures];
+
+        for (final List<CompletableFuture<Object>> futures : futuresByProducer) {
+            long previousReply = -1;
+
+            for (final CompletableFuture<Object> future : futures) {
+                assertTrue(future.isDone());
+
+                final long reply = (Long) future.join();
+
+                assertTrue(reply > previousReply);
+                assertFalse(repliesSeen[(int) reply]);
+
+                repliesSeen[(int) reply] = true;
+                previousReply = reply;
+            }
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package com.eatthepath.rettys;
+
+import com.eatthepath.rettys.channel.RedisChannelFactory;
+import com.eatthepath.rettys.channel.RedisTransport;
+import com.eatthepath.rettys.channel.StubRedisServer;
+import io.netty.channel.EventLoopGroup;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * <p>A fixed-rate load generator sends commands to a {@link RedisCommandExecutor} at a fixed arrival rate and records
+ * how long each command takes to complete.</p>
+ *
+ * <p>Load generators that wait for each command to finish before sending the next, or that simply fall behind when the
+ * system under test stalls, "coordinate" with the system under test and omit exactly the measurements that would
+ * reveal the stall. To avoid this coordinated omission, fixed-rate load generators measure each command's latency from
+ * the moment it <em>should</em> have been sent according to the schedule rather than the moment it actually was sent.
+ * Both measurements are reported so they can be compared.</p>
+ *
+ * <p>This class may also be run as a program, in which case it drives a {@link RedisClient} against a
+ * {@link StubRedisServer}:</p>
+ *
+ * <pre>mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=com.eatthepath.rettys.FixedRateLoadGenerator \
+ *     -Dexec.args="[requests per second] [duration in seconds] [server delay in microseconds]"</pre>
+ */
+public class FixedRateLoadGenerator {
+
+    private final RedisCommandExecutor commandExecutor;
+    private final Supplier<RedisCommand> commandSupplier;
+    private final long intervalNanos;
+
+    /**
+     * The results of a load test.
+     */
+    public static class Result {
+        private final LatencyHistogram correctedLatency = new LatencyHistogram();
+        private final LatencyHistogram uncorrectedLatency = new LatencyHistogram();
+
+        private final LongAdder completedCommands = new LongAdder();
+        private final LongAdder failedCommands = new LongAdder();
+
+        private long sentCommands;
+        private long elapsedNanos;
+
+        /**
+         * Returns a histogram of latencies, in nanoseconds, measured from the moment each command was scheduled to be
+         * sent.
+         *
+         * @return a histogram of latencies corrected for coordinated omission
+         */
+        public LatencyHistogram getCorrectedLatency() {
+            return correctedLatency;
+        }
+
+        /**
+         * Returns a histogram of latencies, in nanoseconds, measured from the moment each command was actually sent.
+         *
+         * @return a histogram of latencies that are not corrected for coordinated omission
+         */
+        public LatencyHistogram getUncorrectedLatency() {
+            return uncorrectedLatency;
+        }
+
+        public long getSentCommands() {
+            return sentCommands;
+        }
+
+        public long getCompletedCommands() {
+            return completedCommands.sum();
+        }
+
+        public long getFailedCommands() {
+            return failedCommands.sum();
+        }
+
+        /**
+         * Returns the number of commands completed (normally or exceptionally) per second over the course of the test.
+         *
+         * @return the number of commands completed per second
+         */
+        public double getThroughput() {
+            return (getCompletedCommands() + getFailedCommands()) / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder stringBuilder = new StringBuilder()
+                    .append(String.format("Sent %d commands; %d completed, %d failed (%.0f commands/second)%n",
+                            getSentCommands(), getCompletedCommands(), getFailedCommands(), getThroughput()))
+                    .append(String.format("%-12s %14s %14s%n", "Percentile", "Corrected (us)", "Uncorrected (us)"));
+
+            for (final double percentile : new double[] { 50, 90, 99, 99.9, 99.99, 100 }) {
+                stringBuilder.append(String.format("%-12s %14.1f %14.1f%n", percentile,
+                        correctedLatency.getValueAtPercentile(percentile) / 1000.0,
+                        uncorrectedLatency.getValueAtPercentile(percentile) / 1000.0));
+            }
+
+            return stringBuilder.toString();
+        }
+    }
+
+    /**
+     * Constructs a new load generator.
+     *
+     * @param commandExecutor the executor to which to send commands
+     * @param commandSupplier a supplier of commands to send
+     * @param requestsPerSecond the number of commands to send per second
+     */
+    public FixedRateLoadGenerator(final RedisCommandExecutor commandExecutor, final Supplier<RedisCommand> commandSupplier, final int requestsPerSecond) {
+        if (requestsPerSecond < 1) {
+            throw new IllegalArgumentException("Request rate must be positive.");
+        }
+
+        this.commandExecutor = commandExecutor;
+        this.commandSupplier = commandSupplier;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+    }
+
+    /**
+     * Sends commands at this generator's fixed rate for the given duration, then waits for outstanding commands to
+     * finish.
+     *
+     * @param duration the length of time for which to send commands
+     * @param drainTimeout the maximum time to wait for outstanding commands to finish after the last command is sent
+     *
+     * @return the results of the load test
+     *
+     * @throws InterruptedException if interrupted while waiting for outstanding commands to finish
+     */
+    public Result run(final Duration duration, final Duration drainTimeout) throws InterruptedException {
+        final Result result = new Result();
+        final int commandCount = (int) (duration.toNanos() / intervalNanos);
+        final CountDownLatch outstandingCommands = new CountDownLatch(commandCount);
+
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < commandCount; i++) {
+            final long intendedStartNanos = start + (i * intervalNanos);
+
+            for (long now = System.nanoTime(); now < intendedStartNanos; now = System.nanoTime()) {
+                LockSupport.parkNanos(intendedStartNanos - now);
+            }
+
+            final long actualStartNanos = System.nanoTime();
+
+            commandExecutor.executeCommand(commandSupplier.get()).whenComplete((reply, cause) -> {
+                final long end = System.nanoTime();
+
+                result.correctedLatency.recordValue(end - intendedStartNanos);
+                result.uncorrectedLatency.recordValue(end - actualStartNanos);
+
+                if (cause == null) {
+                    result.completedCommands.increment();
+                    RedisValues.release(reply);
+                } else {
+                    result.failedCommands.increment();
+                }
+
+                outstandingCommands.countDown();
+            });
+
+            result.sentCommands += 1;
+        }
+
+        outstandingCommands.await(drainTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        result.elapsedNanos = System.nanoTime() - start;
+
+        return result;
+    }
+
+    public static void main(final String... args) throws Exception {
+        final int requestsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        final int durationSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final long serverDelayMicros = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        try (final StubRedisServer server = new StubRedisServer()) {
+            server.setReply("GET", "$5\r\nvalue\r\n", serverDelayMicros, TimeUnit.MICROSECONDS);
+
+            final InetSocketAddress address = server.start();
+            final EventLoopGroup eventLoopGroup = RedisTransport.getPreferredTransport().newEventLoopGroup(2);
+
+            try {
+                final RedisChannelFactory channelFactory =
+                        new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, false);
+
+                final RedisClient client = RedisClient.connect(channelFactory, address, Runnable::run,
+                        CompletionDispatchStrategy.INLINE, RedisClient.StripeSelection.KEY_HASH).join();
+
+                try {
+                    final RedisCommand command = new RedisCommand("GET", "key");
+                    final FixedRateLoadGenerator loadGenerator =
+                            new FixedRateLoadGenerator(client, () -> command, requestsPerSecond);
+
+                    // Warm up before taking measurements
+                    loadGenerator.run(Duration.ofSeconds(Math.max(1, durationSeconds / 5)), Duration.ofSeconds(10));
+
+                    System.out.println(loadGenerator.run(Duration.ofSeconds(durationSeconds), Duration.ofSeconds(10)));
+                } finally {
+                    client.close();
+                }
+            } finally {
+                eventLoopGroup.shutdownGracefully().await();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.eatthepath.rettys;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedRateLoadGeneratorTest {
+
+    @Test
+    void run() throws InterruptedException {
+        final FixedRateLoadGenerator loadGenerator = new FixedRateLoadGenerator(
+                command -> CompletableFuture.completedFuture("OK"), () -> new RedisCommand("PING"), 1000);
+
+        final FixedRateLoadGenerator.Result result = loadGenerator.run(Duration.ofMillis(200), Duration.ofSeconds(1));
+
+        assertEquals(200, result.getSentCommands());
+        assertEquals(200, result.getCompletedCommands());
+        assertEquals(0, result.getFailedCommands());
+    }
+
+    @Test
+    void runCorrectsForCoordinatedOmission() throws InterruptedException {
+        // An executor that stalls the caller for a long time on the first command, then answers instantly; a naive
+        // generator would only see one slow command.
+        final RedisCommandExecutor stallingExecutor = new RedisCommandExecutor() {
+            private boolean stalled = false;
+
+            @Override
+            public CompletableFuture<Object> executeCommand(final RedisCommand command) {
+                if (!stalled) {
+                    stalled = true;
+
+                    try {
+                        Thread.sleep(100);
+                    } catch (final InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                return CompletableFuture.completedFuture("OK");
+            }
+        };
+
+        final FixedRateLoadGenerator.Result result =
+                new FixedRateLoadGenerator(stallingExecutor, () -> new RedisCommand("PING"), 1000)
+                        .run(Duration.ofMillis(200), Duration.ofSeconds(1));
+
+        assertEquals(200, result.getCompletedCommands());
+
+        // Commands queued up behind the stall should show up in the slowest quarter of corrected latencies, but not in
+        // the slowest quarter of uncorrected latencies
+        assertTrue(result.getCorrectedLatency().getValueAtPercentile(75) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(result.getUncorrectedLatency().getValueAtPercentile(75) < TimeUnit.MILLISECONDS.toNanos(20));
+    }
+}
@@ -0,0 +1,100 @@
+package com.eatthepath.rettys;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void getBucketIndex() {
+        int previousBucketIndex = -1;
+
+        // Bucket indices should never decrease as values increase, and every value should be within the bounds of its
+        // bucket
+        for (long value = 0; value < 1_000_000; value += (value < 1024 ? 1 : 997)) {
+            final int bucketIndex = LatencyHistogram.getBucketIndex(value);
+
+            assertTrue(bucketIndex >= previousBucketIndex);
+            assertTrue(value <= LatencyHistogram.getHighestValueInBucket(bucketIndex));
+
+            if (bucketIndex > 0) {
+                assertTrue(value > LatencyHistogram.getHighestValueInBucket(bucketIndex - 1));
+            }
+
+            previousBucketIndex = bucketIndex;
+        }
+
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucketIndex(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getHighestValueInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    void getValueAtPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.recordValue(value);
+        }
+
+        assertEquals(10_000, histogram.getTotalCount());
+        assertEquals(10_000, histogram.getMaxValue());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(10_000, histogram.getValueAtPercentile(100));
+
+        // Values should be within a few percent of the true percentiles
+        assertEquals(5_000, histogram.getValueAtPercentile(50), 5_000 * 0.04);
+        assertEquals(9_900, histogram.getValueAtPercentile(99), 9_900 * 0.04);
+
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+    }
+
+    @Test
+    void recordValueNegative() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(-17);
+
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void recordValueConcurrently() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int valuesPerThread = 100_000;
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(() -> {
+                    for (int value = 0; value < valuesPerThread; value++) {
+                        histogram.recordValue(value);
+                    }
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals((long) threads * valuesPerThread, histogram.getTotalCount());
+        assertEquals(valuesPerThread - 1, histogram.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,241 @@
+package com.eatthepath.rettys;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PipeliningCommandExecutorTest {
+
+    private EmbeddedChannel channel;
+    private PipeliningCommandExecutor commandExecutor;
+
+    private static final IOException WRITE_FAILURE = new IOException("Refusing to write command");
+
+    @BeforeEach
+    void setUp() {
+        channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(final ChannelHandlerContext context, final Object message, final ChannelPromise promise) {
+                if ("FAIL".equals(((RedisCommand) message).getComponents()[0])) {
+                    promise.setFailure(WRITE_FAILURE);
+                } else {
+                    context.write(message, promise);
+                }
+            }
+        });
+
+        commandExecutor = new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run));
+        commandExecutor.setChannel(channel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void executeCommand() {
+        final RedisCommand firstCommand = new RedisCommand("GET", "first");
+        final RedisCommand secondCommand = new RedisCommand("GET", "second");
+
+        final CompletableFuture<Object> firstFuture = commandExecutor.executeCommand(firstCommand);
+        final CompletableFuture<Object> secondFuture = commandExecutor.executeCommand(secondCommand);
+
+        channel.runPendingTasks();
+
+        assertSame(firstCommand, channel.readOutbound());
+        assertSame(secondCommand, channel.readOutbound());
+
+        commandExecutor.consumeMessage(channel, "first reply");
+        commandExecutor.consumeMessage(channel, "second reply");
+
+        assertEquals("first reply", firstFuture.join());
+        assertEquals("second reply", secondFuture.join());
+    }
+
+    @Test
+    void executeCommandReportsMetrics() {
+        final RedisMetricsRecorder metricsRecorder = new RedisMetricsRecorder();
+
+        commandExecutor = new PipeliningCommandExecutor(
+                new CommandResponseConsumer(Runnable::run, CompletionDispatchStrategy.PER_REPLY, metricsRecorder));
+
+        commandExecutor.setChannel(channel);
+
+        final CompletableFuture<Object> future = commandExecutor.executeCommand(new RedisCommand("GET", "key"));
+        channel.runPendingTasks();
+
+        assertEquals(1, metricsRecorder.getPendingCommands());
+        assertNull(metricsRecorder.getCommandLatencies().get("GET"));
+
+        commandExecutor.consumeMessage(channel, "reply");
+
+        assertEquals("reply", future.join());
+        assertEquals(0, metricsRecorder.getPendingCommands());
+        assertEquals(1, metricsRecorder.getCommandLatencies().get("GET").getTotalCount());
+    }
+
+    @Test
+    void executeCommandTraced() {
+        final List<CommandTimeline> timelines = new ArrayList<>();
+
+        commandExecutor = new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run),
+                (command, timeline) -> timelines.add(timeline));
+
+        commandExecutor.setChannel(channel);
+
+        final CompletableFuture<Object> future = commandExecutor.executeCommand(new RedisCommand("GET", "key"));
+        channel.runPendingTasks();
+
+        assertTrue(timelines.isEmpty());
+
+        commandExecutor.consumeMessage(channel, "reply");
+
+        assertEquals("reply", future.join());
+        assertEquals(1, timelines.size());
+
+        final CommandTimeline timeline = timelines.get(0);
+
+        assertNotEquals(0, timeline.getWrittenNanos());
+        assertNotEquals(0, timeline.getFlushedNanos());
+        assertNotEquals(0, timeline.getDecodedNanos());
+        assertNotEquals(0, timeline.getCompletedNanos());
+
+        assertTrue(timeline.getEnqueuedNanos() <= timeline.getWrittenNanos());
+        assertTrue(timeline.getWrittenNanos() <= timeline.getFlushedNanos());
+        assertTrue(timeline.getFlushedNanos() <= timeline.getDecodedNanos());
+        assertTrue(timeline.getDecodedNanos() <= timeline.getCompletedNanos());
+    }
+
+    @Test
+    void executeCommandTracedWriteFailure() {
+        final List<CommandTimeline> timelines = new ArrayList<>();
+
+        commandExecutor = new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run),
+                (command, timeline) -> timelines.add(timeline));
+
+        commandExecutor.setChannel(channel);
+
+        final CompletableFuture<Object> future = commandExecutor.executeCommand(new RedisCommand("FAIL"));
+        channel.runPendingTasks();
+
+        assertThrows(CompletionException.class, future::join);
+        assertEquals(1, timelines.size());
+        assertEquals(0, timelines.get(0).getFlushedNanos());
+        assertEquals(0, timelines.get(0).getDecodedNanos());
+    }
+
+    @Test
+    void executeCommandBatchesFlushes() {
+        final Channel mockChannel = mock(Channel.class);
+        final EventLoop eventLoop = mock(EventLoop.class);
+        final ChannelFuture writeFuture = mock(ChannelFuture.class);
+
+        when(mockChannel.eventLoop()).thenReturn(eventLoop);
+        when(mockChannel.write(any())).thenReturn(writeFuture);
+        when(eventLoop.inEventLoop()).thenReturn(true);
+
+        final PipeliningCommandExecutor mockChannelExecutor =
+                new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run));
+
+        mockChannelExecutor.setChannel(mockChannel);
+
+        mockChannelExecutor.executeCommand(new RedisCommand("GET", "first"));
+        mockChannelExecutor.executeCommand(new RedisCommand("GET", "second"));
+        mockChannelExecutor.executeCommand(new RedisCommand("GET", "third"));
+
+        verify(mockChannel, times(3)).write(any());
+        verify(mockChannel, never()).flush();
+
+        // Only one flush should have been scheduled for all three commands
+        final ArgumentCaptor<Runnable> flushTaskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(eventLoop, times(1)).execute(flushTaskCaptor.capture());
+
+        flushTaskCaptor.getValue().run();
+        verify(mockChannel, times(1)).flush();
+
+        // ...and once that flush has happened, the next command should schedule another
+        mockChannelExecutor.executeCommand(new RedisCommand("GET", "fourth"));
+        verify(eventLoop, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void executeCommandWriteFailure() {
+        final CompletableFuture<Object> failedFuture = commandExecutor.executeCommand(new RedisCommand("FAIL"));
+        final CompletableFuture<Object> successfulFuture = commandExecutor.executeCommand(new RedisCommand("PING"));
+
+        channel.runPendingTasks();
+
+        final CompletionException completionException = assertThrows(CompletionException.class, failedFuture::join);
+        assertSame(WRITE_FAILURE, completionException.getCause());
+
+        // The failed command never reached the server, so the next reply belongs to the next command
+        commandExecutor.consumeMessage(channel, "PONG");
+        assertEquals("PONG", successfulFuture.join());
+    }
+
+    @Test
+    void executeCommandEventLoopShutDown() {
+        final Channel mockChannel = mock(Channel.class);
+        final EventLoop eventLoop = mock(EventLoop.class);
+        final RejectedExecutionException rejectedExecutionException = new RejectedExecutionException();
+
+        when(mockChannel.eventLoop()).thenReturn(eventLoop);
+        when(eventLoop.inEventLoop()).thenReturn(false);
+        doThrow(rejectedExecutionException).when(eventLoop).execute(any(Runnable.class));
+
+        final List<CommandTimeline> timelines = new ArrayList<>();
+
+        final PipeliningCommandExecutor mockChannelExecutor =
+                new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run),
+                        (command, timeline) -> timelines.add(timeline));
+
+        mockChannelExecutor.setChannel(mockChannel);
+
+        final CompletableFuture<Object> future = mockChannelExecutor.executeCommand(new RedisCommand("PING"));
+
+        final CompletionException completionException = assertThrows(CompletionException.class, future::join);
+        assertSame(rejectedExecutionException, completionException.getCause());
+        verify(mockChannel, never()).write(any());
+
+        // The failure should still be traced like any other
+        assertEquals(1, timelines.size());
+    }
+
+    @Test
+    void handleChannelClosure() {
+        final CompletableFuture<Object> pendingFuture = commandExecutor.executeCommand(new RedisCommand("PING"));
+
+        commandExecutor.handleChannelClosure(channel);
+
+        final CompletionException completionException = assertThrows(CompletionException.class, pendingFuture::join);
+        assertTrue(completionException.getCause() instanceof IOException);
+    }
+
+    @Test
+    void executeCommandNotConnected() {
+        final PipeliningCommandExecutor disconnectedExecutor =
+                new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run));
+
+        assertThrows(IllegalStateException.class, () -> disconnectedExecutor.executeCommand(new RedisCommand("PING")));
+    }
+}
@@ -0,0 +1,131 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PubSubListenerRegistryTest {
+
+    private PubSubListenerRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new PubSubListenerRegistry(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void addListener() {
+        final PubSubListener firstListener = mock(PubSubListener.class);
+        final PubSubListener secondListener = mock(PubSubListener.class);
+
+        assertEquals(0, registry.getListeners("first").length);
+
+        registry.addListener(firstListener, "first", "second");
+        registry.addListener(secondListener, "second");
+
+        // Adding the same listener twice should have no effect
+        registry.addListener(secondListener, "second");
+
+        assertArrayEquals(new PubSubListener[] { firstListener }, registry.getListeners("first"));
+        assertArrayEquals(new PubSubListener[] { firstListener, secondListener }, registry.getListeners("second"));
+
+        assertThrows(NullPointerException.class, () -> registry.addListener(firstListener, (String[]) null));
+        assertThrows(IllegalArgumentException.class, () -> registry.addListener(firstListener));
+    }
+
+    @Test
+    void addListenerSnapshot() {
+        final PubSubListener firstListener = mock(PubSubListener.class);
+        final PubSubListener secondListener = mock(PubSubListener.class);
+
+        registry.addListener(firstListener, "topic");
+
+        final PubSubListener[] snapshot = registry.getListeners("topic");
+
+        registry.addListener(secondListener, "topic");
+        registry.removeListener(firstListener, "topic");
+
+        // Snapshots already handed to readers must never change
+        assertArrayEquals(new PubSubListener[] { firstListener }, snapshot);
+        assertArrayEquals(new PubSubListener[] { secondListener }, registry.getListeners("topic"));
+    }
+
+    @Test
+    void removeListener() {
+        final PubSubListener firstListener = mock(PubSubListener.class);
+        final PubSubListener secondListener = mock(PubSubListener.class);
+        final PubSubListener thirdListener = mock(PubSubListener.class);
+
+        registry.addListener(firstListener, "first", "second");
+        registry.addListener(secondListener, "first", "second");
+        registry.addListener(thirdListener, "first");
+
+        registry.removeListener(secondListener, "first");
+
+        assertArrayEquals(new PubSubListener[] { firstListener, thirdListener }, registry.getListeners("first"));
+        assertArrayEquals(new PubSubListener[] { firstListener, secondListener }, registry.getListeners("second"));
+
+        registry.removeListener(firstListener);
+
+        assertArrayEquals(new PubSubListener[] { thirdListener }, registry.getListeners("first"));
+        assertArrayEquals(new PubSubListener[] { secondListener }, registry.getListeners("second"));
+
+        registry.removeListener(secondListener, (String[]) null);
+        registry.removeListener(thirdListener, "first", "not-registered");
+
+        assertEquals(0, registry.getListeners("first").length);
+        assertEquals(0, registry.getListeners("second").length);
+    }
+
+    @Test
+    void getRegistration() {
+        final PubSubListener listener = mock(PubSubListener.class);
+
+        // Register enough topics to make at least a few of them share slots
+        for (int i = 0; i < 100; i++) {
+            registry.addListener(listener, "topic-" + i);
+        }
+
+        registry.addListener(listener, "\u00fcber");
+
+        for (int i = 0; i < 100; i++) {
+            final String topic = "topic-" + i;
+
+            final PubSubListenerRegistry.Registration registration =
+                    registry.getRegistration(topic.getBytes(StandardCharsets.UTF_8));
+
+            assertNotNull(registration);
+            assertEquals(topic, registration.getTopic());
+            assertArrayEquals(new PubSubListener[] { listener }, registration.getListeners());
+        }
+
+        final ByteBuf topicBuffer = Unpooled.buffer();
+        topicBuffer.writeBytes("ignored".getBytes(StandardCharsets.UTF_8));
+        topicBuffer.readerIndex(topicBuffer.writerIndex());
+        topicBuffer.writeBytes("\u00fcber".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            final PubSubListenerRegistry.Registration registration = registry.getRegistration(topicBuffer);
+
+            assertNotNull(registration);
+            assertEquals("\u00fcber", registration.getTopic());
+            assertEquals(7, topicBuffer.readerIndex());
+        } finally {
+            topicBuffer.release();
+        }
+
+        assertNull(registry.getRegistration("topic-100".getBytes(StandardCharsets.UTF_8)));
+        assertNull(registry.getRegistration(new byte[0]));
+
+        registry.removeListener(listener, "topic-0");
+
+        assertNull(registry.getRegistration("topic-0".getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(registry.getRegistration("topic-1".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,411 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PubSubMailboxTest {
+
+    private Queue<Runnable> tasks;
+    private PubSubMailbox.FlowControl flowControl;
+    private RedisMetricsRecorder metricsRecorder;
+
+    private List<String> receivedMessages;
+    private PubSubListener listener;
+
+    @BeforeEach
+    void setUp() {
+        tasks = new ArrayDeque<>();
+        flowControl = mock(PubSubMailbox.FlowControl.class);
+        metricsRecorder = new RedisMetricsRecorder();
+
+        receivedMessages = new ArrayList<>();
+        listener = (topic, message) -> receivedMessages.add(topic + ":" + new String(message, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void offerOrdered() throws InterruptedException {
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        try {
+            final int messageCount = 10_000;
+
+            final List<Integer> receivedIntegers = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch countDownLatch = new CountDownLatch(messageCount);
+
+            final PubSubMailbox mailbox = new PubSubMailbox((topic, message) -> {
+                receivedIntegers.add(Integer.parseInt(new String(message, StandardCharsets.UTF_8)));
+                countDownLatch.countDown();
+            }, executorService, messageCount, PubSubOverflowPolicy.BLOCK, flowControl, metricsRecorder);
+
+            for (int i = 0; i < messageCount; i++) {
+                mailbox.offer("channel", String.valueOf(i).getBytes(StandardCharsets.UTF_8), 0);
+            }
+
+            assertTrue(countDownLatch.await(10, TimeUnit.SECONDS));
+
+            for (int i = 0; i < messageCount; i++) {
+                assertEquals(i, receivedIntegers.get(i));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void offerBlock() {
+        final PubSubMailbox mailbox = newMailbox(4, PubSubOverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 6; i++) {
+            offer(mailbox, "channel", "message-" + i);
+        }
+
+        // Blocking mailboxes keep everything, but ask for reads to stop exactly once
+        assertEquals(6, mailbox.size());
+        verify(flowControl, times(1)).suspendReads();
+        verify(flowControl, never()).resumeReads();
+
+        runTasks();
+
+        assertEquals(6, receivedMessages.size());
+        assertEquals(0, metricsRecorder.getDroppedPubSubMessages());
+        verify(flowControl, times(1)).resumeReads();
+    }
+
+    @Test
+    void offerDropOldest() {
+        final PubSubMailbox mailbox = newMailbox(2, PubSubOverflowPolicy.DROP_OLDEST);
+
+        offer(mailbox, "channel", "first");
+        offer(mailbox, "channel", "second");
+        offer(mailbox, "channel", "third");
+
+        runTasks();
+
+        assertEquals(List.of("channel:second", "channel:third"), receivedMessages);
+        assertEquals(1, metricsRecorder.getDroppedPubSubMessages());
+        verifyNoInteractions(flowControl);
+    }
+
+    @Test
+    void offerDropNewest() {
+        final PubSubMailbox mailbox = newMailbox(2, PubSubOverflowPolicy.DROP_NEWEST);
+
+        offer(mailbox, "channel", "first");
+        offer(mailbox, "channel", "second");
+        offer(mailbox, "channel", "third");
+
+        runTasks();
+
+        assertEquals(List.of("channel:first", "channel:second"), receivedMessages);
+        assertEquals(1, metricsRecorder.getDroppedPubSubMessages());
+    }
+
+    @Test
+    void offerConflate() {
+        final PubSubMailbox mailbox = newMailbox(2, PubSubOverflowPolicy.CONFLATE);
+
+        offer(mailbox, "a", "a1");
+        offer(mailbox, "b", "b1");
+
+        // Replaces the pending message for "a" in place
+        offer(mailbox, "a", "a2");
+
+        // Nothing pending for "c," so the oldest message ("a2") has to go
+        offer(mailbox, "c", "c1");
+
+        runTasks();
+
+        assertEquals(List.of("b:b1", "c:c1"), receivedMessages);
+        assertEquals(2, metricsRecorder.getDroppedPubSubMessages());
+    }
+
+    @Test
+    void offerReleasesDroppedBuffers() {
+        final PubSubMailbox mailbox = new PubSubMailbox(listener, tasks::add, 1, PubSubOverflowPolicy.DROP_NEWEST,
+                flowControl, metricsRecorder);
+
+        final ByteBuf first = Unpooled.copiedBuffer("first", StandardCharsets.UTF_8);
+        final ByteBuf second = Unpooled.copiedBuffer("second", StandardCharsets.UTF_8);
+
+        mailbox.offer("channel", first, 0);
+        mailbox.offer("channel", second, 0);
+
+        // The mailbox holds its own reference to the first message, but shouldn't hold on to the dropped message
+        assertEquals(2, first.refCnt());
+        assertEquals(1, second.refCnt());
+
+        runTasks();
+
+        assertEquals(List.of("channel:first"), receivedMessages);
+        assertEquals(1, first.refCnt());
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void offerListenerException() {
+        final PubSubListener failingListener = mock(PubSubListener.class);
+        doThrow(new RuntimeException("Intentional")).when(failingListener).handlePublishedMessage(anyString(), any(byte[].class));
+
+        final PubSubMailbox mailbox = new PubSubMailbox(failingListener, tasks::add, 4, PubSubOverflowPolicy.BLOCK,
+                flowControl, metricsRecorder);
+
+        offer(mailbox, "channel", "first");
+        offer(mailbox, "channel", "second");
+
+        runTasks();
+
+        // An exception from one delivery shouldn't stop later deliveries
+        verify(failingListener, times(2)).handlePublishedMessage(eq("channel"), any(byte[].class));
+        assertEquals(0, mailbox.size());
+    }
+
+    @Test
+    void drainYieldsToOtherTasks() {
+        final PubSubMailbox mailbox = newMailbox(PubSubMailbox.MAX_DELIVERIES_PER_TASK * 2, PubSubOverflowPolicy.BLOCK);
+
+        for (int i = 0; i < PubSubMailbox.MAX_DELIVERIES_PER_TASK + 1; i++) {
+            offer(mailbox, "channel", String.valueOf(i));
+        }
+
+        assertEquals(1, tasks.size());
+        tasks.remove().run();
+
+        assertEquals(PubSubMailbox.MAX_DELIVERIES_PER_TASK, receivedMessages.size());
+        assertEquals(1, tasks.size());
+
+        runTasks();
+
+        assertEquals(PubSubMailbox.MAX_DELIVERIES_PER_TASK + 1, receivedMessages.size());
+    }
+
+    @Test
+    void offerBatch() {
+        final List<List<String>> batches = new ArrayList<>();
+
+        final PubSubMailbox mailbox = new PubSubMailbox(new TestBatchListener(batches, 3, Duration.ofHours(1)),
+                tasks::add, 16, PubSubOverflowPolicy.BLOCK, flowControl, metricsRecorder);
+
+        assertTrue(mailbox.isBatching());
+
+        offer(mailbox, "a", "1");
+        offer(mailbox, "b", "2");
+
+        // Batch mailboxes should hold messages until flushed
+        assertTrue(tasks.isEmpty());
+
+        mailbox.flush();
+        runTasks();
+
+        assertEquals(List.of(List.of("a:1", "b:2")), batches);
+
+        // ...or until a batch is full
+        for (int i = 0; i < 4; i++) {
+            offer(mailbox, "a", String.valueOf(i));
+        }
+
+        assertEquals(1, tasks.size());
+
+        runTasks();
+
+        // The fourth message arrived before the drain task ran, and shouldn't be stranded
+        assertEquals(List.of(List.of("a:1", "b:2"), List.of("a:0", "a:1", "a:2"), List.of("a:3")), batches);
+
+        mailbox.flush();
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    void offerBatchDelay() {
+        final List<List<String>> batches = new ArrayList<>();
+
+        final PubSubMailbox mailbox = new PubSubMailbox(new TestBatchListener(batches, 1024, Duration.ZERO),
+                tasks::add, 16, PubSubOverflowPolicy.BLOCK, flowControl, metricsRecorder);
+
+        offer(mailbox, "a", "1");
+
+        // With no allowance for delay, every message is ready to go immediately
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        assertEquals(List.of(List.of("a:1")), batches);
+    }
+
+    @Test
+    void offerBatchZeroCopy() {
+        final List<List<String>> batches = new ArrayList<>();
+
+        final PubSubMailbox mailbox = new PubSubMailbox(new TestBatchListener(batches, 1024, Duration.ofHours(1)),
+                tasks::add, 16, PubSubOverflowPolicy.BLOCK, flowControl, metricsRecorder);
+
+        final ByteBuf message = Unpooled.copiedBuffer("1", StandardCharsets.UTF_8);
+
+        mailbox.offer("a", message, 0);
+        message.release();
+
+        mailbox.flush();
+        runTasks();
+
+        assertEquals(List.of(List.of("a:1")), batches);
+        assertEquals(0, message.refCnt());
+    }
+
+    @Test
+    void handlePublishedMessageBatchOfOne() {
+        final List<List<String>> batches = new ArrayList<>();
+        new TestBatchListener(batches, 1024, Duration.ZERO).handlePublishedMessage("a", "1".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(List.of(List.of("a:1")), batches);
+    }
+
+    @Test
+    void offerRejectedExecution() {
+        final boolean[] rejectTasks = { true };
+
+        final PubSubMailbox mailbox = new PubSubMailbox(listener, task -> {
+            if (rejectTasks[0]) {
+                throw new RejectedExecutionException();
+            }
+
+            tasks.add(task);
+        }, 4, PubSubOverflowPolicy.BLOCK, flowControl, metricsRecorder);
+
+        final ByteBuf message = Unpooled.copiedBuffer("rejected", StandardCharsets.UTF_8);
+
+        mailbox.offer("channel", message, 0);
+        message.release();
+
+        // Nothing will ever deliver the message, so the mailbox shouldn't hold on to it
+        assertEquals(0, mailbox.size());
+        assertEquals(0, message.refCnt());
+        assertEquals(1, metricsRecorder.getDroppedPubSubMessages());
+
+        // ...and the mailbox should recover once the executor accepts tasks again
+        rejectTasks[0] = false;
+        offer(mailbox, "channel", "accepted");
+        runTasks();
+
+        assertEquals(List.of("channel:accepted"), receivedMessages);
+    }
+
+    @Test
+    void offerRejectedExecutionResumesReads() {
+        final boolean[] rejectTasks = { false };
+        final int capacity = PubSubMailbox.MAX_DELIVERIES_PER_TASK * 4;
+
+        final PubSubMailbox mailbox = new PubSubMailbox(listener, task -> {
+            if (rejectTasks[0]) {
+                throw new RejectedExecutionException();
+            }
+
+            tasks.add(task);
+        }, capacity, PubSubOverflowPolicy.BLOCK, flowControl, metricsRecorder);
+
+        for (int i = 0; i <= capacity; i++) {
+            offer(mailbox, "channel", "message-" + i);
+        }
+
+        verify(flowControl, times(1)).suspendReads();
+
+        // The first task won't deliver enough messages to resume reads, and the executor will reject the follow-up task
+        rejectTasks[0] = true;
+        runTasks();
+
+        assertEquals(PubSubMailbox.MAX_DELIVERIES_PER_TASK, receivedMessages.size());
+        assertEquals(0, mailbox.size());
+        assertEquals(capacity + 1 - PubSubMailbox.MAX_DELIVERIES_PER_TASK, metricsRecorder.getDroppedPubSubMessages());
+        verify(flowControl, times(1)).resumeReads();
+    }
+
+    @Test
+    void offerListenerThrowsError() {
+        final PubSubMailbox mailbox = new PubSubMailbox((topic, message) -> {
+            final String messageString = new String(message, StandardCharsets.UTF_8);
+
+            if ("poison".equals(messageString)) {
+                throw new AssertionError("Listener failed");
+            }
+
+            receivedMessages.add(topic + ":" + messageString);
+        }, tasks::add, 4, PubSubOverflowPolicy.DROP_OLDEST, flowControl, metricsRecorder);
+
+        offer(mailbox, "channel", "poison");
+        offer(mailbox, "channel", "after");
+
+        final Runnable drainTask = tasks.poll();
+        assertNotNull(drainTask);
+        assertThrows(AssertionError.class, drainTask::run);
+
+        // The mailbox should have rescheduled itself to deliver the rest of its messages...
+        runTasks();
+        assertEquals(List.of("channel:after"), receivedMessages);
+
+        // ...and should still schedule deliveries for new messages
+        offer(mailbox, "channel", "later");
+        runTasks();
+        assertEquals(List.of("channel:after", "channel:later"), receivedMessages);
+    }
+
+    private static class TestBatchListener implements PubSubBatchListener {
+        private final List<List<String>> batches;
+        private final int maxBatchSize;
+        private final Duration maxBatchDelay;
+
+        private TestBatchListener(final List<List<String>> batches, final int maxBatchSize, final Duration maxBatchDelay) {
+            this.batches = batches;
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchDelay = maxBatchDelay;
+        }
+
+        @Override
+        public void handlePublishedMessages(final List<PublishedMessage> messages) {
+            batches.add(messages.stream()
+                    .map(message -> message.getTopic() + ":" + new String(message.getMessage(), StandardCharsets.UTF_8))
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        @Override
+        public Duration getMaxBatchDelay() {
+            return maxBatchDelay;
+        }
+    }
+
+    private PubSubMailbox newMailbox(final int capacity, final PubSubOverflowPolicy overflowPolicy) {
+        return new PubSubMailbox(listener, tasks::add, capacity, overflowPolicy, flowControl, metricsRecorder);
+    }
+
+    private static void offer(final PubSubMailbox mailbox, final String channel, final String message) {
+        mailbox.offer(channel, message.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    private void runTasks() {
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+            task.run();
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package com.eatthepath.rettys;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -183,11 +193,51 @@ class PubSubMessageConsumerTest {
         }
     }
 
+    @Test
+    void testConsumeMessageLookalikeMessageType() {
+        final PubSubListener listener = mock(PubSubListener.class);
+        pubSubMessageConsumer.addChannelListener(listener, "channel");
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        pubSubMessageConsumer.addPendingFuture(future);
+
+        // Same first byte and length as "message," but not actually a published message
+        final Object[] reply = new Object[] {
+                "mistake".getBytes(StandardCharsets.US_ASCII),
+                "channel".getBytes(CHARSET),
+                "Message!".getBytes(CHARSET)
+        };
+
+        pubSubMessageConsumer.consumeMessage(reply);
+
+        assertTrue(future.isDone());
+        verifyNoInteractions(listener);
+    }
+
     @Test
     void testConsumeMessageArrayWithNull() {
         assertDoesNotThrow(() -> pubSubMessageConsumer.consumeMessage(new Object[] { null, "OK", 4 }));
     }
 
+    @Test
+    void testConsumeNonPubSubArray() {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        pubSubMessageConsumer.addPendingFuture(future);
+
+        final Object[] reply = { Unpooled.copiedBuffer("first", CHARSET), 12L };
+
+        pubSubMessageConsumer.consumeMessage(reply);
+
+        assertSame(reply, future.join());
+        RedisValues.release(reply);
+
+        final ByteBuf strandedBuffer = Unpooled.copiedBuffer("second", CHARSET);
+        pubSubMessageConsumer.consumeMessage(new Object[] { strandedBuffer });
+
+        // With no future waiting, the consumer should release the reply instead of leaking it
+        assertEquals(0, strandedBuffer.refCnt());
+    }
+
     @Test
     void testConsumeSubscriptionChangeMessage() {
         final CompletableFuture<Object> subscribeFuture = new CompletableFuture<>();
@@ -200,6 +250,138 @@ class PubSubMessageConsumerTest {
         assertTrue(subscribeFuture.isDone());
     }
 
+    @Test
+    void testConsumeSubscriptionChangeMessageInterleaved() {
+        final CompletableFuture<Object> subscribeFuture = new CompletableFuture<>();
+        final CompletableFuture<Object> pingFuture = new CompletableFuture<>();
+        final CompletableFuture<Object> unsubscribeFuture = new CompletableFuture<>();
+
+        pubSubMessageConsumer.addPendingSubscriptionFuture(subscribeFuture, 2);
+        pubSubMessageConsumer.addPendingFuture(pingFuture);
+        pubSubMessageConsumer.addPendingUnsubscriptionFuture(unsubscribeFuture, 1);
+
+        pubSubMessageConsumer.consumeMessage(buildSubscriptionMessage("first", 1));
+        pubSubMessageConsumer.consumeMessage(buildSubscriptionMessage("second", 2));
+        assertEquals(2L, subscribeFuture.join());
+
+        pubSubMessageConsumer.consumeMessage("PONG");
+        assertEquals("PONG", pingFuture.join());
+
+        pubSubMessageConsumer.consumeMessage(new Object[] {
+                "unsubscribe".getBytes(StandardCharsets.US_ASCII),
+                "first".getBytes(CHARSET),
+                1L
+        });
+
+        assertEquals(1L, unsubscribeFuture.join());
+    }
+
+    @Test
+    void testCancelSubscriptionFuture() {
+        final CompletableFuture<Object> subscribeFuture = new CompletableFuture<>();
+        final CompletableFuture<Object> pingFuture = new CompletableFuture<>();
+
+        pubSubMessageConsumer.addPendingSubscriptionFuture(subscribeFuture, 1);
+        pubSubMessageConsumer.addPendingFuture(pingFuture);
+
+        assertTrue(subscribeFuture.cancel(false));
+
+        // The cancelled future's subscription event still belongs to it, and must not be handed to the next future
+        pubSubMessageConsumer.consumeMessage(buildSubscriptionMessage("channel", 1));
+        pubSubMessageConsumer.consumeMessage("PONG");
+
+        assertTrue(subscribeFuture.isCancelled());
+        assertEquals("PONG", pingFuture.join());
+    }
+
+    @Test
+    void testSubscriptionFutureChannelClosure() {
+        final CompletableFuture<Object> subscribeFuture = new CompletableFuture<>();
+
+        pubSubMessageConsumer.addPendingSubscriptionFuture(subscribeFuture, 2);
+        pubSubMessageConsumer.consumeMessage(buildSubscriptionMessage("first", 1));
+        pubSubMessageConsumer.handleChannelClosure();
+
+        final CompletionException completionException = assertThrows(CompletionException.class, subscribeFuture::join);
+        assertTrue(completionException.getCause() instanceof IOException);
+
+        final CompletableFuture<Object> lateSubscribeFuture = new CompletableFuture<>();
+        pubSubMessageConsumer.addPendingSubscriptionFuture(lateSubscribeFuture, 1);
+
+        assertTrue(lateSubscribeFuture.isCompletedExceptionally());
+    }
+
+    @Test
+    void testAddPendingSubscriptionFuturesConcurrently() throws InterruptedException {
+        final int threadCount = 4;
+        final int futuresPerThread = 1000;
+
+        final List<CompletableFuture<Object>> futures = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < threadCount; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < futuresPerThread; i++) {
+                    final CompletableFuture<Object> future = new CompletableFuture<>();
+                    futures.add(future);
+
+                    pubSubMessageConsumer.addPendingSubscriptionFuture(future, 2);
+                }
+            }));
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < threadCount * futuresPerThread * 2; i++) {
+            pubSubMessageConsumer.consumeMessage(buildSubscriptionMessage("channel-" + i, i + 1));
+        }
+
+        assertEquals(threadCount * futuresPerThread, futures.size());
+        assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    void testConsumePushMessage() {
+        final EmbeddedChannel channel = new EmbeddedChannel();
+
+        final CompletableFuture<Object> subscribeFuture = new CompletableFuture<>();
+        final CompletableFuture<Object> pingFuture = new CompletableFuture<>();
+
+        pubSubMessageConsumer.addPendingSubscriptionFuture(subscribeFuture, 1);
+        pubSubMessageConsumer.addPendingFuture(pingFuture);
+
+        final PubSubListener listener = mock(PubSubListener.class);
+        pubSubMessageConsumer.addChannelListener(listener, "channel");
+
+        // Under RESP3, subscription events and published messages arrive as push messages
+        pubSubMessageConsumer.consumePushMessage(channel, new RedisPushMessage(buildSubscriptionMessage("channel", 1)));
+        assertEquals(1L, subscribeFuture.join());
+
+        pubSubMessageConsumer.consumePushMessage(channel,
+                new RedisPushMessage(buildPublishedChannelMessage("channel", "Message!")));
+
+        verify(listener).handlePublishedMessage("channel", "Message!".getBytes(CHARSET));
+
+        // Push messages that have nothing to do with pub/sub must not be mistaken for replies to commands
+        final ByteBuf invalidatedKey = Unpooled.copiedBuffer("key", CHARSET);
+
+        pubSubMessageConsumer.consumePushMessage(channel, new RedisPushMessage(new Object[] {
+                "invalidate".getBytes(StandardCharsets.US_ASCII),
+                new Object[] { invalidatedKey }
+        }));
+
+        assertFalse(pingFuture.isDone());
+        assertEquals(0, invalidatedKey.refCnt());
+
+        channel.finishAndReleaseAll();
+    }
+
     @Test
     void testHandleChannelMessage() {
         final String firstChannel = "first";
@@ -239,6 +421,141 @@ class PubSubMessageConsumerTest {
         verify(listener).handlePublishedMessage(secondChannel, secondMessage.getBytes(CHARSET));
     }
 
+    @Test
+    void testHandleChannelMessageZeroCopy() {
+        final String channel = "channel";
+        final String message = "Message!";
+
+        final PubSubListener listener = mock(PubSubListener.class);
+        final ByteBuf messageBuffer = Unpooled.copiedBuffer(message, CHARSET);
+
+        doAnswer(invocationOnMock -> {
+            // The message should still be alive while we're handling it
+            assertEquals(message, invocationOnMock.getArgument(1, ByteBuf.class).toString(CHARSET));
+            return null;
+        }).when(listener).handlePublishedMessage(eq(channel), any(ByteBuf.class));
+
+        pubSubMessageConsumer.addChannelListener(listener, channel);
+
+        pubSubMessageConsumer.consumeMessage(new Object[] {
+                Unpooled.copiedBuffer("message", StandardCharsets.US_ASCII),
+                Unpooled.copiedBuffer(channel, CHARSET),
+                messageBuffer
+        });
+
+        verify(listener).handlePublishedMessage(eq(channel), any(ByteBuf.class));
+        assertEquals(0, messageBuffer.refCnt());
+    }
+
+    @Test
+    void testHandlePubSubMessage() {
+        final PubSubListener channelListener = mock(PubSubListener.class);
+        final PubSubListener patternListener = mock(PubSubListener.class);
+
+        pubSubMessageConsumer.addChannelListener(channelListener, "channel");
+        pubSubMessageConsumer.addPatternListener(patternListener, "c*");
+
+        final ByteBuf payload = Unpooled.copiedBuffer("Message!", CHARSET);
+
+        pubSubMessageConsumer.consumeMessage(new PubSubMessage(null,
+                Unpooled.copiedBuffer("channel", CHARSET), payload.retainedDuplicate()));
+
+        pubSubMessageConsumer.consumeMessage(new PubSubMessage("c*".getBytes(CHARSET),
+                "channel".getBytes(CHARSET), "Message!".getBytes(CHARSET)));
+
+        verify(channelListener).handlePublishedMessage(eq("channel"), any(ByteBuf.class));
+        verify(patternListener).handlePublishedMessage("channel", "Message!".getBytes(CHARSET));
+
+        assertEquals(1, payload.refCnt());
+        payload.release();
+    }
+
+    @Test
+    void testBlockingOverflowPolicy() {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final PubSubMessageConsumer blockingConsumer = new PubSubMessageConsumer(tasks::add, CHARSET,
+                RedisMetricsListener.NO_OP, 2, PubSubOverflowPolicy.BLOCK);
+
+        final EmbeddedChannel channel = new EmbeddedChannel();
+
+        try {
+            final PubSubListener listener = mock(PubSubListener.class);
+            blockingConsumer.addChannelListener(listener, "channel");
+
+            blockingConsumer.consumeMessage(channel, buildPublishedChannelMessage("channel", "first"));
+            blockingConsumer.consumeMessage(channel, buildPublishedChannelMessage("channel", "second"));
+            assertTrue(channel.config().isAutoRead());
+
+            blockingConsumer.consumeMessage(channel, buildPublishedChannelMessage("channel", "third"));
+            assertFalse(channel.config().isAutoRead());
+
+            for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                task.run();
+            }
+
+            assertTrue(channel.config().isAutoRead());
+            verify(listener, times(3)).handlePublishedMessage(eq("channel"), any(byte[].class));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void testRemoveListenerRemovesMailbox() {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final PubSubMessageConsumer consumer = new PubSubMessageConsumer(tasks::add, CHARSET);
+
+        final PubSubListener listener = mock(PubSubListener.class);
+
+        consumer.addChannelListener(listener, "channel");
+        consumer.addPatternListener(listener, "c*");
+
+        // Still registered for a pattern, so messages for the pattern should still get through
+        consumer.removeChannelListener(listener);
+        consumer.consumeMessage(buildPublishedPatternMessage("c*", "channel", "Message!"));
+
+        consumer.removePatternListener(listener);
+        consumer.consumeMessage(buildPublishedPatternMessage("c*", "channel", "Message!"));
+
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+            task.run();
+        }
+
+        verify(listener, times(1)).handlePublishedMessage("channel", "Message!".getBytes(CHARSET));
+    }
+
+    @Test
+    void testBatchListener() {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final PubSubMessageConsumer consumer = new PubSubMessageConsumer(tasks::add, CHARSET);
+
+        final List<Integer> batchSizes = new ArrayList<>();
+        final PubSubListener listener = mock(PubSubListener.class);
+
+        consumer.addChannelListener((PubSubBatchListener) messages -> batchSizes.add(messages.size()), "channel");
+        consumer.addChannelListener(listener, "channel");
+
+        consumer.consumeMessage(buildPublishedChannelMessage("channel", "first"));
+        consumer.consumeMessage(buildPublishedChannelMessage("channel", "second"));
+        consumer.consumeMessage(buildPublishedChannelMessage("channel", "third"));
+
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+            task.run();
+        }
+
+        // Regular listeners get messages right away, but batch listeners wait for the end of the read cycle
+        verify(listener, times(3)).handlePublishedMessage(eq("channel"), any(byte[].class));
+        assertTrue(batchSizes.isEmpty());
+
+        consumer.handleReadComplete();
+
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+            task.run();
+        }
+
+        assertEquals(List.of(3), batchSizes);
+    }
+
     private static Object[] buildSubscriptionMessage(final String topic, final long activeSubscriptionCount) {
         return new Object[] {
                 "subscribe".getBytes(StandardCharsets.US_ASCII),
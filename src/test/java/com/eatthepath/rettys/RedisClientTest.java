@@ -0,0 +1,122 @@
+package com.eatthepath.rettys;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RedisClientTest {
+
+    @Test
+    void selectStripeByKeyHash() {
+        final List<PipeliningCommandExecutor> stripes = createStripes(4);
+        final RedisClient client = new RedisClient(stripes, RedisClient.StripeSelection.KEY_HASH);
+
+        for (int i = 0; i < stripes.size(); i++) {
+            client.addStripe(mockChannel(mock(EventLoop.class)), stripes.get(i));
+        }
+
+        final PipeliningCommandExecutor stripe = client.selectStripe(new RedisCommand("GET", "key"));
+
+        assertSame(stripe, client.selectStripe(new RedisCommand("SET", "key", "value")));
+        assertSame(stripes.get(Math.floorMod("key".hashCode(), stripes.size())), stripe);
+
+        final byte[] keyBytes = new byte[] { 'k', 'e', 'y' };
+        assertSame(client.selectStripe(new RedisCommand("GET", keyBytes)),
+                client.selectStripe(new RedisCommand("GET", keyBytes.clone())));
+    }
+
+    @Test
+    void selectStripeByThread() throws Exception {
+        final List<PipeliningCommandExecutor> stripes = createStripes(3);
+        final RedisClient client = new RedisClient(stripes, RedisClient.StripeSelection.THREAD);
+
+        final List<EventLoop> eventLoops = new ArrayList<>();
+
+        try {
+            for (final PipeliningCommandExecutor stripe : stripes) {
+                final EventLoop eventLoop = new DefaultEventLoop();
+                eventLoops.add(eventLoop);
+
+                client.addStripe(mockChannel(eventLoop), stripe);
+            }
+
+            // Callers not on any of our event loops get a stripe by thread ID
+            assertSame(stripes.get((int) (Thread.currentThread().getId() % stripes.size())),
+                    client.selectStripe(new RedisCommand("PING")));
+
+            // ...but callers already running on one of our event loops should stay there
+            for (int i = 0; i < stripes.size(); i++) {
+                assertSame(stripes.get(i),
+                        eventLoops.get(i).submit(() -> client.selectStripe(new RedisCommand("PING"))).get());
+            }
+        } finally {
+            for (final EventLoop eventLoop : eventLoops) {
+                eventLoop.shutdownGracefully().await();
+            }
+        }
+    }
+
+    @Test
+    void consumeMessage() {
+        final List<PipeliningCommandExecutor> stripes = createStripes(2);
+        final RedisClient client = new RedisClient(stripes, RedisClient.StripeSelection.KEY_HASH);
+
+        final EmbeddedChannel firstChannel = new EmbeddedChannel();
+        final EmbeddedChannel secondChannel = new EmbeddedChannel();
+
+        client.addStripe(firstChannel, stripes.get(0));
+        client.addStripe(secondChannel, stripes.get(1));
+
+        try {
+            final CompletableFuture<Object> firstFuture = stripes.get(0).executeCommand(new RedisCommand("GET", "first"));
+            final CompletableFuture<Object> secondFuture = stripes.get(1).executeCommand(new RedisCommand("GET", "second"));
+
+            // Replies should go to the stripe that owns the channel that delivered them, regardless of order
+            client.consumeMessage(secondChannel, "second reply");
+            client.consumeMessage(firstChannel, "first reply");
+
+            assertEquals("first reply", firstFuture.join());
+            assertEquals("second reply", secondFuture.join());
+
+            final CompletableFuture<Object> closedFuture = stripes.get(0).executeCommand(new RedisCommand("GET", "closed"));
+            client.handleChannelClosure(firstChannel);
+
+            final CompletionException completionException = assertThrows(CompletionException.class, closedFuture::join);
+            assertTrue(completionException.getCause() instanceof IOException);
+
+            assertThrows(IllegalStateException.class, () -> client.consumeMessage(firstChannel, "unexpected"));
+        } finally {
+            firstChannel.finishAndReleaseAll();
+            secondChannel.finishAndReleaseAll();
+        }
+    }
+
+    private static List<PipeliningCommandExecutor> createStripes(final int count) {
+        final List<PipeliningCommandExecutor> stripes = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            stripes.add(new PipeliningCommandExecutor(new CommandResponseConsumer(Runnable::run)));
+        }
+
+        return stripes;
+    }
+
+    private static Channel mockChannel(final EventLoop eventLoop) {
+        final Channel channel = mock(Channel.class);
+        when(channel.eventLoop()).thenReturn(eventLoop);
+
+        return channel;
+    }
+}
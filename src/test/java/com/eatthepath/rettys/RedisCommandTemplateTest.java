@@ -0,0 +1,66 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisCommandTemplateTest {
+
+    @Test
+    void bind() {
+        final RedisCommandTemplate template = new RedisCommandTemplate(2, "SET");
+        final PreparedRedisCommand command = template.bind("key", "value");
+
+        assertSame(template, command.getTemplate());
+        assertArrayEquals(new Object[] { "SET", "key", "value" }, command.getComponents());
+    }
+
+    @Test
+    void bindWrongArgumentCount() {
+        final RedisCommandTemplate template = new RedisCommandTemplate(1, "GET");
+
+        assertThrows(IllegalArgumentException.class, template::bind);
+        assertThrows(IllegalArgumentException.class, () -> template.bind("key", "extra"));
+    }
+
+    @Test
+    void getEncodedPrefix() {
+        final RedisCommandTemplate template = new RedisCommandTemplate(1, "CLIENT", "SETNAME");
+
+        final byte[] expectedPrefix = "*3\r\n$6\r\nCLIENT\r\n$7\r\nSETNAME\r\n".getBytes(StandardCharsets.US_ASCII);
+        final ByteBuf encodedPrefix = template.getEncodedPrefix(StandardCharsets.UTF_8);
+
+        assertArrayEquals(expectedPrefix, ByteBufUtil.getBytes(encodedPrefix));
+        assertTrue(encodedPrefix.isReadOnly());
+        assertThrows(ReadOnlyBufferException.class, () -> encodedPrefix.setByte(0, '!'));
+
+        // Neither consuming nor releasing one view should affect the next
+        encodedPrefix.skipBytes(4);
+        encodedPrefix.release();
+
+        assertArrayEquals(expectedPrefix, ByteBufUtil.getBytes(template.getEncodedPrefix(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void writeEncodedPrefix() {
+        final RedisCommandTemplate template = new RedisCommandTemplate(1, "CLIENT", "SETNAME");
+
+        final byte[] expectedPrefix = "*3\r\n$6\r\nCLIENT\r\n$7\r\nSETNAME\r\n".getBytes(StandardCharsets.US_ASCII);
+        final ByteBuf out = Unpooled.buffer();
+
+        try {
+            template.writeEncodedPrefix(StandardCharsets.UTF_8, out);
+
+            assertEquals(expectedPrefix.length, template.getEncodedPrefixLength(StandardCharsets.UTF_8));
+            assertArrayEquals(expectedPrefix, ByteBufUtil.getBytes(out));
+        } finally {
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.eatthepath.rettys;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisMetricsRecorderTest {
+
+    @Test
+    void handleCommandCompleted() {
+        final RedisMetricsRecorder recorder = new RedisMetricsRecorder();
+
+        recorder.handleCommandCompleted(new RedisCommand("GET", "key"), 100, null);
+        recorder.handleCommandCompleted(new RedisCommand("GET".getBytes(StandardCharsets.US_ASCII), "key"), 200, null);
+        recorder.handleCommandCompleted(new RedisCommand("SET", "key", "value"), 300, new IOException());
+
+        assertEquals(2, recorder.getCommandLatencies().get("GET").getTotalCount());
+        assertEquals(200, recorder.getCommandLatencies().get("GET").getMaxValue());
+        assertEquals(1, recorder.getCommandLatencies().get("SET").getTotalCount());
+        assertEquals(1, recorder.getFailedCommands());
+    }
+
+    @Test
+    void handlePendingCommands() {
+        final RedisMetricsRecorder recorder = new RedisMetricsRecorder();
+
+        recorder.handlePendingCommandAdded();
+        recorder.handlePendingCommandAdded();
+        recorder.handlePendingCommandRemoved();
+
+        assertEquals(1, recorder.getPendingCommands());
+    }
+
+    @Test
+    void handlePubSubMessageDropped() {
+        final RedisMetricsRecorder recorder = new RedisMetricsRecorder();
+
+        recorder.handlePubSubMessageDropped();
+        recorder.handlePubSubMessageDropped();
+
+        assertEquals(2, recorder.getDroppedPubSubMessages());
+    }
+}
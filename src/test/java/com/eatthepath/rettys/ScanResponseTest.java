@@ -0,0 +1,46 @@
+package com.eatthepath.rettys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanResponseTest {
+
+    @Test
+    void scanResponseVisitor() {
+        final ByteBuf buffer = Unpooled.wrappedBuffer("17foobar".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            final RedisReplyVisitor<ScanResponse> visitor =
+                    ScanResponse.scanResponseVisitorSupplier(StandardCharsets.UTF_8).get();
+
+            visitor.visitArrayStart(2);
+            visitor.visitBulkString(buffer, 0, 2);
+            visitor.visitArrayStart(2);
+            visitor.visitBulkString(buffer, 2, 3);
+            visitor.visitBulkString(buffer, 5, 3);
+            visitor.visitArrayEnd();
+            visitor.visitArrayEnd();
+
+            final ScanResponse scanResponse = visitor.getResult();
+
+            assertArrayEquals("17".getBytes(StandardCharsets.UTF_8), scanResponse.getCursor());
+            assertArrayEquals(new String[] { "foo", "bar" }, scanResponse.getKeys());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    void scanResponseVisitorUnexpectedReply() {
+        final RedisReplyVisitor<ScanResponse> visitor =
+                ScanResponse.scanResponseVisitorSupplier(StandardCharsets.UTF_8).get();
+
+        assertThrows(IllegalArgumentException.class, () -> visitor.visitArrayStart(3));
+        assertThrows(IllegalArgumentException.class, () -> visitor.visitInteger(7));
+    }
+}
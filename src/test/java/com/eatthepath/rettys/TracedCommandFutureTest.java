@@ -0,0 +1,56 @@
+package com.eatthepath.rettys;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TracedCommandFutureTest {
+
+    private static final RedisCommand COMMAND = new RedisCommand("PING");
+
+    @Test
+    void complete() {
+        final RedisCommandTracer tracer = mock(RedisCommandTracer.class);
+        final TracedCommandFuture future = new TracedCommandFuture(COMMAND, tracer);
+
+        assertTrue(future.complete("PONG"));
+        assertFalse(future.complete("PONG"));
+
+        verify(tracer).handleCommandTraced(COMMAND, future.getTimeline());
+        assertNotEquals(0, future.getTimeline().getCompletedNanos());
+    }
+
+    @Test
+    void completeExceptionally() {
+        final RedisCommandTracer tracer = mock(RedisCommandTracer.class);
+        final TracedCommandFuture future = new TracedCommandFuture(COMMAND, tracer);
+
+        assertTrue(future.completeExceptionally(new IOException()));
+
+        verify(tracer).handleCommandTraced(COMMAND, future.getTimeline());
+        assertNotEquals(0, future.getTimeline().getCompletedNanos());
+    }
+
+    @Test
+    void cancel() {
+        final RedisCommandTracer tracer = mock(RedisCommandTracer.class);
+        final TracedCommandFuture future = new TracedCommandFuture(COMMAND, tracer);
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+
+        // Cancelling again succeeds, per CompletableFuture's contract, but shouldn't produce a second trace
+        assertTrue(future.cancel(false));
+
+        verify(tracer).handleCommandTraced(COMMAND, future.getTimeline());
+        assertNotEquals(0, future.getTimeline().getCompletedNanos());
+
+        // A late reply shouldn't produce a second trace
+        assertFalse(future.complete("PONG"));
+        verify(tracer, times(1)).handleCommandTraced(any(), any());
+    }
+}
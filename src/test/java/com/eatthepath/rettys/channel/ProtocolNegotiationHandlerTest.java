@@ -0,0 +1,63 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisException;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtocolNegotiationHandlerTest {
+
+    @Test
+    void negotiateResp3() {
+        final ProtocolNegotiationHandler handler = new ProtocolNegotiationHandler();
+        final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        try {
+            final RedisCommand helloCommand = channel.readOutbound();
+            assertArrayEquals(new Object[] { "HELLO", 3 }, helloCommand.getComponents());
+
+            assertFalse(handler.getNegotiationFuture().isDone());
+
+            channel.writeInbound(Collections.singletonMap("proto", 3L));
+
+            assertEquals(RedisProtocolVersion.RESP3, handler.getNegotiationFuture().getNow());
+            assertEquals(RedisProtocolVersion.RESP3, channel.attr(RedisChannelFactory.PROTOCOL_VERSION_ATTRIBUTE_KEY).get());
+
+            // The reply to the HELLO command shouldn't go any further, and the handler should be out of the way now
+            assertNull(channel.readInbound());
+            assertNull(channel.pipeline().get(ProtocolNegotiationHandler.class));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void negotiateResp2Fallback() {
+        final ProtocolNegotiationHandler handler = new ProtocolNegotiationHandler();
+        final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        try {
+            channel.writeInbound(new RedisException("ERR unknown command 'HELLO'"));
+
+            assertEquals(RedisProtocolVersion.RESP2, handler.getNegotiationFuture().getNow());
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void channelClosedDuringNegotiation() {
+        final ProtocolNegotiationHandler handler = new ProtocolNegotiationHandler();
+        final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.close();
+
+        assertFalse(handler.getNegotiationFuture().isSuccess());
+        assertNotNull(handler.getNegotiationFuture().cause());
+    }
+}
@@ -0,0 +1,175 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.PubSubMessage;
+import com.eatthepath.rettys.RedisMetricsListener;
+import com.eatthepath.rettys.RedisPushMessage;
+import com.eatthepath.rettys.RedisValues;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PubSubResponseDecoderTest {
+
+    private static final String CHANNEL_MESSAGE = "*3\r\n$7\r\nmessage\r\n$7\r\nchannel\r\n$8\r\nMessage!\r\n";
+    private static final String PATTERN_MESSAGE =
+            "*4\r\n$8\r\npmessage\r\n$2\r\nc*\r\n$7\r\nchannel\r\n$8\r\nMessage!\r\n";
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void decodeChannelMessage(final boolean zeroCopyBulkStrings) {
+        final EmbeddedChannel channel = newChannel(zeroCopyBulkStrings);
+
+        try {
+            channel.writeInbound(toByteBuf(CHANNEL_MESSAGE));
+
+            final PubSubMessage pubSubMessage = channel.readInbound();
+
+            try {
+                assertNull(pubSubMessage.getPattern());
+                assertBulkStringEquals("channel", pubSubMessage.getChannel());
+                assertBulkStringEquals("Message!", pubSubMessage.getPayload());
+            } finally {
+                RedisValues.release(pubSubMessage);
+            }
+
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void decodePatternMessage(final boolean zeroCopyBulkStrings) {
+        final EmbeddedChannel channel = newChannel(zeroCopyBulkStrings);
+
+        try {
+            channel.writeInbound(toByteBuf(PATTERN_MESSAGE));
+
+            final PubSubMessage pubSubMessage = channel.readInbound();
+
+            try {
+                assertBulkStringEquals("c*", pubSubMessage.getPattern());
+                assertBulkStringEquals("channel", pubSubMessage.getChannel());
+                assertBulkStringEquals("Message!", pubSubMessage.getPayload());
+            } finally {
+                RedisValues.release(pubSubMessage);
+            }
+
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeFragmented() {
+        final EmbeddedChannel channel = newChannel(false);
+
+        try {
+            final byte[] bytes = (":1\r\n" + PATTERN_MESSAGE + CHANNEL_MESSAGE + ":2\r\n").getBytes(StandardCharsets.US_ASCII);
+
+            // Deliver everything one byte at a time to make sure neither path gets confused about where frames start
+            for (final byte b : bytes) {
+                channel.writeInbound(Unpooled.wrappedBuffer(new byte[] { b }));
+            }
+
+            assertEquals(1L, (Long) channel.readInbound());
+
+            final PubSubMessage patternMessage = channel.readInbound();
+            assertBulkStringEquals("c*", patternMessage.getPattern());
+            assertBulkStringEquals("Message!", patternMessage.getPayload());
+
+            final PubSubMessage channelMessage = channel.readInbound();
+            assertNull(channelMessage.getPattern());
+            assertBulkStringEquals("channel", channelMessage.getChannel());
+
+            assertEquals(2L, (Long) channel.readInbound());
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeOtherValues() {
+        final EmbeddedChannel channel = newChannel(false);
+
+        try {
+            channel.writeInbound(toByteBuf("*3\r\n$9\r\nsubscribe\r\n$7\r\nchannel\r\n:1\r\n" +
+                    "*3\r\n$7\r\nmessage\r\n$-1\r\n$8\r\nMessage!\r\n" +
+                    "*2\r\n$4\r\npong\r\n$0\r\n\r\n" +
+                    CHANNEL_MESSAGE));
+
+            final Object[] subscribeReply = channel.readInbound();
+            assertBulkStringEquals("subscribe", subscribeReply[0]);
+            assertEquals(1L, subscribeReply[2]);
+
+            // A published message with an unexpected shape should fall back to the general-purpose decoder
+            final Object[] strangeMessage = channel.readInbound();
+            assertBulkStringEquals("message", strangeMessage[0]);
+            assertNull(strangeMessage[1]);
+
+            final Object[] pongReply = channel.readInbound();
+            assertBulkStringEquals("pong", pongReply[0]);
+
+            assertTrue(channel.readInbound() instanceof PubSubMessage);
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodePushMessages() {
+        final EmbeddedChannel channel = newChannel(false);
+
+        try {
+            // RESP3 servers send pub/sub events as push messages instead of arrays
+            channel.writeInbound(toByteBuf(">3\r\n$9\r\nsubscribe\r\n$7\r\nchannel\r\n:1\r\n" +
+                    ">3\r\n$7\r\nmessage\r\n$7\r\nchannel\r\n$8\r\nMessage!\r\n" +
+                    ">4\r\n$8\r\npmessage\r\n$2\r\nc*\r\n$7\r\nchannel\r\n$8\r\nMessage!\r\n"));
+
+            final RedisPushMessage subscribePush = channel.readInbound();
+            assertEquals("subscribe", subscribePush.getKind());
+            assertEquals(1L, subscribePush.getElements()[2]);
+
+            final PubSubMessage channelMessage = channel.readInbound();
+            assertNull(channelMessage.getPattern());
+            assertBulkStringEquals("channel", channelMessage.getChannel());
+            assertBulkStringEquals("Message!", channelMessage.getPayload());
+
+            final PubSubMessage patternMessage = channel.readInbound();
+            assertBulkStringEquals("c*", patternMessage.getPattern());
+            assertBulkStringEquals("channel", patternMessage.getChannel());
+            assertBulkStringEquals("Message!", patternMessage.getPayload());
+
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private static EmbeddedChannel newChannel(final boolean zeroCopyBulkStrings) {
+        return new EmbeddedChannel(new PubSubResponseDecoder(zeroCopyBulkStrings, null, RedisMetricsListener.NO_OP));
+    }
+
+    private static ByteBuf toByteBuf(final String string) {
+        return Unpooled.copiedBuffer(string, StandardCharsets.US_ASCII);
+    }
+
+    private static void assertBulkStringEquals(final String expected, final Object bulkString) {
+        if (bulkString instanceof ByteBuf) {
+            assertEquals(expected, ((ByteBuf) bulkString).toString(StandardCharsets.US_ASCII));
+        } else {
+            assertArrayEquals(expected.getBytes(StandardCharsets.US_ASCII), (byte[]) bulkString);
+        }
+    }
+}
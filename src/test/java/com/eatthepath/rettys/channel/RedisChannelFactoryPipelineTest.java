@@ -0,0 +1,54 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisMessageConsumer;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RedisChannelFactoryPipelineTest {
+
+    private static EventLoopGroup eventLoopGroup;
+
+    @BeforeAll
+    static void setUpBeforeClass() {
+        eventLoopGroup = new NioEventLoopGroup(1);
+    }
+
+    @AfterAll
+    static void tearDownAfterClass() throws InterruptedException {
+        eventLoopGroup.shutdownGracefully().await();
+    }
+
+    @Test
+    void flushHandlerReplyTracker() throws InterruptedException {
+        try (final StubRedisServer server = new StubRedisServer()) {
+            final InetSocketAddress address = server.start();
+            final RedisChannelFactory channelFactory = new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, false);
+
+            final Channel channel = channelFactory.createChannel(address, mock(RedisMessageConsumer.class))
+                    .syncUninterruptibly().channel();
+
+            final Channel pubSubChannel = channelFactory.createPubSubChannel(address, mock(RedisMessageConsumer.class))
+                    .syncUninterruptibly().channel();
+
+            try {
+                assertNotNull(channel.pipeline().get(RedisFlushHandler.class).getReplyTracker());
+
+                // Replies on pub/sub channels don't line up with commands, so adaptive flushing can't rely on them
+                assertNull(pubSubChannel.pipeline().get(RedisFlushHandler.class).getReplyTracker());
+            } finally {
+                channel.close().syncUninterruptibly();
+                pubSubChannel.close().syncUninterruptibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisMessageConsumer;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RedisChannelFactorySslTest {
+
+    private static EventLoopGroup eventLoopGroup;
+
+    @BeforeAll
+    static void setUpBeforeClass() {
+        eventLoopGroup = new NioEventLoopGroup(1);
+    }
+
+    @AfterAll
+    static void tearDownAfterClass() throws InterruptedException {
+        eventLoopGroup.shutdownGracefully().await();
+    }
+
+    @Test
+    void sharedSslContext() {
+        final RedisChannelFactory channelFactory = new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, true);
+
+        final SslContext sslContext = channelFactory.getSslContext();
+
+        assertNotNull(sslContext);
+        assertTrue(sslContext.isClient());
+        assertSame(sslContext, channelFactory.getSslContext());
+
+        // Netty's OpenSSL client contexts can't resume sessions, so the default context must come from the JDK
+        assertTrue(sslContext instanceof JdkSslContext);
+
+        assertNull(new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, false).getSslContext());
+    }
+
+    @Test
+    void resumeSession() throws Exception {
+        final SslContext serverSslContext = SslContextBuilder.forServer(
+                getClass().getResourceAsStream("test-server.crt"), getClass().getResourceAsStream("test-server.key"))
+                .sslProvider(SslProvider.JDK)
+                .build();
+
+        final Channel serverChannel = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel channel) {
+                        channel.pipeline().addLast(serverSslContext.newHandler(channel.alloc()));
+                        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(final ChannelHandlerContext context, final Object message) {
+                                // Answer everything as if it were a PING
+                                ReferenceCountUtil.release(message);
+                                context.writeAndFlush(Unpooled.copiedBuffer("+PONG\r\n", StandardCharsets.US_ASCII));
+                            }
+                        });
+                    }
+                })
+                .bind(InetAddress.getLoopbackAddress(), 0)
+                .syncUninterruptibly()
+                .channel();
+
+        try {
+            final SslContext clientSslContext = RedisChannelFactory.buildClientSslContext(SslContextBuilder.forClient()
+                    .sslProvider(SslProvider.JDK)
+                    .trustManager(getClass().getResourceAsStream("test-server.crt")));
+
+            final RedisChannelFactory channelFactory =
+                    new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, clientSslContext);
+
+            final InetSocketAddress address = (InetSocketAddress) serverChannel.localAddress();
+
+            final SSLSession firstSession = connectAndPing(channelFactory, address);
+            final SSLSession secondSession = connectAndPing(channelFactory, address);
+
+            // A resumed session keeps the ID (and creation time) of the session in which it was first negotiated
+            assertTrue(firstSession.getId().length > 0);
+            assertArrayEquals(firstSession.getId(), secondSession.getId());
+            assertEquals(firstSession.getCreationTime(), secondSession.getCreationTime());
+        } finally {
+            serverChannel.close().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    void newOpenSslClientContext() {
+        assumeTrue(OpenSsl.isAvailable());
+
+        final SslContext sslContext = RedisChannelFactory.newClientSslContext(SslProvider.OPENSSL);
+
+        assertTrue(sslContext.isClient());
+        assertTrue(sslContext instanceof OpenSslContext);
+    }
+
+    private static SSLSession connectAndPing(final RedisChannelFactory channelFactory, final InetSocketAddress address) throws Exception {
+        final CompletableFuture<Object> replyFuture = new CompletableFuture<>();
+        final RedisMessageConsumer consumer = mock(RedisMessageConsumer.class);
+
+        doAnswer(invocation -> replyFuture.complete(invocation.getArgument(1)))
+                .when(consumer).consumeMessage(any(), any());
+
+        final Channel channel = channelFactory.createChannel(address, consumer).syncUninterruptibly().channel();
+
+        try {
+            channel.writeAndFlush(new RedisCommand("PING"));
+
+            // TLS 1.3 servers send session tickets after the handshake; once we have a reply, we have the ticket, too
+            assertEquals("PONG", replyFuture.get(5, TimeUnit.SECONDS));
+
+            return channel.pipeline().get(SslHandler.class).engine().getSession();
+        } finally {
+            channel.close().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    void serverSslContext() {
+        final SslContext serverContext = mock(SslContext.class);
+        when(serverContext.isClient()).thenReturn(false);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, serverContext));
+    }
+}
@@ -0,0 +1,103 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of encoding representative commands with {@link RedisCommandEncoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisCommandEncoderBenchmark {
+
+    public enum CommandType {
+        PING,
+        INCRBY,
+        SET_1K,
+        SET_1M,
+        MSET_WIDE
+    }
+
+    @Param({"PING", "INCRBY", "SET_1K", "SET_1M", "MSET_WIDE"})
+    public CommandType commandType;
+
+    private RedisCommandEncoder encoder;
+    private RedisCommand command;
+    private ByteBuf out;
+
+    @Setup
+    public void setUp() {
+        encoder = new RedisCommandEncoder(StandardCharsets.UTF_8);
+
+        switch (commandType) {
+            case PING: {
+                command = new RedisCommand("PING");
+                break;
+            }
+
+            case INCRBY: {
+                command = new RedisCommand("INCRBY", "counter", 1234567L);
+                break;
+            }
+
+            case SET_1K: {
+                command = new RedisCommand("SET", "key", newValue(1024));
+                break;
+            }
+
+            case SET_1M: {
+                command = new RedisCommand("SET", "key", newValue(1024 * 1024));
+                break;
+            }
+
+            case MSET_WIDE: {
+                final Object[] components = new Object[201];
+                components[0] = "MSET";
+
+                for (int i = 0; i < 100; i++) {
+                    components[(i * 2) + 1] = "key-" + i;
+                    components[(i * 2) + 2] = "value-" + i;
+                }
+
+                command = new RedisCommand(components);
+                break;
+            }
+
+            default: {
+                throw new IllegalArgumentException("Unexpected command type: " + commandType);
+            }
+        }
+
+        out = Unpooled.directBuffer(encoder.getEncodedLength(command));
+    }
+
+    private static byte[] newValue(final int length) {
+        final byte[] value = new byte[length];
+        Arrays.fill(value, (byte) 'x');
+
+        return value;
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        out.clear();
+        encoder.encode(null, command, out);
+
+        return out;
+    }
+}
@@ -1,20 +1,35 @@
 package com.eatthepath.rettys.channel;
 
 import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisCommandTemplate;
+import com.eatthepath.rettys.RedisMetricsRecorder;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static org.mockito.Mockito.mock;
 
@@ -45,6 +60,296 @@ class RedisCommandEncoderTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("commandProvider")
+    void encodeComponents(final RedisCommand command, final String expectedOutputString) {
+        final byte[] expectedOutput = expectedOutputString.getBytes(StandardCharsets.UTF_8);
+        final ByteBuf out = Unpooled.buffer();
+
+        try {
+            redisCommandEncoder.encode(mock(ChannelHandlerContext.class), command, out);
+
+            assertArrayEquals(expectedOutput, ByteBufUtil.getBytes(out));
+            assertEquals(expectedOutput.length, redisCommandEncoder.getEncodedLength(command));
+        } finally {
+            out.release();
+        }
+    }
+
+    static Stream<Arguments> commandProvider() {
+        return Stream.of(
+                arguments(new RedisCommand("LLEN", "mylist"), "*2\r\n$4\r\nLLEN\r\n$6\r\nmylist\r\n"),
+                arguments(new RedisCommand("SET", "k\u00e9y", "\uD83D\uDE00"), "*3\r\n$3\r\nSET\r\n$4\r\nk\u00e9y\r\n$4\r\n\uD83D\uDE00\r\n"),
+                arguments(new RedisCommand("LRANGE", "list", 0, -17L), "*4\r\n$6\r\nLRANGE\r\n$4\r\nlist\r\n$1\r\n0\r\n$3\r\n-17\r\n"),
+                arguments(new RedisCommand("INCRBY", "n", Long.MIN_VALUE), "*3\r\n$6\r\nINCRBY\r\n$1\r\nn\r\n$20\r\n-9223372036854775808\r\n"),
+                arguments(new RedisCommand("INCRBYFLOAT", "n", 3.5, (short) 7, (byte) -1), "*5\r\n$11\r\nINCRBYFLOAT\r\n$1\r\nn\r\n$3\r\n3.5\r\n$1\r\n7\r\n$2\r\n-1\r\n"),
+                arguments(new RedisCommand("SET", new byte[] { 'k' }, null), "*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$-1\r\n"));
+    }
+
+    @Test
+    void encodeReportsBytesEncoded() {
+        final RedisMetricsRecorder metricsRecorder = new RedisMetricsRecorder();
+        final EmbeddedChannel channel =
+                new EmbeddedChannel(new RedisCommandEncoder(StandardCharsets.UTF_8, null, metricsRecorder));
+
+        final ByteBuf payload = Unpooled.wrappedBuffer("value".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            channel.writeOutbound(new RedisCommand("LLEN", "mylist"));
+            assertEquals("*2\r\n$4\r\nLLEN\r\n$6\r\nmylist\r\n".length(), metricsRecorder.getBytesEncoded());
+
+            channel.writeOutbound(new RedisCommand("SET", "k", payload));
+            assertEquals("*2\r\n$4\r\nLLEN\r\n$6\r\nmylist\r\n".length() + "*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$5\r\nvalue\r\n".length(),
+                    metricsRecorder.getBytesEncoded());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void encodePreparedCommand() {
+        final RedisCommandTemplate template = new RedisCommandTemplate(2, "SET");
+        final RedisCommand preparedCommand = template.bind("k\u00e9y", 17L);
+
+        final ByteBuf preparedOut = Unpooled.buffer();
+        final ByteBuf unpreparedOut = Unpooled.buffer();
+
+        try {
+            redisCommandEncoder.encode(mock(ChannelHandlerContext.class), preparedCommand, preparedOut);
+            redisCommandEncoder.encode(mock(ChannelHandlerContext.class), new RedisCommand("SET", "k\u00e9y", 17L), unpreparedOut);
+
+            assertEquals(unpreparedOut, preparedOut);
+            assertEquals(preparedOut.readableBytes(), redisCommandEncoder.getEncodedLength(preparedCommand));
+        } finally {
+            preparedOut.release();
+            unpreparedOut.release();
+        }
+    }
+
+    @Test
+    void writeZeroCopyComponents() {
+        final EmbeddedChannel channel = new EmbeddedChannel(redisCommandEncoder);
+
+        final ByteBuf byteBufPayload = Unpooled.directBuffer().writeBytes("first".getBytes(StandardCharsets.US_ASCII));
+        final ByteBuffer byteBufferPayload = ByteBuffer.allocateDirect(6);
+        byteBufferPayload.put("second".getBytes(StandardCharsets.US_ASCII)).flip();
+
+        try {
+            channel.writeOutbound(new RedisCommand("MSET", "a", byteBufPayload, "b", byteBufferPayload));
+
+            final ByteBuf out = channel.readOutbound();
+
+            try {
+                assertEquals("*5\r\n$4\r\nMSET\r\n$1\r\na\r\n$5\r\nfirst\r\n$1\r\nb\r\n$6\r\nsecond\r\n",
+                        out.toString(StandardCharsets.US_ASCII));
+            } finally {
+                out.release();
+            }
+
+            // The payload should have been sent as-is (not copied), and released along with the outbound buffer
+            assertEquals(0, byteBufPayload.refCnt());
+            assertNull(channel.readOutbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void writeFileRegionComponent(@TempDir final Path tempDirectory) throws IOException {
+        final Path payloadPath = tempDirectory.resolve("payload");
+        Files.write(payloadPath, "file payload".getBytes(StandardCharsets.US_ASCII));
+
+        final EmbeddedChannel channel = new EmbeddedChannel(redisCommandEncoder);
+        final FileRegion fileRegion = new DefaultFileRegion(payloadPath.toFile(), 5, 7);
+
+        try {
+            assertTrue(channel.writeOutbound(new RedisCommand("SET", "key", fileRegion, "EX", 60)));
+
+            final ByteBuf header = channel.readOutbound();
+            final FileRegion writtenFileRegion = channel.readOutbound();
+            final ByteBuf trailer = channel.readOutbound();
+
+            try {
+                assertEquals("*5\r\n$3\r\nSET\r\n$3\r\nkey\r\n$7\r\n", header.toString(StandardCharsets.US_ASCII));
+                assertSame(fileRegion, writtenFileRegion);
+                assertEquals("\r\n$2\r\nEX\r\n$2\r\n60\r\n", trailer.toString(StandardCharsets.US_ASCII));
+            } finally {
+                header.release();
+                writtenFileRegion.release();
+                trailer.release();
+            }
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void writeZeroCopyComponentsUnexpectedArgument() {
+        final EmbeddedChannel channel = new EmbeddedChannel(redisCommandEncoder);
+        final ByteBuf payload = Unpooled.buffer().writeBytes(new byte[] { 1, 2, 3 });
+
+        try {
+            assertThrows(EncoderException.class,
+                    () -> channel.writeOutbound(new RedisCommand("SET", payload, new Object())));
+
+            assertEquals(0, payload.refCnt());
+            assertNull(channel.readOutbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void encodeDoesNotAllocate() {
+        assertEncodeDoesNotAllocate(
+                new RedisCommand("SET", "some-key", "a somewhat longer value with a \u00fcml\u00e4ut", "EX", 3600L));
+
+        // Prepared commands should be at least as cheap to encode as plain commands
+        assertEncodeDoesNotAllocate(new RedisCommandTemplate(2, "SET").bind("some-key", "a somewhat longer value"));
+    }
+
+    private void assertEncodeDoesNotAllocate(final RedisCommand command) {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+
+        final com.sun.management.ThreadMXBean allocationTrackingMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationTrackingMXBean.isThreadAllocatedMemorySupported() && allocationTrackingMXBean.isThreadAllocatedMemoryEnabled());
+
+        final ByteBuf out = Unpooled.buffer(redisCommandEncoder.getEncodedLength(command));
+        final long threadId = Thread.currentThread().getId();
+        final int iterations = 100_000;
+
+        try {
+            // Warm up so we're measuring compiled code
+            for (int i = 0; i < iterations; i++) {
+                out.clear();
+                redisCommandEncoder.getEncodedLength(command);
+                redisCommandEncoder.encode(null, command, out);
+            }
+
+            final long allocatedBytesBefore = allocationTrackingMXBean.getThreadAllocatedBytes(threadId);
+
+            for (int i = 0; i < iterations; i++) {
+                out.clear();
+                redisCommandEncoder.getEncodedLength(command);
+                redisCommandEncoder.encode(null, command, out);
+            }
+
+            final long allocatedBytes = allocationTrackingMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+
+            // Allow for a little noise from the measurement itself, but far less than a single allocation per command
+            assertTrue(allocatedBytes < iterations, "Encoding allocated " + allocatedBytes + " bytes over " + iterations + " commands");
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    void encodeSizedCommandNonUtf8() {
+        final RedisCommandEncoder encoder = new RedisCommandEncoder(StandardCharsets.UTF_16BE);
+        final RedisCommand command =
+                new RedisCommand("SET", "k\u00e9y", 3.5, new BigDecimal("-12.25"), 17L);
+
+        final ByteBuf expectedOutput = Unpooled.buffer();
+        final ByteBuf out = Unpooled.buffer();
+
+        try {
+            expectedOutput.writeCharSequence("*5\r\n$6\r\n", StandardCharsets.US_ASCII);
+            expectedOutput.writeCharSequence("SET", StandardCharsets.UTF_16BE);
+            expectedOutput.writeCharSequence("\r\n$6\r\n", StandardCharsets.US_ASCII);
+            expectedOutput.writeCharSequence("k\u00e9y", StandardCharsets.UTF_16BE);
+            expectedOutput.writeCharSequence("\r\n$3\r\n3.5\r\n$6\r\n-12.25\r\n$2\r\n17\r\n", StandardCharsets.US_ASCII);
+
+            // Size the command first (as the encoder does when it's part of a pipeline) so it uses its converted bytes
+            assertEquals(expectedOutput.readableBytes(), encoder.getEncodedLength(command));
+            encoder.encode(mock(ChannelHandlerContext.class), command, out);
+
+            assertEquals(expectedOutput, out);
+        } finally {
+            expectedOutput.release();
+            out.release();
+        }
+    }
+
+    @Test
+    void encodeConvertsComponentsOnce() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+
+        final com.sun.management.ThreadMXBean allocationTrackingMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationTrackingMXBean.isThreadAllocatedMemorySupported() && allocationTrackingMXBean.isThreadAllocatedMemoryEnabled());
+
+        final RedisCommandEncoder encoder = new RedisCommandEncoder(StandardCharsets.ISO_8859_1);
+
+        final String key = "some-key";
+        final String value = "a somewhat longer value with a \u00fcml\u00e4ut";
+        final Double score = 3.14159;
+        final BigDecimal increment = new BigDecimal("12345.6789");
+
+        final RedisCommand command = new RedisCommand("ZADD", key, score, value, increment);
+        final ByteBuf out = Unpooled.buffer(encoder.getEncodedLength(command));
+        final long threadId = Thread.currentThread().getId();
+        final int iterations = 100_000;
+
+        try {
+            // Warm up so we're measuring compiled code
+            for (int i = 0; i < iterations; i++) {
+                out.clear();
+                encoder.getEncodedLength(command);
+                encoder.encode(null, command, out);
+                convertComponents(encoder, command);
+            }
+
+            final long allocatedBytesBeforeConversion = allocationTrackingMXBean.getThreadAllocatedBytes(threadId);
+
+            for (int i = 0; i < iterations; i++) {
+                convertComponents(encoder, command);
+            }
+
+            final long conversionBytes = allocationTrackingMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBeforeConversion;
+            final long allocatedBytesBeforeEncoding = allocationTrackingMXBean.getThreadAllocatedBytes(threadId);
+
+            for (int i = 0; i < iterations; i++) {
+                out.clear();
+                encoder.getEncodedLength(command);
+                encoder.encode(null, command, out);
+            }
+
+            final long encodingBytes = allocationTrackingMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBeforeEncoding;
+
+            // Sizing and writing a command should cost no more than converting each component to bytes exactly once
+            assertTrue(encodingBytes < conversionBytes + iterations,
+                    "Encoding allocated " + encodingBytes + " bytes, but converting components once allocated " + conversionBytes + " bytes");
+        } finally {
+            out.release();
+        }
+    }
+
+    private static void convertComponents(final RedisCommandEncoder encoder, final RedisCommand command) {
+        for (final Object component : command.getComponents()) {
+            encoder.getBulkStringBytes(component);
+        }
+    }
+
+    @Test
+    void writeDecimal() {
+        final ByteBuf out = Unpooled.buffer();
+
+        try {
+            for (final long value : new long[] { 0, 9, 10, -1, -10, 1234567890L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+                out.clear();
+                RedisCommandEncoder.writeDecimal(value, out);
+
+                assertEquals(Long.toString(value), out.toString(StandardCharsets.US_ASCII));
+                assertEquals(Long.toString(value).length(), RedisCommandEncoder.getDecimalLength(value));
+            }
+        } finally {
+            out.release();
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("redisValueProvider")
     void getBulkStringBytes(final Object redisValue, final byte[] expectedBulkStringBytes) {
@@ -0,0 +1,162 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisFlushHandlerTest {
+
+    private FlushStatistics flushStatistics;
+
+    @BeforeEach
+    void setUp() {
+        flushStatistics = new FlushStatistics();
+    }
+
+    @Test
+    void flushLatencyFirst() {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new RedisFlushHandler(FlushPolicy.LATENCY_FIRST, null, flushStatistics, RedisFlushHandler.DEFAULT_MAX_DEFERRED_FLUSHES));
+
+        try {
+            channel.write(newBuffer());
+            channel.flush();
+
+            assertEquals(1, channel.outboundMessages().size());
+            assertEquals(1, flushStatistics.getFlushesRequested());
+            assertEquals(1, flushStatistics.getFlushesPerformed());
+            assertEquals(0, flushStatistics.getFlushesSaved());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void flushThroughputFirst() {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new RedisFlushHandler(FlushPolicy.THROUGHPUT_FIRST, null, flushStatistics, RedisFlushHandler.DEFAULT_MAX_DEFERRED_FLUSHES));
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                channel.write(newBuffer());
+            }
+
+            for (int i = 0; i < 3; i++) {
+                channel.flush();
+            }
+
+            // Nothing should go out until the event loop gets around to the consolidated flush
+            assertTrue(channel.outboundMessages().isEmpty());
+
+            channel.runPendingTasks();
+
+            assertEquals(3, channel.outboundMessages().size());
+            assertEquals(3, flushStatistics.getFlushesRequested());
+            assertEquals(1, flushStatistics.getFlushesPerformed());
+            assertEquals(2, flushStatistics.getFlushesSaved());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void flushMaxDeferredFlushes() {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new RedisFlushHandler(FlushPolicy.THROUGHPUT_FIRST, null, flushStatistics, 2));
+
+        try {
+            channel.write(newBuffer());
+            channel.flush();
+
+            assertTrue(channel.outboundMessages().isEmpty());
+
+            channel.write(newBuffer());
+            channel.flush();
+
+            assertEquals(2, channel.outboundMessages().size());
+            assertEquals(1, flushStatistics.getFlushesPerformed());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void flushDuringRead() {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new RedisFlushHandler(FlushPolicy.LATENCY_FIRST, null, flushStatistics, RedisFlushHandler.DEFAULT_MAX_DEFERRED_FLUSHES),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(final ChannelHandlerContext context, final Object message) {
+                        ReferenceCountUtil.release(message);
+                        context.writeAndFlush(newBuffer());
+                    }
+                });
+
+        try {
+            // Even latency-first handlers should hold flushes until the read is complete
+            channel.writeInbound(newBuffer(), newBuffer(), newBuffer());
+
+            assertEquals(3, channel.outboundMessages().size());
+            assertEquals(3, flushStatistics.getFlushesRequested());
+            assertEquals(1, flushStatistics.getFlushesPerformed());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void shouldDeferFlushAdaptive() {
+        {
+            final RedisFlushHandler flushHandler =
+                    new RedisFlushHandler(FlushPolicy.ADAPTIVE, new ReplyTracker(), flushStatistics, RedisFlushHandler.DEFAULT_MAX_DEFERRED_FLUSHES);
+
+            long nanoTime = 1;
+
+            // Light, widely-spaced traffic shouldn't be held back
+            for (int i = 0; i < 16; i++) {
+                assertFalse(flushHandler.shouldDeferFlush(nanoTime));
+                nanoTime += TimeUnit.MILLISECONDS.toNanos(1);
+            }
+
+            // ...but a burst of rapid-fire flushes should eventually be consolidated
+            boolean deferred = false;
+
+            for (int i = 0; i < 64 && !deferred; i++) {
+                nanoTime += TimeUnit.MICROSECONDS.toNanos(1);
+                deferred = flushHandler.shouldDeferFlush(nanoTime);
+            }
+
+            assertTrue(deferred);
+        }
+
+        {
+            final ReplyTracker replyTracker = new ReplyTracker();
+            final RedisFlushHandler flushHandler =
+                    new RedisFlushHandler(FlushPolicy.ADAPTIVE, replyTracker, flushStatistics, RedisFlushHandler.DEFAULT_MAX_DEFERRED_FLUSHES);
+
+            replyTracker.handleCommandWritten(new RedisCommand("PING"));
+            assertFalse(flushHandler.shouldDeferFlush(1));
+
+            // With commands already awaiting replies, we know the channel is busy
+            replyTracker.handleCommandWritten(new RedisCommand("PING"));
+            assertTrue(flushHandler.shouldDeferFlush(TimeUnit.SECONDS.toNanos(1)));
+
+            replyTracker.handleReplyStarted();
+            assertFalse(flushHandler.shouldDeferFlush(TimeUnit.SECONDS.toNanos(2)));
+        }
+    }
+
+    private static ByteBuf newBuffer() {
+        return Unpooled.wrappedBuffer(new byte[] { '+', 'O', 'K', '\r', '\n' });
+    }
+}
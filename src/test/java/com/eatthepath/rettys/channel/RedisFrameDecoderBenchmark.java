@@ -0,0 +1,74 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of finding frame boundaries with {@link RedisFrameDecoder}, both for complete frames and for frames
+ * that arrive across many small reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisFrameDecoderBenchmark {
+
+    @Param({"SIMPLE_STRING", "INTEGER", "BULK_STRING_1K", "BULK_STRING_1M", "DEEP_ARRAY", "WIDE_ARRAY"})
+    public RedisPayload payload;
+
+    private static final int FRAGMENT_SIZE = 512;
+
+    private RedisFrameDecoder frameDecoder;
+    private ByteBuf frame;
+    private List<ByteBuf> fragments;
+
+    @Setup
+    public void setUp() {
+        frameDecoder = new RedisFrameDecoder();
+        frame = Unpooled.directBuffer(payload.getBytes().length).writeBytes(payload.getBytes());
+
+        fragments = new ArrayList<>();
+
+        for (int offset = 0; offset < frame.readableBytes(); offset += FRAGMENT_SIZE) {
+            fragments.add(frame.retainedSlice(offset, Math.min(FRAGMENT_SIZE, frame.readableBytes() - offset)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fragments.forEach(ByteBuf::release);
+        frame.release();
+    }
+
+    @Benchmark
+    public int getLengthOfNextFrame() throws IOException {
+        frame.readerIndex(0);
+        return frameDecoder.getLengthOfNextFrame(frame);
+    }
+
+    @Benchmark
+    public void decodeFragmented(final Blackhole blackhole) {
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisFrameDecoder());
+
+        for (final ByteBuf fragment : fragments) {
+            channel.writeInbound(fragment.retainedDuplicate());
+
+            for (ByteBuf decodedFrame = channel.readInbound(); decodedFrame != null; decodedFrame = channel.readInbound()) {
+                blackhole.consume(decodedFrame);
+                decodedFrame.release();
+            }
+        }
+
+        channel.finishAndReleaseAll();
+    }
+}
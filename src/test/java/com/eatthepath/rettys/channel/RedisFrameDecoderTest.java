@@ -112,6 +112,17 @@ class RedisFrameDecoderTest {
         }
     }
 
+    @Test
+    void getLengthOfNextFrameIncompleteArrayElement() {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer("*2\r\n$10\r\nfoo".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            assertThrows(IndexOutOfBoundsException.class, () -> redisFrameDecoder.getLengthOfNextFrame(byteBuf));
+        } finally {
+            byteBuf.release();
+        }
+    }
+
     @Test
     void getLengthOfNextFrameBogusData() {
         final ByteBuf byteBuf = Unpooled.wrappedBuffer("Illegal Redis frame".getBytes(StandardCharsets.US_ASCII));
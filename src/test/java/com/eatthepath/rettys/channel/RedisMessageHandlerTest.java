@@ -42,6 +42,33 @@ class RedisMessageHandlerTest {
         verify(messageConsumer).consumeMessage(context.channel(), redisResponse);
     }
 
+    @Test
+    void handleReadComplete() {
+        messageHandler.channelReadComplete(context);
+
+        verify(messageConsumer).handleReadComplete(context.channel());
+        verify(context).fireChannelReadComplete();
+    }
+
+    @Test
+    void handlePushMessage() {
+        final RedisPushConsumer pushConsumer = mock(RedisPushConsumer.class);
+        final RedisMessageHandler pushMessageHandler = new RedisMessageHandler(messageConsumer, pushConsumer);
+
+        final RedisPushMessage pushMessage = new RedisPushMessage(new Object[] { "invalidate".getBytes() });
+
+        pushMessageHandler.channelRead(context, pushMessage);
+
+        verify(pushConsumer).consumePushMessage(context.channel(), pushMessage);
+        verifyNoInteractions(messageConsumer);
+    }
+
+    @Test
+    void handleNullResponse() {
+        messageHandler.channelRead(context, RedisResponseDecoder.NULL_RESPONSE);
+        verify(messageConsumer).consumeMessage(context.channel(), null);
+    }
+
     @Test
     void channelInactiveBeforeReply() {
         messageHandler.channelInactive(context);
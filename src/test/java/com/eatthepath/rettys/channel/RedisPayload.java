@@ -0,0 +1,93 @@
+package com.eatthepath.rettys.channel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A set of representative RESP2 replies for codec benchmarks.
+ */
+public enum RedisPayload {
+
+    /**
+     * A simple "+OK" status reply.
+     */
+    SIMPLE_STRING("+OK\r\n".getBytes(StandardCharsets.US_ASCII)),
+
+    /**
+     * An integer reply with a handful of digits.
+     */
+    INTEGER(":1234567\r\n".getBytes(StandardCharsets.US_ASCII)),
+
+    /**
+     * A 1 KB bulk string.
+     */
+    BULK_STRING_1K(bulkString(1024)),
+
+    /**
+     * A 1 MB bulk string.
+     */
+    BULK_STRING_1M(bulkString(1024 * 1024)),
+
+    /**
+     * An array nested 32 levels deep, with a single integer at the bottom.
+     */
+    DEEP_ARRAY(deepArray(32)),
+
+    /**
+     * An array of 1,000 short bulk strings, like the reply to a large {@code MGET} or {@code LRANGE}.
+     */
+    WIDE_ARRAY(wideArray(1000, 16));
+
+    private final byte[] bytes;
+
+    RedisPayload(final byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the encoded reply. Callers must not modify the returned array.
+     *
+     * @return the encoded reply
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    private static byte[] bulkString(final int length) {
+        final byte[] header = ("$" + length + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        final byte[] bulkString = new byte[header.length + length + 2];
+
+        System.arraycopy(header, 0, bulkString, 0, header.length);
+        Arrays.fill(bulkString, header.length, header.length + length, (byte) 'x');
+
+        bulkString[bulkString.length - 2] = '\r';
+        bulkString[bulkString.length - 1] = '\n';
+
+        return bulkString;
+    }
+
+    private static byte[] deepArray(final int depth) {
+        final StringBuilder stringBuilder = new StringBuilder();
+
+        for (int i = 0; i < depth; i++) {
+            stringBuilder.append("*1\r\n");
+        }
+
+        stringBuilder.append(":1\r\n");
+
+        return stringBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] wideArray(final int width, final int elementLength) {
+        final char[] element = new char[elementLength];
+        Arrays.fill(element, 'x');
+
+        final StringBuilder stringBuilder = new StringBuilder("*").append(width).append("\r\n");
+
+        for (int i = 0; i < width; i++) {
+            stringBuilder.append('$').append(elementLength).append("\r\n").append(element).append("\r\n");
+        }
+
+        return stringBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,43 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of parsing '\r\n'-terminated integers (as found in integer replies and in array and bulk string
+ * headers) with {@link RedisProtocolUtil#readInteger(ByteBuf)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisProtocolUtilBenchmark {
+
+    @Param({"0", "1024", "1234567", "-9223372036854775808"})
+    public String integer;
+
+    private ByteBuf byteBuf;
+
+    @Setup
+    public void setUp() {
+        final byte[] bytes = (integer + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byteBuf = Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        byteBuf.release();
+    }
+
+    @Benchmark
+    public long readInteger() {
+        byteBuf.readerIndex(0);
+        return RedisProtocolUtil.readInteger(byteBuf);
+    }
+}
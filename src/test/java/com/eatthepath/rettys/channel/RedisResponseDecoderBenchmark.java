@@ -0,0 +1,95 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass {@link RedisResponseDecoder} to the combination of a {@link RedisFrameDecoder} and a
+ * {@link RedisValueDecoder} when decoding pipelined array replies that arrive across many reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisResponseDecoderBenchmark {
+
+    @Param({"10", "1000"})
+    public int arrayLength;
+
+    @Param({"1024", "16384"})
+    public int readSize;
+
+    private static final int PIPELINED_REPLY_COUNT = 16;
+    private static final int ELEMENT_LENGTH = 32;
+
+    private List<ByteBuf> reads;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder elementBuilder = new StringBuilder(ELEMENT_LENGTH);
+
+        for (int i = 0; i < ELEMENT_LENGTH; i++) {
+            elementBuilder.append('x');
+        }
+
+        final StringBuilder replyBuilder = new StringBuilder();
+
+        for (int reply = 0; reply < PIPELINED_REPLY_COUNT; reply++) {
+            replyBuilder.append('*').append(arrayLength).append("\r\n");
+
+            for (int element = 0; element < arrayLength; element++) {
+                replyBuilder.append('$').append(ELEMENT_LENGTH).append("\r\n").append(elementBuilder).append("\r\n");
+            }
+        }
+
+        final ByteBuf replies = Unpooled.wrappedBuffer(replyBuilder.toString().getBytes(StandardCharsets.US_ASCII));
+
+        reads = new ArrayList<>();
+
+        while (replies.isReadable()) {
+            reads.add(replies.readRetainedSlice(Math.min(readSize, replies.readableBytes())));
+        }
+
+        replies.release();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reads.forEach(ByteBuf::release);
+    }
+
+    @Benchmark
+    public void frameAndValueDecoders(final Blackhole blackhole) {
+        decode(blackhole, new RedisFrameDecoder(), new RedisValueDecoder());
+    }
+
+    @Benchmark
+    public void responseDecoder(final Blackhole blackhole) {
+        decode(blackhole, new RedisResponseDecoder());
+    }
+
+    private void decode(final Blackhole blackhole, final ChannelHandler... handlers) {
+        final EmbeddedChannel channel = new EmbeddedChannel(handlers);
+
+        for (final ByteBuf read : reads) {
+            channel.writeInbound(read.retainedDuplicate());
+
+            for (Object value = channel.readInbound(); value != null; value = channel.readInbound()) {
+                blackhole.consume(value);
+            }
+        }
+
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,515 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisException;
+import com.eatthepath.rettys.RedisMetricsRecorder;
+import com.eatthepath.rettys.RedisPushMessage;
+import com.eatthepath.rettys.RedisReplyVisitor;
+import com.eatthepath.rettys.RedisValues;
+import com.eatthepath.rettys.StreamingRedisCommand;
+import com.eatthepath.rettys.TypedRedisCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class RedisResponseDecoderTest {
+
+    private RedisResponseDecoder redisResponseDecoder;
+
+    @BeforeEach
+    void beforeEach() {
+        redisResponseDecoder = new RedisResponseDecoder();
+    }
+
+    @ParameterizedTest
+    @MethodSource("redisValueProvider")
+    void decode(final String frameString, final Object expectedValue) throws Exception {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer(frameString.getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            final List<Object> out = new ArrayList<>();
+            redisResponseDecoder.decode(null, byteBuf, out);
+
+            assertEquals(1, out.size());
+            assertRedisValueEquals(expectedValue, unwrapNull(out.get(0)));
+            assertFalse(byteBuf.isReadable());
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("redisValueProvider")
+    void decodeFragmented(final String frameString, final Object expectedValue) {
+        final EmbeddedChannel channel = new EmbeddedChannel(redisResponseDecoder);
+
+        try {
+            final byte[] frameBytes = frameString.getBytes(StandardCharsets.US_ASCII);
+
+            // Deliver the frame one byte at a time to make sure we can resume parsing from any position
+            for (final byte b : frameBytes) {
+                channel.writeInbound(Unpooled.wrappedBuffer(new byte[] { b }));
+            }
+
+            assertRedisValueEquals(expectedValue, unwrapNull(channel.readInbound()));
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeMultipleValues() throws Exception {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer(
+                "+OK\r\n:12\r\n*2\r\n*1\r\n$3\r\nfoo\r\n$-1\r\n+PARTIAL".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            final List<Object> out = new ArrayList<>();
+            redisResponseDecoder.decode(null, byteBuf, out);
+
+            assertEquals(3, out.size());
+            assertEquals("OK", out.get(0));
+            assertEquals(12L, out.get(1));
+            assertRedisValueEquals(new Object[] { new Object[] { "foo".getBytes(StandardCharsets.US_ASCII) }, null }, out.get(2));
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @Test
+    void decodeReportsBytesDecoded() {
+        final RedisMetricsRecorder metricsRecorder = new RedisMetricsRecorder();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, null, metricsRecorder));
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer("+OK\r\n:1".getBytes(StandardCharsets.US_ASCII)));
+            channel.writeInbound(Unpooled.wrappedBuffer("2\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+            assertEquals("+OK\r\n:12\r\n".length(), metricsRecorder.getBytesDecoded());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeZeroCopyBulkStrings() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(true, null));
+        final ByteBuf in = Unpooled.wrappedBuffer("*2\r\n$3\r\nfoo\r\n$3\r\nbar\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            channel.writeInbound(in.retain());
+
+            final Object[] array = channel.readInbound();
+
+            assertEquals(2, array.length);
+
+            final ByteBuf foo = (ByteBuf) array[0];
+            final ByteBuf bar = (ByteBuf) array[1];
+
+            assertTrue(foo.isReadOnly());
+            assertEquals("foo", foo.toString(StandardCharsets.US_ASCII));
+            assertEquals("bar", bar.toString(StandardCharsets.US_ASCII));
+
+            // The decoded bulk strings are views of the original buffer, which must stay alive until they're released
+            assertEquals(3, in.refCnt());
+
+            RedisValues.release(array);
+            assertEquals(1, in.refCnt());
+        } finally {
+            channel.finishAndReleaseAll();
+            in.release();
+        }
+    }
+
+    @Test
+    void decodeZeroCopyBulkStringsIncompleteArray() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(true, null));
+        final ByteBuf in = Unpooled.wrappedBuffer("*2\r\n$3\r\nfoo\r\n$3\r\nba".getBytes(StandardCharsets.US_ASCII));
+
+        channel.writeInbound(in.retain());
+        assertNull(channel.readInbound());
+
+        // Closing the channel should release elements of arrays that will never be completed
+        channel.finishAndReleaseAll();
+        assertEquals(1, in.refCnt());
+
+        in.release();
+    }
+
+    @Test
+    void decodeStreamingReply() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        final List<Object> elements = new ArrayList<>();
+
+        replyTracker.handleCommandWritten(new RedisCommand("LRANGE", "first", 0, -1));
+        replyTracker.handleCommandWritten(new StreamingRedisCommand(elements::add, "LRANGE", "second", 0, -1));
+        replyTracker.handleCommandWritten(new RedisCommand("LRANGE", "third", 0, -1));
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer("*1\r\n$3\r\nfoo\r\n*3\r\n$3\r\nbar\r\n*1\r\n:".getBytes(StandardCharsets.US_ASCII)));
+
+            assertRedisValueEquals(new Object[] { "foo".getBytes(StandardCharsets.US_ASCII) }, channel.readInbound());
+
+            // We should have received the first element of the streaming reply before the rest of the reply arrived
+            assertNull(channel.readInbound());
+            assertEquals(1, elements.size());
+            assertRedisValueEquals("bar".getBytes(StandardCharsets.US_ASCII), elements.get(0));
+
+            channel.writeInbound(Unpooled.wrappedBuffer("7\r\n+OK\r\n*0\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+            assertEquals(3L, (Long) channel.readInbound());
+            assertEquals(3, elements.size());
+            assertRedisValueEquals(new Object[] { 7L }, elements.get(1));
+            assertEquals("OK", elements.get(2));
+
+            assertRedisValueEquals(new Object[0], channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeStreamingReplyError() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        replyTracker.handleCommandWritten(new StreamingRedisCommand(element -> fail("Unexpected element"), "LRANGE", "string", 0, -1));
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer("-WRONGTYPE Wrong type\r\n".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(new RedisException("WRONGTYPE Wrong type"), channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeTypedReply() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        replyTracker.handleCommandWritten(new RedisCommand("GET", "first"));
+        replyTracker.handleCommandWritten(new TypedRedisCommand<>(EventRecordingVisitor::new, "EXAMPLE"));
+        replyTracker.handleCommandWritten(new RedisCommand("GET", "third"));
+
+        try {
+            final byte[] replyBytes = ("$3\r\nfoo\r\n" +
+                    "*6\r\n$3\r\nbar\r\n:-7\r\n$-1\r\n+OK\r\n-ERR nested\r\n*2\r\n*0\r\n%1\r\n,1.5\r\n#t\r\n" +
+                    "$3\r\nbaz\r\n").getBytes(StandardCharsets.US_ASCII);
+
+            // Deliver the replies one byte at a time to make sure we only report complete values to the visitor
+            for (final byte b : replyBytes) {
+                channel.writeInbound(Unpooled.wrappedBuffer(new byte[] { b }));
+            }
+
+            assertRedisValueEquals("foo".getBytes(StandardCharsets.US_ASCII), channel.readInbound());
+            assertEquals(Arrays.asList("array 6", "bulk bar", "integer -7", "null", "simple OK", "error ERR nested",
+                    "array 2", "array 0", "end", "map 1", "double 1.5", "boolean true", "end", "end", "end"),
+                    channel.readInbound());
+            assertRedisValueEquals("baz".getBytes(StandardCharsets.US_ASCII), channel.readInbound());
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeTypedReplyWithAttribute() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        replyTracker.handleCommandWritten(new TypedRedisCommand<>(EventRecordingVisitor::new, "EXAMPLE"));
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(
+                    "|1\r\n+key-popularity\r\n*1\r\n:7\r\n*2\r\n:1\r\n|1\r\n+ttl\r\n:3\r\n:2\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+            assertEquals(Arrays.asList("array 2", "integer 1", "integer 2", "end"), channel.readInbound());
+            assertNull(channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeTypedReplyError() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        replyTracker.handleCommandWritten(new TypedRedisCommand<>(EventRecordingVisitor::new, "EXAMPLE"));
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer("-WRONGTYPE Wrong type\r\n".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(new RedisException("WRONGTYPE Wrong type"), channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeTypedReplyVisitorFailure() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        // This visitor only expects integers
+        replyTracker.handleCommandWritten(new TypedRedisCommand<>(() -> new RedisReplyVisitor<Long>() {
+            @Override
+            public void visitInteger(final long value) {
+            }
+
+            @Override
+            public Long getResult() {
+                return 0L;
+            }
+        }, "EXAMPLE"));
+
+        replyTracker.handleCommandWritten(new RedisCommand("GET", "second"));
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer("*2\r\n$3\r\nfoo\r\n:7\r\n+OK\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+            assertTrue(channel.readInbound() instanceof IllegalArgumentException);
+
+            // The decoder should still be in sync with the server
+            assertEquals("OK", channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void decodeInsufficientData() throws Exception {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer("*2\r\n$3\r\nfoo\r\n$3\r\nba".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            final List<Object> out = new ArrayList<>();
+            redisResponseDecoder.decode(null, byteBuf, out);
+
+            assertTrue(out.isEmpty());
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @Test
+    void decodeBogusData() {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer("Illegal Redis frame".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            assertThrows(IOException.class, () -> redisResponseDecoder.decode(null, byteBuf, new ArrayList<>()));
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @Test
+    void decodeBogusInteger() {
+        final EmbeddedChannel channel = new EmbeddedChannel(redisResponseDecoder);
+
+        try {
+            assertThrows(DecoderException.class,
+                    () -> channel.writeInbound(Unpooled.wrappedBuffer(":12x\r\n".getBytes(StandardCharsets.US_ASCII))));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            ":9223372036854775808\r\n",
+            ":-9223372036854775809\r\n",
+            ":100000000000000000000\r\n",
+            "$4294967297\r\n",
+            "$2147483648\r\n",
+            "*2147483648\r\n",
+            "%1073741824\r\n",
+            "%9223372036854775807\r\n" })
+    void decodeOversizedInteger(final String frame) {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer(frame.getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            assertThrows(IOException.class, () -> redisResponseDecoder.decode(null, byteBuf, new ArrayList<>()));
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @Test
+    void decodeExtremeIntegers() {
+        final EmbeddedChannel channel = new EmbeddedChannel(redisResponseDecoder);
+
+        try {
+            assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(
+                    ":9223372036854775807\r\n:-9223372036854775808\r\n".getBytes(StandardCharsets.US_ASCII))));
+
+            assertEquals(Long.MAX_VALUE, (Long) channel.readInbound());
+            assertEquals(Long.MIN_VALUE, (Long) channel.readInbound());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    static Stream<Arguments> redisValueProvider() {
+        return Stream.of(
+                arguments("+OK\r\n", "OK"),
+                arguments("-Error message\r\n", new RedisException("Error message")),
+                arguments(":1000\r\n", 1000L),
+                arguments(":-9223372036854775807\r\n", -Long.MAX_VALUE),
+                arguments("$6\r\nfoobar\r\n", "foobar".getBytes(StandardCharsets.US_ASCII)),
+                arguments("$0\r\n\r\n", new byte[0]),
+                arguments("$-1\r\n", null),
+                arguments("*0\r\n", new Object[0]),
+                arguments("*2\r\n$3\r\nfoo\r\n$3\r\nbar\r\n", new Object[] { "foo".getBytes(StandardCharsets.US_ASCII), "bar".getBytes(StandardCharsets.US_ASCII) }),
+                arguments("*3\r\n:1\r\n*2\r\n+OK\r\n*0\r\n$-1\r\n", new Object[] { 1L, new Object[] { "OK", new Object[0] }, null }),
+                arguments("*-1\r\n", null),
+                arguments("_\r\n", null),
+                arguments(",1.5\r\n", 1.5),
+                arguments(",-inf\r\n", Double.NEGATIVE_INFINITY),
+                arguments("#t\r\n", true),
+                arguments("#f\r\n", false),
+                arguments("(3492890328409238509324850943850943825024385\r\n", new BigInteger("3492890328409238509324850943850943825024385")),
+                arguments("!21\r\nSYNTAX invalid syntax\r\n", new RedisException("SYNTAX invalid syntax")),
+                arguments("=15\r\ntxt:Some string\r\n", "Some string"),
+                arguments("~3\r\n+a\r\n:1\r\n#f\r\n", new LinkedHashSet<>(Arrays.asList("a", 1L, false))),
+                arguments("%2\r\n+first\r\n:1\r\n+second\r\n_\r\n", buildMap("first", 1L, "second", null)),
+                arguments("|1\r\n+key-popularity\r\n%1\r\n$1\r\na\r\n,0.1923\r\n*2\r\n:1\r\n:2\r\n", new Object[] { 1L, 2L }),
+                arguments("*2\r\n|1\r\n+ttl\r\n:3600\r\n+OK\r\n:2\r\n", new Object[] { "OK", 2L })
+        );
+    }
+
+    @Test
+    void decodePushMessage() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(false, replyTracker));
+
+        final List<Object> elements = new ArrayList<>();
+        replyTracker.handleCommandWritten(new StreamingRedisCommand(elements::add, "SMEMBERS", "set"));
+
+        try {
+            // Push messages aren't replies, and so the following set is the reply to the streaming command
+            channel.writeInbound(Unpooled.wrappedBuffer(
+                    ">3\r\n$7\r\nmessage\r\n$7\r\nchannel\r\n$5\r\nhello\r\n~1\r\n+a\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+            final RedisPushMessage pushMessage = channel.readInbound();
+
+            assertEquals("message", pushMessage.getKind());
+            assertEquals(3, pushMessage.getElements().length);
+
+            assertEquals(1L, (Long) channel.readInbound());
+            assertEquals(Collections.singletonList("a"), elements);
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private static Map<Object, Object> buildMap(final Object... keysAndValues) {
+        final Map<Object, Object> map = new LinkedHashMap<>();
+
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+
+        return map;
+    }
+
+    private static Object unwrapNull(final Object value) {
+        assertNotNull(value);
+        return value != RedisResponseDecoder.NULL_RESPONSE ? value : null;
+    }
+
+    /**
+     * A reply visitor that produces a list of descriptions of the events it visited.
+     */
+    private static class EventRecordingVisitor implements RedisReplyVisitor<List<String>> {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void visitSimpleString(final ByteBuf buffer, final int index, final int length) {
+            events.add("simple " + buffer.toString(index, length, StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void visitError(final ByteBuf buffer, final int index, final int length) {
+            events.add("error " + buffer.toString(index, length, StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void visitInteger(final long value) {
+            events.add("integer " + value);
+        }
+
+        @Override
+        public void visitBulkString(final ByteBuf buffer, final int index, final int length) {
+            events.add("bulk " + buffer.toString(index, length, StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void visitNull() {
+            events.add("null");
+        }
+
+        @Override
+        public void visitArrayStart(final int length) {
+            events.add("array " + length);
+        }
+
+        @Override
+        public void visitArrayEnd() {
+            events.add("end");
+        }
+
+        @Override
+        public void visitDouble(final double value) {
+            events.add("double " + value);
+        }
+
+        @Override
+        public void visitBoolean(final boolean value) {
+            events.add("boolean " + value);
+        }
+
+        @Override
+        public void visitMapStart(final int pairs) {
+            events.add("map " + pairs);
+        }
+
+        @Override
+        public void visitMapEnd() {
+            events.add("end");
+        }
+
+        @Override
+        public List<String> getResult() {
+            return events;
+        }
+    }
+
+    private static void assertRedisValueEquals(final Object expectedValue, final Object actualValue) {
+        // We need to do some special-case comparisons for primitive arrays
+        if (expectedValue instanceof byte[]) {
+            assertArrayEquals((byte[]) expectedValue, (byte[]) actualValue);
+        } else if (expectedValue instanceof Object[]) {
+            assertArrayEquals((Object[]) expectedValue, (Object[]) actualValue);
+        } else {
+            assertEquals(expectedValue, actualValue);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisMessageConsumer;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class RedisTransportTest {
+
+    @Test
+    void getPreferredTransport() {
+        assertTrue(RedisTransport.NIO.isAvailable());
+        assertTrue(RedisTransport.getPreferredTransport().isAvailable());
+    }
+
+    @Test
+    void forEventLoopGroupNio() throws InterruptedException {
+        final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+
+        try {
+            assertEquals(RedisTransport.NIO, RedisTransport.forEventLoopGroup(eventLoopGroup));
+            assertEquals(RedisTransport.NIO, RedisTransport.forEventLoopGroup(eventLoopGroup.next()));
+
+            assertEquals(NioSocketChannel.class, RedisTransport.NIO.getChannelClass(new InetSocketAddress("localhost", 6379)));
+            assertFalse(RedisTransport.NIO.supportsDomainSockets());
+            assertThrows(IllegalArgumentException.class,
+                    () -> RedisTransport.NIO.getChannelClass(new DomainSocketAddress("/tmp/redis.sock")));
+        } finally {
+            eventLoopGroup.shutdownGracefully().await();
+        }
+    }
+
+    @Test
+    void forEventLoopGroupEpoll() throws InterruptedException {
+        assumeTrue(RedisTransport.EPOLL.isAvailable());
+
+        final EventLoopGroup eventLoopGroup = RedisTransport.EPOLL.newEventLoopGroup(1);
+
+        try {
+            assertTrue(eventLoopGroup instanceof EpollEventLoopGroup);
+            assertEquals(RedisTransport.EPOLL, RedisTransport.forEventLoopGroup(eventLoopGroup));
+            assertEquals(RedisTransport.EPOLL, RedisTransport.forEventLoopGroup(eventLoopGroup.next()));
+
+            assertTrue(RedisTransport.EPOLL.supportsDomainSockets());
+            assertEquals(EpollDomainSocketChannel.class,
+                    RedisTransport.EPOLL.getChannelClass(new DomainSocketAddress("/tmp/redis.sock")));
+        } finally {
+            eventLoopGroup.shutdownGracefully().await();
+        }
+    }
+
+    @Test
+    void connectDomainSocket(@TempDir final Path tempDirectory) throws Exception {
+        assumeTrue(RedisTransport.EPOLL.isAvailable());
+
+        final EventLoopGroup eventLoopGroup = RedisTransport.EPOLL.newEventLoopGroup(1);
+        final DomainSocketAddress address = new DomainSocketAddress(tempDirectory.resolve("redis.sock").toFile());
+
+        try {
+            // A stand-in server that answers every read with a simple string
+            final Channel serverChannel = new ServerBootstrap()
+                    .group(eventLoopGroup)
+                    .channel(EpollServerDomainSocketChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(final ChannelHandlerContext context, final Object message) {
+                            ((ByteBuf) message).release();
+                            context.writeAndFlush(Unpooled.copiedBuffer("+PONG\r\n", StandardCharsets.US_ASCII));
+                        }
+                    })
+                    .bind(address).sync().channel();
+
+            try {
+                final CompletableFuture<Object> replyFuture = new CompletableFuture<>();
+
+                final RedisChannelFactory channelFactory =
+                        new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, false);
+
+                final Channel channel = channelFactory.createChannel(address, new RedisMessageConsumer() {
+                    @Override
+                    public void consumeMessage(final Channel source, final Object message) {
+                        replyFuture.complete(message);
+                    }
+
+                    @Override
+                    public void handleChannelClosure(final Channel channel) {
+                    }
+                }).sync().channel();
+
+                assertTrue(channel instanceof EpollDomainSocketChannel);
+
+                channel.writeAndFlush(new RedisCommand("PING"));
+                assertEquals("PONG", replyFuture.get(5, TimeUnit.SECONDS));
+
+                channel.close().sync();
+            } finally {
+                serverChannel.close().sync();
+            }
+        } finally {
+            eventLoopGroup.shutdownGracefully().await();
+        }
+    }
+}
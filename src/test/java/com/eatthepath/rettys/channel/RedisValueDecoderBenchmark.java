@@ -0,0 +1,43 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of parsing complete frames as Java values with {@link RedisValueDecoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisValueDecoderBenchmark {
+
+    @Param({"SIMPLE_STRING", "INTEGER", "BULK_STRING_1K", "BULK_STRING_1M", "DEEP_ARRAY", "WIDE_ARRAY"})
+    public RedisPayload payload;
+
+    private RedisValueDecoder valueDecoder;
+    private ByteBuf frame;
+
+    @Setup
+    public void setUp() {
+        valueDecoder = new RedisValueDecoder();
+        frame = Unpooled.directBuffer(payload.getBytes().length).writeBytes(payload.getBytes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public Object parseNextValue() throws IOException {
+        frame.readerIndex(0);
+        return valueDecoder.parseNextValue(frame);
+    }
+}
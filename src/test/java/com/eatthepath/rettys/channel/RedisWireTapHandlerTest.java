@@ -0,0 +1,59 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class RedisWireTapHandlerTest {
+
+    @ParameterizedTest
+    @MethodSource("previewProvider")
+    void appendPreview(final byte[] frame, final int maxPreviewBytes, final String expectedPreview) {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer(frame);
+        final StringBuilder stringBuilder = new StringBuilder();
+
+        try {
+            RedisWireTapHandler.appendPreview(byteBuf, maxPreviewBytes, stringBuilder);
+
+            assertEquals(expectedPreview, stringBuilder.toString());
+
+            // Previewing a frame shouldn't consume it
+            assertEquals(frame.length, byteBuf.readableBytes());
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    static Stream<Arguments> previewProvider() {
+        return Stream.of(
+                arguments("+OK\r\n".getBytes(StandardCharsets.US_ASCII), 64, "+OK\\r\\n"),
+                arguments("$5\r\nhe\tl\\o\r\n".getBytes(StandardCharsets.US_ASCII), 64, "$5\\r\\nhe\\tl\\x5co\\r\\n"),
+                arguments(new byte[] { '$', '2', '\r', '\n', 0, (byte) 0xff, '\r', '\n' }, 64, "$2\\r\\n\\x00\\xff\\r\\n"),
+                arguments("$11\r\nhello world\r\n".getBytes(StandardCharsets.US_ASCII), 8, "$11\\r\\nhel... (10 more bytes)"),
+                arguments("+OK\r\n".getBytes(StandardCharsets.US_ASCII), 0, "... (5 more bytes)"));
+    }
+
+    @Test
+    void appendPreviewSlice() {
+        final ByteBuf byteBuf = Unpooled.wrappedBuffer("+OK\r\n:1\r\n".getBytes(StandardCharsets.US_ASCII));
+        final StringBuilder stringBuilder = new StringBuilder();
+
+        try {
+            byteBuf.skipBytes(5);
+            RedisWireTapHandler.appendPreview(byteBuf, 64, stringBuilder);
+
+            assertEquals(":1\\r\\n", stringBuilder.toString());
+        } finally {
+            byteBuf.release();
+        }
+    }
+}
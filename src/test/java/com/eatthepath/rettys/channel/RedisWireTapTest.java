@@ -0,0 +1,77 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisWireTapTest {
+
+    @Test
+    void installAndRemove() {
+        final List<String> previews = new ArrayList<>();
+        final RedisWireTap wireTap = new RedisWireTap(100, 64,
+                (channel, direction, frameLength, preview) -> previews.add(direction + " " + frameLength + " " + preview));
+
+        final EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder());
+
+        try {
+            assertFalse(RedisWireTap.removeFrom(channel));
+
+            channel.writeInbound(Unpooled.wrappedBuffer("+OK\r\n".getBytes(StandardCharsets.US_ASCII)));
+            assertTrue(previews.isEmpty());
+
+            wireTap.install(channel);
+
+            channel.writeInbound(Unpooled.wrappedBuffer(":12\r\n".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(List.of("READ 5 :12\\r\\n"), previews);
+
+            // Installing a wire tap a second time should replace the first instead of adding another
+            wireTap.install(channel);
+
+            channel.writeOutbound(Unpooled.wrappedBuffer("*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(List.of("READ 5 :12\\r\\n", "WRITE 14 *1\\r\\n$4\\r\\nPING\\r\\n"), previews);
+
+            assertTrue(RedisWireTap.removeFrom(channel));
+
+            channel.writeInbound(Unpooled.wrappedBuffer("+OK\r\n".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(2, previews.size());
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void installWithoutDecoder() {
+        final EmbeddedChannel channel = new EmbeddedChannel();
+
+        try {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new RedisWireTap(1, 1, (channel1, direction, frameLength, preview) -> {}).install(channel));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void trySample() {
+        final RedisWireTap wireTap = new RedisWireTap(2, 16, (channel, direction, frameLength, preview) -> {});
+        final long start = TimeUnit.SECONDS.toNanos(10);
+
+        assertTrue(wireTap.trySample(start));
+        assertTrue(wireTap.trySample(start + 1));
+        assertFalse(wireTap.trySample(start + 2));
+        assertFalse(wireTap.trySample(start + 3));
+
+        assertTrue(wireTap.trySample(start + TimeUnit.SECONDS.toNanos(1)));
+
+        assertEquals(3, wireTap.getSampledFrames());
+        assertEquals(2, wireTap.getSkippedFrames());
+    }
+}
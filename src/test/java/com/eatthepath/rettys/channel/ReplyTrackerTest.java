@@ -0,0 +1,44 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.StreamingRedisCommand;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplyTrackerTest {
+
+    @Test
+    void handleReplyStarted() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final StreamingRedisCommand streamingCommand = new StreamingRedisCommand(element -> {}, "SMEMBERS", "set");
+
+        replyTracker.handleCommandWritten(new RedisCommand("PING"));
+        replyTracker.handleCommandWritten(streamingCommand);
+        replyTracker.handleCommandWritten(new RedisCommand("PING"));
+
+        assertNull(replyTracker.handleReplyStarted());
+        assertSame(streamingCommand, replyTracker.handleReplyStarted());
+        assertNull(replyTracker.handleReplyStarted());
+        assertNull(replyTracker.handleReplyStarted());
+    }
+
+    @Test
+    void handleReplyStartedUnexpectedReplies() {
+        final ReplyTracker replyTracker = new ReplyTracker();
+        final StreamingRedisCommand firstStreamingCommand = new StreamingRedisCommand(element -> {}, "SMEMBERS", "first");
+        final StreamingRedisCommand secondStreamingCommand = new StreamingRedisCommand(element -> {}, "SMEMBERS", "second");
+
+        replyTracker.handleCommandWritten(firstStreamingCommand);
+
+        // A reply we weren't expecting arrives before the reply to the first command
+        assertSame(firstStreamingCommand, replyTracker.handleReplyStarted());
+        assertNull(replyTracker.handleReplyStarted());
+
+        replyTracker.handleCommandWritten(secondStreamingCommand);
+
+        // Replies are now "ahead" of commands, so we'll never see the reply that actually belongs to the second command
+        assertNull(replyTracker.handleReplyStarted());
+        assertNull(replyTracker.handleReplyStarted());
+    }
+}
@@ -0,0 +1,195 @@
+package com.eatthepath.rettys.channel;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A stub Redis server is a small, in-process stand-in for a real Redis server. It answers each command with a
+ * fixed, pre-encoded reply chosen by command name, optionally after a fixed delay, and is meant for tests and load
+ * experiments that need to exercise the whole client (including the network) without depending on a live Redis
+ * server.</p>
+ *
+ * <p>Like a real Redis server, stub servers reply to the commands on each connection in the order in which they
+ * arrived, even if the delays for pipelined commands differ. Stub servers reply to {@code PING} with {@code +PONG} by
+ * default, and to commands with no configured reply with an error.</p>
+ */
+public class StubRedisServer implements AutoCloseable {
+
+    private final Map<String, StubReply> replies = new ConcurrentHashMap<>();
+
+    private EventLoopGroup eventLoopGroup;
+    private Channel serverChannel;
+
+    private static class StubReply {
+        private final ByteBuf reply;
+        private final long delayNanos;
+
+        private StubReply(final String reply, final long delayNanos) {
+            this.reply = Unpooled.unreleasableBuffer(
+                    Unpooled.directBuffer(reply.length()).writeBytes(reply.getBytes(StandardCharsets.UTF_8)));
+
+            this.delayNanos = delayNanos;
+        }
+    }
+
+    public StubRedisServer() {
+        setReply("PING", "+PONG\r\n", 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the reply with which this server answers commands with the given name.
+     *
+     * @param commandName the name of the command (e.g. "GET"); names are case-insensitive
+     * @param reply the complete, RESP-encoded reply (e.g. {@code "$3\r\nbar\r\n"})
+     * @param delay the time to wait before replying
+     * @param timeUnit the time unit for {@code delay}
+     */
+    public void setReply(final String commandName, final String reply, final long delay, final TimeUnit timeUnit) {
+        replies.put(commandName.toUpperCase(Locale.ROOT), new StubReply(reply, timeUnit.toNanos(delay)));
+    }
+
+    /**
+     * Starts this server on an ephemeral port on the loopback interface.
+     *
+     * @return the address on which the server is listening
+     *
+     * @throws InterruptedException if interrupted while waiting for the server to bind to a port
+     */
+    public InetSocketAddress start() throws InterruptedException {
+        eventLoopGroup = new NioEventLoopGroup(1);
+
+        serverChannel = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel channel) {
+                        // Commands are just arrays of bulk strings, which the client's own decoder handles nicely
+                        channel.pipeline().addLast(new RedisResponseDecoder());
+                        channel.pipeline().addLast(new StubRedisServerHandler());
+                    }
+                })
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).sync().channel();
+
+        return (InetSocketAddress) serverChannel.localAddress();
+    }
+
+    /**
+     * Stops this server and waits for it to shut down. If interrupted while waiting, this method keeps waiting and
+     * restores the calling thread's interrupt status before returning.
+     */
+    @Override
+    public void close() {
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly();
+        }
+    }
+
+    private static class DelayedReply {
+        private final ByteBuf reply;
+        private final long replyNanos;
+
+        private DelayedReply(final ByteBuf reply, final long replyNanos) {
+            this.reply = reply;
+            this.replyNanos = replyNanos;
+        }
+    }
+
+    private class StubRedisServerHandler extends ChannelInboundHandlerAdapter {
+
+        // Replies must go out in order, so no reply may be sent before any delayed reply that precedes it
+        private final Queue<DelayedReply> delayedReplies = new ArrayDeque<>();
+        private long lastDelayedReplyNanos = 0;
+
+        @Override
+        public void channelRead(final ChannelHandlerContext context, final Object message) {
+            try {
+                final ByteBuf reply;
+                final long delayNanos;
+
+                final StubReply stubReply = message instanceof Object[] && ((Object[]) message).length > 0 ?
+                        replies.get(getCommandName((Object[]) message)) : null;
+
+                if (stubReply != null) {
+                    reply = stubReply.reply.duplicate();
+                    delayNanos = stubReply.delayNanos;
+                } else {
+                    reply = Unpooled.copiedBuffer("-ERR unknown command\r\n", StandardCharsets.US_ASCII);
+                    delayNanos = 0;
+                }
+
+                if (delayNanos == 0 && delayedReplies.isEmpty()) {
+                    // We'll flush when we've finished reading everything that's available
+                    context.write(reply);
+                } else {
+                    lastDelayedReplyNanos = Math.max(System.nanoTime() + delayNanos, lastDelayedReplyNanos);
+                    delayedReplies.add(new DelayedReply(reply, lastDelayedReplyNanos));
+
+                    if (delayedReplies.size() == 1) {
+                        scheduleDelayedReplies(context);
+                    }
+                }
+            } finally {
+                ReferenceCountUtil.release(message);
+            }
+        }
+
+        private void scheduleDelayedReplies(final ChannelHandlerContext context) {
+            final long delayNanos = delayedReplies.element().replyNanos - System.nanoTime();
+            context.executor().schedule(() -> sendDelayedReplies(context), delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void sendDelayedReplies(final ChannelHandlerContext context) {
+            final long now = System.nanoTime();
+
+            while (!delayedReplies.isEmpty() && delayedReplies.element().replyNanos <= now) {
+                context.write(delayedReplies.remove().reply);
+            }
+
+            context.flush();
+
+            if (!delayedReplies.isEmpty()) {
+                scheduleDelayedReplies(context);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(final ChannelHandlerContext context) {
+            context.flush();
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext context, final Throwable cause) {
+            context.close();
+        }
+
+        private String getCommandName(final Object[] command) {
+            return command[0] instanceof byte[] ?
+                    new String((byte[]) command[0], StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT) : "";
+        }
+    }
+}
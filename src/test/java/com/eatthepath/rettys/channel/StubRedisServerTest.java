@@ -0,0 +1,67 @@
+package com.eatthepath.rettys.channel;
+
+import com.eatthepath.rettys.PipeliningCommandExecutor;
+import com.eatthepath.rettys.RedisCommand;
+import com.eatthepath.rettys.RedisException;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StubRedisServerTest {
+
+    private static EventLoopGroup eventLoopGroup;
+
+    @BeforeAll
+    static void setUpBeforeClass() {
+        eventLoopGroup = new NioEventLoopGroup(1);
+    }
+
+    @AfterAll
+    static void tearDownAfterClass() throws InterruptedException {
+        eventLoopGroup.shutdownGracefully().await();
+    }
+
+    @Test
+    void executeCommands() throws Exception {
+        try (final StubRedisServer server = new StubRedisServer()) {
+            server.setReply("GET", "$5\r\nvalue\r\n", 50, TimeUnit.MILLISECONDS);
+            server.setReply("INCR", ":17\r\n", 0, TimeUnit.MILLISECONDS);
+
+            final InetSocketAddress address = server.start();
+
+            final PipeliningCommandExecutor commandExecutor = PipeliningCommandExecutor.connect(
+                    new RedisChannelFactory(eventLoopGroup, StandardCharsets.UTF_8, false), address, Runnable::run)
+                    .get(5, TimeUnit.SECONDS);
+
+            try {
+                final CompletableFuture<Object> pingFuture = commandExecutor.executeCommand(new RedisCommand("ping"));
+                final CompletableFuture<Object> getFuture = commandExecutor.executeCommand(new RedisCommand("GET", "key"));
+
+                // Even though INCR has no delay, its reply must not overtake the reply to GET
+                final CompletableFuture<Object> incrFuture = commandExecutor.executeCommand(new RedisCommand("INCR", "key"));
+                final CompletableFuture<Object> unknownFuture = commandExecutor.executeCommand(new RedisCommand("NOPE"));
+
+                assertEquals("PONG", pingFuture.get(5, TimeUnit.SECONDS));
+                assertArrayEquals("value".getBytes(StandardCharsets.US_ASCII), (byte[]) getFuture.get(5, TimeUnit.SECONDS));
+                assertEquals(17L, incrFuture.get(5, TimeUnit.SECONDS));
+
+                final ExecutionException executionException =
+                        assertThrows(ExecutionException.class, () -> unknownFuture.get(5, TimeUnit.SECONDS));
+
+                assertTrue(executionException.getCause() instanceof RedisException);
+            } finally {
+                commandExecutor.getChannel().close().await();
+            }
+        }
+    }
+}